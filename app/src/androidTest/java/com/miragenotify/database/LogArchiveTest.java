@@ -0,0 +1,202 @@
+package com.miragenotify.database;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import android.content.Context;
+
+import androidx.room.Room;
+import androidx.test.core.app.ApplicationProvider;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import com.miragenotify.model.LogApp;
+import com.miragenotify.model.LogArchiveBlock;
+import com.miragenotify.model.NotificationLog;
+import com.miragenotify.model.NotificationLogRecord;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Archives logs whose timestamps are out of id order, then pages, filters and deletes them
+ * through the archive and checks every result against what was written.
+ */
+@RunWith(AndroidJUnit4.class)
+public class LogArchiveTest {
+
+    private static final long SEED = 2024L;
+    private static final int LOGS = 3000;
+    private static final long HOUR_MS = TimeUnit.HOURS.toMillis(1);
+    private static final String[] PACKAGES = {"com.example.chat", "com.example.mail", "com.example.bank"};
+
+    private AppDatabase database;
+    private NotificationLogDao logDao;
+    private LogArchive archive;
+    // Every log written, by id, with its package
+    private final Map<Long, String> packages = new TreeMap<>();
+    private long lastTimestamp;
+
+    @Before
+    public void setUp() {
+        Context context = ApplicationProvider.getApplicationContext();
+        database = Room.inMemoryDatabaseBuilder(context, AppDatabase.class).build();
+        logDao = database.notificationLogDao();
+        archive = new LogArchive(database);
+
+        long[] appIds = new long[PACKAGES.length];
+        for (int i = 0; i < PACKAGES.length; i++) {
+            appIds[i] = logDao.insertApp(new LogApp(PACKAGES[i], "App " + i));
+        }
+        Random random = new Random(SEED);
+        long timestamp = System.currentTimeMillis() - LOGS * TimeUnit.MINUTES.toMillis(1) - 48 * HOUR_MS;
+        List<NotificationLogRecord> records = new ArrayList<>();
+        for (int i = 1; i <= LOGS; i++) {
+            int app = random.nextInt(PACKAGES.length);
+            NotificationLogRecord record = new NotificationLogRecord();
+            record.setId(i);
+            record.setAppId(appIds[app]);
+            record.setOriginalTitle("Title " + i);
+            record.setOriginalContent("Message " + random.nextInt(100));
+            timestamp += TimeUnit.MINUTES.toMillis(1);
+            // Every seventh log was written late, stamped well after the ones around it
+            record.setTimestamp(i % 7 == 0 ? timestamp + 10 * HOUR_MS : timestamp);
+            records.add(record);
+            packages.put((long) i, PACKAGES[app]);
+        }
+        logDao.insertAll(records);
+        lastTimestamp = timestamp;
+    }
+
+    @After
+    public void tearDown() {
+        database.close();
+    }
+
+    @Test
+    public void logsStampedOutOfIdOrderAreArchivedOnALaterRun() throws Exception {
+        archive.archiveOlderThan(lastTimestamp - 12 * HOUR_MS, () -> false);
+        int hotAfterFirstRun = logDao.countLogs();
+        archive.archiveOlderThan(lastTimestamp + 11 * HOUR_MS, () -> false);
+
+        // Only the remainder short of a full block stays behind
+        assertTrue("hot logs left " + logDao.countLogs(), logDao.countLogs() < LogArchive.BLOCK_ROWS);
+        assertTrue(logDao.countLogs() < hotAfterFirstRun);
+        assertEquals(LOGS, logDao.countLogs() + database.logArchiveDao().countArchivedLogs());
+    }
+
+    @Test
+    public void pagingReturnsEveryArchivedLogOnceAcrossOverlappingBlocks() throws Exception {
+        archiveEverythingPossible();
+        List<Long> archived = archivedIds(null);
+
+        assertEquals(archived, pageBefore(null, 37));
+        List<Long> ascending = pageAfter(null, 41);
+        Collections.reverse(ascending);
+        assertEquals(archived, ascending);
+    }
+
+    @Test
+    public void packageFilterReadsArchivedLogs() throws Exception {
+        archiveEverythingPossible();
+        for (String packageName : PACKAGES) {
+            List<Long> archived = archivedIds(packageName);
+            assertFalse(archived.isEmpty());
+            assertEquals(packageName, archived, pageBefore(packageName, 25));
+            for (NotificationLog log : archive.loadBefore(packageName, Long.MAX_VALUE, 0, LOGS)) {
+                assertEquals(packageName, log.getPackageName());
+            }
+        }
+        assertTrue(archive.loadBefore("com.example.unknown", Long.MAX_VALUE, 0, LOGS).isEmpty());
+    }
+
+    @Test
+    public void deletingAnArchivedLogRewritesItsBlock() throws Exception {
+        archiveEverythingPossible();
+        List<Long> archived = archivedIds(null);
+        long victim = archived.get(archived.size() / 2);
+
+        assertEquals(0, logDao.deleteById(victim));
+        assertTrue(archive.delete(victim));
+        assertFalse(archive.delete(victim));
+
+        archived.remove(Long.valueOf(victim));
+        assertEquals(archived, pageBefore(null, 50));
+        assertEquals(archived.size(), database.logArchiveDao().countArchivedLogs());
+    }
+
+    @Test
+    public void deletingTheLastLogOfABlockDropsIt() throws Exception {
+        archiveEverythingPossible();
+        LogArchiveBlock block = database.logArchiveDao().getBlocksContaining(1).get(0);
+        List<NotificationLogRecord> records = archive.decodeRecords(block);
+        for (NotificationLogRecord record : records) {
+            assertTrue(archive.delete(record.getId()));
+        }
+
+        for (NotificationLogRecord record : records) {
+            packages.remove(record.getId());
+        }
+        assertTrue(database.logArchiveDao().getBlocksContaining(1).isEmpty());
+        assertEquals(archivedIds(null), pageBefore(null, 50));
+        for (String packageName : PACKAGES) {
+            assertEquals(archivedIds(packageName), pageBefore(packageName, 50));
+        }
+    }
+
+    private void archiveEverythingPossible() throws Exception {
+        archive.archiveOlderThan(lastTimestamp - 12 * HOUR_MS, () -> false);
+        archive.archiveOlderThan(lastTimestamp + 11 * HOUR_MS, () -> false);
+    }
+
+    /**
+     * Ids written but no longer in notification_logs, newest first
+     */
+    private List<Long> archivedIds(String packageName) {
+        Set<Long> hot = new HashSet<>();
+        for (NotificationLog log : logDao.getLogsBefore(Long.MAX_VALUE, LOGS)) {
+            hot.add(log.getId());
+        }
+        List<Long> ids = new ArrayList<>();
+        for (Map.Entry<Long, String> entry : packages.entrySet()) {
+            if (hot.contains(entry.getKey())) continue;
+            if (packageName == null || packageName.equals(entry.getValue())) ids.add(entry.getKey());
+        }
+        Collections.reverse(ids);
+        return ids;
+    }
+
+    private List<Long> pageBefore(String packageName, int pageSize) throws Exception {
+        List<Long> ids = new ArrayList<>();
+        long beforeId = Long.MAX_VALUE;
+        while (true) {
+            List<NotificationLog> page = archive.loadBefore(packageName, beforeId, 0, pageSize);
+            for (NotificationLog log : page) ids.add(log.getId());
+            if (page.size() < pageSize) return ids;
+            beforeId = page.get(page.size() - 1).getId();
+        }
+    }
+
+    private List<Long> pageAfter(String packageName, int pageSize) throws Exception {
+        List<Long> ids = new ArrayList<>();
+        long afterId = 0;
+        while (true) {
+            List<NotificationLog> page = archive.loadAfter(packageName, afterId, Long.MAX_VALUE, pageSize);
+            for (NotificationLog log : page) ids.add(log.getId());
+            if (page.size() < pageSize) return ids;
+            afterId = page.get(page.size() - 1).getId();
+        }
+    }
+}
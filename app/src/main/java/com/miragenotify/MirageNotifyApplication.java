@@ -2,6 +2,8 @@ package com.miragenotify;
 
 import android.app.Application;
 
+import com.miragenotify.worker.LogRetentionWorker;
+
 /**
  * Main Application class
  */
@@ -10,6 +12,6 @@ public class MirageNotifyApplication extends Application {
     @Override
     public void onCreate() {
         super.onCreate();
-        // Initialize app-wide components here if needed
+        LogRetentionWorker.schedule(this);
     }
 }
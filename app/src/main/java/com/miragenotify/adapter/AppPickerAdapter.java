@@ -0,0 +1,171 @@
+package com.miragenotify.adapter;
+
+import android.graphics.Bitmap;
+import android.os.Handler;
+import android.os.Looper;
+import android.view.LayoutInflater;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.ImageView;
+import android.widget.TextView;
+
+import androidx.annotation.NonNull;
+import androidx.recyclerview.widget.DiffUtil;
+import androidx.recyclerview.widget.ListAdapter;
+import androidx.recyclerview.widget.RecyclerView;
+
+import com.miragenotify.R;
+import com.miragenotify.model.InstalledApp;
+import com.miragenotify.utils.AppMetadataCache;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Filterable list of installed apps for the rule editor. Icons are only loaded for rows that
+ * are bound, off the main thread, and come from the shared {@link AppMetadataCache}.
+ */
+public class AppPickerAdapter extends ListAdapter<InstalledApp, AppPickerAdapter.AppViewHolder> {
+
+    private static final DiffUtil.ItemCallback<InstalledApp> DIFF_CALLBACK = new DiffUtil.ItemCallback<InstalledApp>() {
+        @Override
+        public boolean areItemsTheSame(@NonNull InstalledApp oldItem, @NonNull InstalledApp newItem) {
+            return oldItem.getPackageName().equals(newItem.getPackageName());
+        }
+
+        @Override
+        public boolean areContentsTheSame(@NonNull InstalledApp oldItem, @NonNull InstalledApp newItem) {
+            return oldItem.getLabel().equals(newItem.getLabel())
+                    && oldItem.getLastUpdateTime() == newItem.getLastUpdateTime();
+        }
+    };
+
+    public interface OnAppClickListener {
+        void onAppClick(InstalledApp app);
+    }
+
+    private final AppMetadataCache metadataCache;
+    private final OnAppClickListener listener;
+    private final ExecutorService iconExecutor = Executors.newSingleThreadExecutor();
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private List<InstalledApp> apps = Collections.emptyList();
+    private String filter = "";
+    private Runnable onListChanged;
+
+    public AppPickerAdapter(AppMetadataCache metadataCache, OnAppClickListener listener) {
+        super(DIFF_CALLBACK);
+        this.metadataCache = metadataCache;
+        this.listener = listener;
+    }
+
+    public void setApps(List<InstalledApp> apps) {
+        this.apps = apps != null ? apps : Collections.emptyList();
+        applyFilter();
+    }
+
+    /**
+     * Whether the catalog has loaded any apps, filtered out or not
+     */
+    public boolean hasApps() {
+        return !apps.isEmpty();
+    }
+
+    /**
+     * Called on the main thread whenever the shown list changes, after diffing
+     */
+    public void setOnListChangedListener(Runnable onListChanged) {
+        this.onListChanged = onListChanged;
+    }
+
+    @Override
+    public void onCurrentListChanged(@NonNull List<InstalledApp> previousList, @NonNull List<InstalledApp> currentList) {
+        if (onListChanged != null) onListChanged.run();
+    }
+
+    /**
+     * Show only apps whose label or package name contains the text, ignoring case
+     */
+    public void setFilter(String filter) {
+        this.filter = filter != null ? filter.trim().toLowerCase(Locale.ROOT) : "";
+        applyFilter();
+    }
+
+    private void applyFilter() {
+        if (filter.isEmpty()) {
+            submitList(apps);
+            return;
+        }
+        List<InstalledApp> matches = new ArrayList<>();
+        for (InstalledApp app : apps) {
+            if (app.getLabel().toLowerCase(Locale.ROOT).contains(filter)
+                    || app.getPackageName().toLowerCase(Locale.ROOT).contains(filter)) {
+                matches.add(app);
+            }
+        }
+        submitList(matches);
+    }
+
+    /**
+     * Stop loading icons; call when the picker is dismissed
+     */
+    public void release() {
+        iconExecutor.shutdownNow();
+        mainHandler.removeCallbacksAndMessages(null);
+    }
+
+    @NonNull
+    @Override
+    public AppViewHolder onCreateViewHolder(@NonNull ViewGroup parent, int viewType) {
+        View view = LayoutInflater.from(parent.getContext())
+                .inflate(R.layout.item_app, parent, false);
+        return new AppViewHolder(view);
+    }
+
+    @Override
+    public void onBindViewHolder(@NonNull AppViewHolder holder, int position) {
+        InstalledApp app = getItem(position);
+        String packageName = app.getPackageName();
+        holder.tvLabel.setText(app.getLabel());
+        holder.tvPackage.setText(packageName);
+        holder.itemView.setOnClickListener(v -> listener.onAppClick(app));
+
+        // The row may be rebound to another app before its icon arrives
+        holder.boundPackage = packageName;
+        Bitmap icon = metadataCache.peekLargeIcon(packageName);
+        holder.ivIcon.setImageBitmap(icon);
+        if (icon == null && !iconExecutor.isShutdown()) {
+            iconExecutor.execute(() -> {
+                // Skip rows that were scrolled past before their turn came
+                if (!packageName.equals(holder.boundPackage)) return;
+                Bitmap loaded = metadataCache.getLargeIcon(packageName);
+                mainHandler.post(() -> {
+                    if (packageName.equals(holder.boundPackage)) holder.ivIcon.setImageBitmap(loaded);
+                });
+            });
+        }
+    }
+
+    @Override
+    public void onViewRecycled(@NonNull AppViewHolder holder) {
+        holder.boundPackage = null;
+        holder.ivIcon.setImageBitmap(null);
+    }
+
+    static class AppViewHolder extends RecyclerView.ViewHolder {
+        ImageView ivIcon;
+        TextView tvLabel;
+        TextView tvPackage;
+        volatile String boundPackage;
+
+        AppViewHolder(@NonNull View itemView) {
+            super(itemView);
+            ivIcon = itemView.findViewById(R.id.iv_app_icon);
+            tvLabel = itemView.findViewById(R.id.tv_app_label);
+            tvPackage = itemView.findViewById(R.id.tv_app_package);
+        }
+    }
+}
@@ -7,29 +7,44 @@ import android.view.ViewGroup;
 import android.widget.TextView;
 
 import androidx.annotation.NonNull;
+import androidx.paging.PagingDataAdapter;
+import androidx.recyclerview.widget.DiffUtil;
 import androidx.recyclerview.widget.RecyclerView;
 
 import com.miragenotify.R;
 import com.miragenotify.model.NotificationLog;
 import com.miragenotify.utils.NotificationHelper;
 
-import java.util.ArrayList;
-import java.util.List;
+import java.util.Objects;
 
-public class LogAdapter extends RecyclerView.Adapter<LogAdapter.LogViewHolder> {
+public class LogAdapter extends PagingDataAdapter<NotificationLog, LogAdapter.LogViewHolder> {
+    
+    private static final DiffUtil.ItemCallback<NotificationLog> DIFF_CALLBACK = new DiffUtil.ItemCallback<NotificationLog>() {
+        @Override
+        public boolean areItemsTheSame(@NonNull NotificationLog oldItem, @NonNull NotificationLog newItem) {
+            return oldItem.getId() == newItem.getId();
+        }
+        
+        @Override
+        public boolean areContentsTheSame(@NonNull NotificationLog oldItem, @NonNull NotificationLog newItem) {
+            return oldItem.getTimestamp() == newItem.getTimestamp()
+                    && oldItem.getMergedCount() == newItem.getMergedCount()
+                    && oldItem.isWasModified() == newItem.isWasModified()
+                    && Objects.equals(oldItem.getAppName(), newItem.getAppName())
+                    && Objects.equals(oldItem.getOriginalTitle(), newItem.getOriginalTitle())
+                    && Objects.equals(oldItem.getOriginalContent(), newItem.getOriginalContent())
+                    && Objects.equals(oldItem.getModifiedTitle(), newItem.getModifiedTitle())
+                    && Objects.equals(oldItem.getModifiedContent(), newItem.getModifiedContent());
+        }
+    };
     
     private final Context context;
-    private List<NotificationLog> logs = new ArrayList<>();
     
     public LogAdapter(Context context) {
+        super(DIFF_CALLBACK);
         this.context = context;
     }
     
-    public void setLogs(List<NotificationLog> logs) {
-        this.logs = logs != null ? logs : new ArrayList<>();
-        notifyDataSetChanged();
-    }
-    
     @NonNull
     @Override
     public LogViewHolder onCreateViewHolder(@NonNull ViewGroup parent, int viewType) {
@@ -40,10 +55,17 @@ public class LogAdapter extends RecyclerView.Adapter<LogAdapter.LogViewHolder> {
     
     @Override
     public void onBindViewHolder(@NonNull LogViewHolder holder, int position) {
-        NotificationLog log = logs.get(position);
+        NotificationLog log = getItem(position);
+        if (log == null) {
+            // Placeholder for a row whose page is not loaded yet
+            holder.clear();
+            return;
+        }
         
         holder.tvAppName.setText(log.getAppName());
-        holder.tvTimestamp.setText(NotificationHelper.getRelativeTime(log.getTimestamp()));
+        String time = NotificationHelper.getRelativeTime(log.getTimestamp());
+        holder.tvTimestamp.setText(log.getMergedCount() > 0
+                ? context.getString(R.string.log_merged_updates, time, log.getMergedCount()) : time);
         
         holder.tvOriginalTitle.setText(log.getOriginalTitle());
         holder.tvOriginalContent.setText(log.getOriginalContent());
@@ -59,11 +81,6 @@ public class LogAdapter extends RecyclerView.Adapter<LogAdapter.LogViewHolder> {
         }
     }
     
-    @Override
-    public int getItemCount() {
-        return logs.size();
-    }
-    
     static class LogViewHolder extends RecyclerView.ViewHolder {
         TextView tvAppName, tvTimestamp, tvModifiedBadge;
         TextView tvOriginalTitle, tvOriginalContent;
@@ -81,5 +98,14 @@ public class LogAdapter extends RecyclerView.Adapter<LogAdapter.LogViewHolder> {
             tvModifiedContent = itemView.findViewById(R.id.tv_modified_content);
             layoutModified = itemView.findViewById(R.id.layout_modified);
         }
+        
+        void clear() {
+            tvAppName.setText(null);
+            tvTimestamp.setText(null);
+            tvOriginalTitle.setText(null);
+            tvOriginalContent.setText(null);
+            tvModifiedBadge.setVisibility(View.GONE);
+            layoutModified.setVisibility(View.GONE);
+        }
     }
 }
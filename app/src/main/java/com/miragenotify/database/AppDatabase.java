@@ -2,19 +2,36 @@ package com.miragenotify.database;
 
 import android.content.Context;
 
+import androidx.annotation.NonNull;
 import androidx.room.Database;
 import androidx.room.Room;
 import androidx.room.RoomDatabase;
 import androidx.room.TypeConverter;
 import androidx.room.TypeConverters;
+import androidx.room.migration.Migration;
+import androidx.sqlite.db.SupportSQLiteDatabase;
 
+import com.miragenotify.engine.MatchMode;
+import com.miragenotify.model.InstalledApp;
+import com.miragenotify.model.LogApp;
+import com.miragenotify.model.LogArchiveBlock;
+import com.miragenotify.model.LogArchiveBlockApp;
+import com.miragenotify.model.LogArchiveDictionary;
 import com.miragenotify.model.NotificationLog;
+import com.miragenotify.model.NotificationLogFts;
+import com.miragenotify.model.NotificationLogRecord;
 import com.miragenotify.model.NotificationRule;
+import com.miragenotify.model.PackageStats;
+import com.miragenotify.model.RuleStats;
 
 /**
  * Main Room Database for Mirage Notify
  */
-@Database(entities = {NotificationRule.class, NotificationLog.class}, version = 1, exportSchema = false)
+@Database(entities = {NotificationRule.class, NotificationLogRecord.class, NotificationLogFts.class,
+        PackageStats.class, RuleStats.class, InstalledApp.class, LogApp.class,
+        LogArchiveBlock.class, LogArchiveBlockApp.class, LogArchiveDictionary.class},
+        views = {NotificationLog.class},
+        version = 11, exportSchema = true)
 @TypeConverters({AppDatabase.Converters.class})
 public abstract class AppDatabase extends RoomDatabase {
     
@@ -22,6 +39,213 @@ public abstract class AppDatabase extends RoomDatabase {
     
     public abstract NotificationRuleDao notificationRuleDao();
     public abstract NotificationLogDao notificationLogDao();
+    public abstract StatsDao statsDao();
+    public abstract InstalledAppDao installedAppDao();
+    public abstract LogArchiveDao logArchiveDao();
+    
+    /**
+     * Version 2: match mode for rules (existing rules keep literal matching)
+     */
+    static final Migration MIGRATION_1_2 = new Migration(1, 2) {
+        @Override
+        public void migrate(@NonNull SupportSQLiteDatabase db) {
+            db.execSQL("ALTER TABLE notification_rules ADD COLUMN matchMode TEXT DEFAULT 'LITERAL'");
+        }
+    };
+    
+    /**
+     * Version 3: indexes for the log list, log filters, retention deletes and rule lookup
+     */
+    static final Migration MIGRATION_2_3 = new Migration(2, 3) {
+        @Override
+        public void migrate(@NonNull SupportSQLiteDatabase db) {
+            db.execSQL("CREATE INDEX IF NOT EXISTS `index_notification_logs_timestamp` "
+                    + "ON `notification_logs` (`timestamp`)");
+            db.execSQL("CREATE INDEX IF NOT EXISTS `index_notification_logs_packageName_timestamp` "
+                    + "ON `notification_logs` (`packageName`, `timestamp`)");
+            db.execSQL("CREATE INDEX IF NOT EXISTS `index_notification_logs_wasModified_timestamp` "
+                    + "ON `notification_logs` (`wasModified`, `timestamp`)");
+            db.execSQL("CREATE INDEX IF NOT EXISTS `index_notification_rules_targetPackageName_isEnabled` "
+                    + "ON `notification_rules` (`targetPackageName`, `isEnabled`)");
+        }
+    };
+    
+    /**
+     * Version 4: materialized counters, seeded from the existing logs
+     */
+    static final Migration MIGRATION_3_4 = new Migration(3, 4) {
+        @Override
+        public void migrate(@NonNull SupportSQLiteDatabase db) {
+            db.execSQL("CREATE TABLE IF NOT EXISTS `package_stats` (`packageName` TEXT NOT NULL, "
+                    + "`interceptedCount` INTEGER NOT NULL, `modifiedCount` INTEGER NOT NULL, PRIMARY KEY(`packageName`))");
+            db.execSQL("CREATE TABLE IF NOT EXISTS `rule_stats` (`ruleId` INTEGER NOT NULL, "
+                    + "`hitCount` INTEGER NOT NULL, PRIMARY KEY(`ruleId`))");
+            db.execSQL("INSERT INTO package_stats (packageName, interceptedCount, modifiedCount) "
+                    + "SELECT packageName, COUNT(*), SUM(wasModified) FROM notification_logs "
+                    + "WHERE packageName IS NOT NULL GROUP BY packageName");
+            db.execSQL("INSERT INTO rule_stats (ruleId, hitCount) "
+                    + "SELECT ruleId, COUNT(*) FROM notification_logs "
+                    + "WHERE wasModified = 1 AND ruleId != 0 GROUP BY ruleId");
+        }
+    };
+    
+    /**
+     * Version 5: every rule applied to a log entry, not only the first (existing entries keep theirs)
+     */
+    static final Migration MIGRATION_4_5 = new Migration(4, 5) {
+        @Override
+        public void migrate(@NonNull SupportSQLiteDatabase db) {
+            db.execSQL("ALTER TABLE notification_logs ADD COLUMN appliedRuleIds TEXT");
+            db.execSQL("UPDATE notification_logs SET appliedRuleIds = CAST(ruleId AS TEXT) WHERE ruleId != 0");
+        }
+    };
+    
+    /**
+     * Version 6: explicit rule priority (existing rules have none)
+     */
+    static final Migration MIGRATION_5_6 = new Migration(5, 6) {
+        @Override
+        public void migrate(@NonNull SupportSQLiteDatabase db) {
+            db.execSQL("ALTER TABLE notification_rules ADD COLUMN priority INTEGER NOT NULL DEFAULT 0");
+        }
+    };
+    
+    /**
+     * Version 7: count of superseded updates merged into a log entry
+     */
+    static final Migration MIGRATION_6_7 = new Migration(6, 7) {
+        @Override
+        public void migrate(@NonNull SupportSQLiteDatabase db) {
+            db.execSQL("ALTER TABLE notification_logs ADD COLUMN mergedCount INTEGER NOT NULL DEFAULT 0");
+        }
+    };
+    
+    // Body of the insert and update triggers: index the new version of the row
+    private static final String FTS_INSERT_NEW = "INSERT INTO `notification_logs_fts`(`docid`, "
+            + "`originalTitle`, `originalContent`, `originalSender`, "
+            + "`modifiedTitle`, `modifiedContent`, `modifiedSender`) "
+            + "VALUES (NEW.`rowid`, NEW.`originalTitle`, NEW.`originalContent`, NEW.`originalSender`, "
+            + "NEW.`modifiedTitle`, NEW.`modifiedContent`, NEW.`modifiedSender`);";
+    
+    /**
+     * Version 8: full-text index over the log text, with the sync triggers Room creates for
+     * external content tables, filled from the existing logs
+     */
+    static final Migration MIGRATION_7_8 = new Migration(7, 8) {
+        @Override
+        public void migrate(@NonNull SupportSQLiteDatabase db) {
+            db.execSQL("CREATE VIRTUAL TABLE IF NOT EXISTS `notification_logs_fts` USING FTS4("
+                    + "`originalTitle` TEXT, `originalContent` TEXT, `originalSender` TEXT, "
+                    + "`modifiedTitle` TEXT, `modifiedContent` TEXT, `modifiedSender` TEXT, "
+                    + "tokenize=unicode61, content=`notification_logs`)");
+            createFtsTriggers(db);
+            db.execSQL("INSERT INTO notification_logs_fts(notification_logs_fts) VALUES('rebuild')");
+        }
+    };
+    
+    static void createFtsTriggers(SupportSQLiteDatabase db) {
+        db.execSQL("CREATE TRIGGER IF NOT EXISTS room_fts_content_sync_notification_logs_fts_BEFORE_UPDATE "
+                + "BEFORE UPDATE ON `notification_logs` BEGIN "
+                + "DELETE FROM `notification_logs_fts` WHERE `docid`=OLD.`rowid`; END");
+        db.execSQL("CREATE TRIGGER IF NOT EXISTS room_fts_content_sync_notification_logs_fts_BEFORE_DELETE "
+                + "BEFORE DELETE ON `notification_logs` BEGIN "
+                + "DELETE FROM `notification_logs_fts` WHERE `docid`=OLD.`rowid`; END");
+        db.execSQL("CREATE TRIGGER IF NOT EXISTS room_fts_content_sync_notification_logs_fts_AFTER_UPDATE "
+                + "AFTER UPDATE ON `notification_logs` BEGIN " + FTS_INSERT_NEW + " END");
+        db.execSQL("CREATE TRIGGER IF NOT EXISTS room_fts_content_sync_notification_logs_fts_AFTER_INSERT "
+                + "AFTER INSERT ON `notification_logs` BEGIN " + FTS_INSERT_NEW + " END");
+    }
+    
+    /**
+     * Version 9: snapshot of installed apps for the app picker (filled by the first catalog refresh)
+     */
+    static final Migration MIGRATION_8_9 = new Migration(8, 9) {
+        @Override
+        public void migrate(@NonNull SupportSQLiteDatabase db) {
+            db.execSQL("CREATE TABLE IF NOT EXISTS `installed_apps` (`packageName` TEXT NOT NULL, "
+                    + "`label` TEXT NOT NULL, `lastUpdateTime` INTEGER NOT NULL, PRIMARY KEY(`packageName`))");
+        }
+    };
+    
+    /**
+     * Version 10: normalized logs. Package and app name move to log_apps and rows reference them
+     * by id; modified fields are only kept where they differ from the original. Reads go through
+     * notification_log_view, which has the old columns.
+     */
+    static final Migration MIGRATION_9_10 = new Migration(9, 10) {
+        @Override
+        public void migrate(@NonNull SupportSQLiteDatabase db) {
+            db.execSQL("CREATE TABLE IF NOT EXISTS `log_apps` (`id` INTEGER PRIMARY KEY AUTOINCREMENT NOT NULL, "
+                    + "`packageName` TEXT NOT NULL, `appName` TEXT)");
+            db.execSQL("CREATE UNIQUE INDEX IF NOT EXISTS `index_log_apps_packageName` ON `log_apps` (`packageName`)");
+            // SQLite takes the bare appName from the row with the newest timestamp
+            db.execSQL("INSERT INTO log_apps (packageName, appName) "
+                    + "SELECT packageName, appName FROM (SELECT packageName, appName, MAX(timestamp) "
+                    + "FROM notification_logs WHERE packageName IS NOT NULL GROUP BY packageName)");
+            
+            db.execSQL("CREATE TABLE IF NOT EXISTS `notification_logs_new` (`id` INTEGER PRIMARY KEY AUTOINCREMENT NOT NULL, "
+                    + "`appId` INTEGER NOT NULL, `originalTitle` TEXT, `originalContent` TEXT, `originalSender` TEXT, "
+                    + "`modifiedTitle` TEXT, `modifiedContent` TEXT, `modifiedSender` TEXT, "
+                    + "`wasModified` INTEGER NOT NULL, `ruleId` INTEGER NOT NULL, `appliedRuleIds` TEXT, "
+                    + "`mergedCount` INTEGER NOT NULL DEFAULT 0, `timestamp` INTEGER NOT NULL)");
+            db.execSQL("INSERT INTO notification_logs_new (id, appId, originalTitle, originalContent, originalSender, "
+                    + "modifiedTitle, modifiedContent, modifiedSender, wasModified, ruleId, appliedRuleIds, "
+                    + "mergedCount, timestamp) "
+                    + "SELECT l.id, COALESCE(a.id, 0), l.originalTitle, l.originalContent, l.originalSender, "
+                    + "CASE WHEN l.modifiedTitle IS l.originalTitle THEN NULL ELSE l.modifiedTitle END, "
+                    + "CASE WHEN l.modifiedContent IS l.originalContent THEN NULL ELSE l.modifiedContent END, "
+                    + "CASE WHEN l.modifiedSender IS l.originalSender THEN NULL ELSE l.modifiedSender END, "
+                    + "l.wasModified, l.ruleId, l.appliedRuleIds, l.mergedCount, l.timestamp "
+                    + "FROM notification_logs l LEFT JOIN log_apps a ON a.packageName = l.packageName");
+            // Dropping the old table also drops its indexes and the FTS sync triggers
+            db.execSQL("DROP TABLE notification_logs");
+            db.execSQL("ALTER TABLE notification_logs_new RENAME TO notification_logs");
+            
+            db.execSQL("CREATE INDEX IF NOT EXISTS `index_notification_logs_timestamp` "
+                    + "ON `notification_logs` (`timestamp`)");
+            db.execSQL("CREATE INDEX IF NOT EXISTS `index_notification_logs_appId_timestamp` "
+                    + "ON `notification_logs` (`appId`, `timestamp`)");
+            db.execSQL("CREATE INDEX IF NOT EXISTS `index_notification_logs_wasModified_timestamp` "
+                    + "ON `notification_logs` (`wasModified`, `timestamp`)");
+            createFtsTriggers(db);
+            // Unchanged modified fields are no longer stored, so their tokens leave the index
+            db.execSQL("INSERT INTO notification_logs_fts(notification_logs_fts) VALUES('rebuild')");
+            db.execSQL("CREATE VIEW `" + NotificationLog.VIEW_NAME + "` AS " + NotificationLog.VIEW_QUERY);
+        }
+    };
+    
+    /**
+     * Version 11: compressed archive of old logs
+     */
+    static final Migration MIGRATION_10_11 = new Migration(10, 11) {
+        @Override
+        public void migrate(@NonNull SupportSQLiteDatabase db) {
+            db.execSQL("CREATE TABLE IF NOT EXISTS `log_archive_blocks` (`id` INTEGER PRIMARY KEY AUTOINCREMENT NOT NULL, "
+                    + "`dictionaryId` INTEGER NOT NULL, `minLogId` INTEGER NOT NULL, `maxLogId` INTEGER NOT NULL, "
+                    + "`minTimestamp` INTEGER NOT NULL, `maxTimestamp` INTEGER NOT NULL, `rowCount` INTEGER NOT NULL, "
+                    + "`rawSize` INTEGER NOT NULL, `data` BLOB)");
+            db.execSQL("CREATE INDEX IF NOT EXISTS `index_log_archive_blocks_minLogId` "
+                    + "ON `log_archive_blocks` (`minLogId`)");
+            db.execSQL("CREATE INDEX IF NOT EXISTS `index_log_archive_blocks_maxLogId` "
+                    + "ON `log_archive_blocks` (`maxLogId`)");
+            db.execSQL("CREATE INDEX IF NOT EXISTS `index_log_archive_blocks_maxTimestamp` "
+                    + "ON `log_archive_blocks` (`maxTimestamp`)");
+            db.execSQL("CREATE TABLE IF NOT EXISTS `log_archive_block_apps` (`blockId` INTEGER NOT NULL, "
+                    + "`appId` INTEGER NOT NULL, PRIMARY KEY(`blockId`, `appId`))");
+            db.execSQL("CREATE INDEX IF NOT EXISTS `index_log_archive_block_apps_appId_blockId` "
+                    + "ON `log_archive_block_apps` (`appId`, `blockId`)");
+            db.execSQL("CREATE TABLE IF NOT EXISTS `log_archive_dictionaries` (`id` INTEGER PRIMARY KEY AUTOINCREMENT NOT NULL, "
+                    + "`createdAt` INTEGER NOT NULL, `data` BLOB)");
+        }
+    };
+    
+    /**
+     * Every migration, oldest first
+     */
+    static final Migration[] ALL_MIGRATIONS = {
+            MIGRATION_1_2, MIGRATION_2_3, MIGRATION_3_4, MIGRATION_4_5, MIGRATION_5_6,
+            MIGRATION_6_7, MIGRATION_7_8, MIGRATION_8_9, MIGRATION_9_10, MIGRATION_10_11
+    };
     
     /**
      * Get database instance (Singleton pattern)
@@ -35,7 +259,8 @@ public abstract class AppDatabase extends RoomDatabase {
                             AppDatabase.class,
                             "mirage_notify_database"
                     )
-                    .fallbackToDestructiveMigration()
+                    .openHelperFactory(new IncrementalVacuumOpenHelperFactory())
+                    .addMigrations(ALL_MIGRATIONS)
                     .build();
                 }
             }
@@ -63,5 +288,21 @@ public abstract class AppDatabase extends RoomDatabase {
             }
             return type.name();
         }
+        
+        @TypeConverter
+        public static MatchMode toMatchMode(String value) {
+            if (value == null) {
+                return null;
+            }
+            return MatchMode.valueOf(value);
+        }
+        
+        @TypeConverter
+        public static String fromMatchMode(MatchMode mode) {
+            if (mode == null) {
+                return null;
+            }
+            return mode.name();
+        }
     }
 }
@@ -0,0 +1,76 @@
+package com.miragenotify.database;
+
+import androidx.annotation.NonNull;
+import androidx.sqlite.db.SupportSQLiteDatabase;
+import androidx.sqlite.db.SupportSQLiteOpenHelper;
+import androidx.sqlite.db.framework.FrameworkSQLiteOpenHelperFactory;
+
+/**
+ * Framework open helper that creates new databases with auto_vacuum=INCREMENTAL, so the
+ * retention worker can return freed pages in small steps.
+ * The mode only takes effect through a VACUUM, and VACUUM cannot run inside the transaction
+ * Room creates the tables in, so it is set in onConfigure while the new file is still empty.
+ * Existing databases keep their mode; converting them would take a full VACUUM under an
+ * exclusive lock.
+ */
+class IncrementalVacuumOpenHelperFactory implements SupportSQLiteOpenHelper.Factory {
+
+    private final SupportSQLiteOpenHelper.Factory delegate = new FrameworkSQLiteOpenHelperFactory();
+
+    @NonNull
+    @Override
+    public SupportSQLiteOpenHelper create(@NonNull SupportSQLiteOpenHelper.Configuration configuration) {
+        SupportSQLiteOpenHelper.Configuration wrapped = SupportSQLiteOpenHelper.Configuration
+                .builder(configuration.context)
+                .name(configuration.name)
+                .callback(new ConfiguringCallback(configuration.callback))
+                .noBackupDirectory(configuration.useNoBackupDirectory)
+                .allowDataLossOnRecovery(configuration.allowDataLossOnRecovery)
+                .build();
+        return delegate.create(wrapped);
+    }
+
+    private static class ConfiguringCallback extends SupportSQLiteOpenHelper.Callback {
+        private final SupportSQLiteOpenHelper.Callback delegate;
+
+        ConfiguringCallback(SupportSQLiteOpenHelper.Callback delegate) {
+            super(delegate.version);
+            this.delegate = delegate;
+        }
+
+        @Override
+        public void onConfigure(@NonNull SupportSQLiteDatabase db) {
+            if (db.getVersion() == 0) {
+                db.execSQL("PRAGMA auto_vacuum = INCREMENTAL");
+                // Enabling WAL has already written the header; rebuilding a file without tables is instant
+                db.execSQL("VACUUM");
+            }
+            delegate.onConfigure(db);
+        }
+
+        @Override
+        public void onCreate(@NonNull SupportSQLiteDatabase db) {
+            delegate.onCreate(db);
+        }
+
+        @Override
+        public void onUpgrade(@NonNull SupportSQLiteDatabase db, int oldVersion, int newVersion) {
+            delegate.onUpgrade(db, oldVersion, newVersion);
+        }
+
+        @Override
+        public void onDowngrade(@NonNull SupportSQLiteDatabase db, int oldVersion, int newVersion) {
+            delegate.onDowngrade(db, oldVersion, newVersion);
+        }
+
+        @Override
+        public void onOpen(@NonNull SupportSQLiteDatabase db) {
+            delegate.onOpen(db);
+        }
+
+        @Override
+        public void onCorruption(@NonNull SupportSQLiteDatabase db) {
+            delegate.onCorruption(db);
+        }
+    }
+}
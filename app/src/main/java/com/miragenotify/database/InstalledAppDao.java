@@ -0,0 +1,33 @@
+package com.miragenotify.database;
+
+import androidx.lifecycle.LiveData;
+import androidx.room.Dao;
+import androidx.room.Insert;
+import androidx.room.OnConflictStrategy;
+import androidx.room.Query;
+
+import com.miragenotify.model.InstalledApp;
+
+import java.util.List;
+
+/**
+ * Data Access Object for the installed app snapshot
+ */
+@Dao
+public interface InstalledAppDao {
+    
+    @Insert(onConflict = OnConflictStrategy.REPLACE)
+    void upsertAll(List<InstalledApp> apps);
+    
+    @Query("SELECT * FROM installed_apps ORDER BY label COLLATE NOCASE, packageName")
+    LiveData<List<InstalledApp>> getAllApps();
+    
+    @Query("SELECT * FROM installed_apps")
+    List<InstalledApp> getAllAppsSnapshot();
+    
+    @Query("DELETE FROM installed_apps WHERE packageName IN (:packageNames)")
+    void deleteApps(List<String> packageNames);
+    
+    @Query("DELETE FROM installed_apps")
+    void deleteAll();
+}
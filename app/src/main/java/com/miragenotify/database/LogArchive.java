@@ -0,0 +1,526 @@
+package com.miragenotify.database;
+
+import android.content.Context;
+import android.util.LruCache;
+
+import com.miragenotify.model.LogApp;
+import com.miragenotify.model.LogArchiveBlock;
+import com.miragenotify.model.LogArchiveBlockApp;
+import com.miragenotify.model.LogArchiveBlockRange;
+import com.miragenotify.model.LogArchiveDictionary;
+import com.miragenotify.model.NotificationLog;
+import com.miragenotify.model.NotificationLogRecord;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+import java.util.function.Predicate;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Cold tier of the notification log.
+ * Logs past the archive age are packed {@link #BLOCK_ROWS} at a time into Deflate-compressed,
+ * column-ordered blocks. Blocks share a preset dictionary trained on earlier logs, which holds
+ * the app names, titles and phrases that repeat from block to block. Recent logs stay in
+ * notification_logs, uncompressed and searchable.
+ */
+public class LogArchive {
+
+    public static final int BLOCK_ROWS = 256;
+    private static final int FORMAT_VERSION = 1;
+    // Deflate can only reach back 32 KB, so a larger dictionary would not help
+    private static final int DICTIONARY_SIZE = 32 * 1024;
+    private static final int DICTIONARY_SAMPLE_ROWS = 8 * BLOCK_ROWS;
+    private static final int DICTIONARY_MAX_STRING_LENGTH = 64;
+    private static final int DICTIONARY_MIN_WORD_LENGTH = 3;
+    private static final long DICTIONARY_MAX_AGE_MS = TimeUnit.DAYS.toMillis(30);
+    private static final int DECODED_BLOCK_CACHE_SIZE = 4;
+    private static final int APP_CACHE_SIZE = 128;
+
+    private static volatile LogArchive INSTANCE;
+
+    private final AppDatabase database;
+    private final LogArchiveDao archiveDao;
+    private final NotificationLogDao logDao;
+    private final LruCache<Long, byte[]> dictionaries = new LruCache<>(DECODED_BLOCK_CACHE_SIZE);
+    private final LruCache<Long, List<NotificationLog>> decodedBlocks = new LruCache<>(DECODED_BLOCK_CACHE_SIZE);
+    private final LruCache<Long, LogApp> apps = new LruCache<>(APP_CACHE_SIZE);
+
+    private LogArchive(Context context) {
+        this(AppDatabase.getInstance(context.getApplicationContext()));
+    }
+
+    LogArchive(AppDatabase database) {
+        this.database = database;
+        this.archiveDao = database.logArchiveDao();
+        this.logDao = database.notificationLogDao();
+    }
+
+    /**
+     * Get the archive instance (Singleton pattern)
+     */
+    public static LogArchive getInstance(Context context) {
+        if (INSTANCE == null) {
+            synchronized (LogArchive.class) {
+                if (INSTANCE == null) {
+                    INSTANCE = new LogArchive(context);
+                }
+            }
+        }
+        return INSTANCE;
+    }
+
+    /**
+     * Move logs older than the cutoff into the archive, one block per transaction.
+     * Only full blocks are written; the remainder waits for the next run.
+     *
+     * @param isStopped checked between blocks
+     * @return number of logs archived
+     */
+    public int archiveOlderThan(long cutoff, BooleanSupplier isStopped) throws IOException {
+        LogArchiveDictionary dictionary = getOrTrainDictionary(cutoff);
+        int archived = 0;
+        while (!isStopped.getAsBoolean()) {
+            // Archived records leave notification_logs, so the next block is always the oldest
+            // ids still past the cutoff. Ids only roughly follow timestamps, since logs are
+            // written in batches from several lanes and the clock can be set back, so a later
+            // block may cover ids below earlier ones.
+            int count = database.runInTransaction(() -> {
+                List<NotificationLogRecord> records = logDao.getRecordsOlderThan(cutoff, BLOCK_ROWS);
+                if (records.size() < BLOCK_ROWS) return 0;
+                insertBlock(encodeBlock(records, dictionary), records);
+                List<Long> ids = new ArrayList<>(records.size());
+                for (NotificationLogRecord record : records) {
+                    ids.add(record.getId());
+                }
+                logDao.deleteByIds(ids);
+                return records.size();
+            });
+            if (count == 0) break;
+            archived += count;
+        }
+        return archived;
+    }
+
+    /**
+     * Archived logs with an id between {@code floorId} and {@code beforeId} (both exclusive),
+     * newest first
+     */
+    public List<NotificationLog> loadBefore(long beforeId, long floorId, int limit) throws IOException {
+        return loadBefore(null, beforeId, floorId, limit);
+    }
+
+    /**
+     * Archived logs of a package with an id between {@code floorId} and {@code beforeId} (both
+     * exclusive), newest first
+     *
+     * @param packageName null for all packages
+     */
+    public List<NotificationLog> loadBefore(String packageName, long beforeId, long floorId, int limit)
+            throws IOException {
+        List<LogArchiveBlockRange> ranges;
+        if (packageName == null) {
+            ranges = archiveDao.getBlockRangesBefore(beforeId, floorId);
+        } else {
+            LogApp app = logDao.getApp(packageName);
+            if (app == null) return new ArrayList<>();
+            ranges = archiveDao.getAppBlockRangesBefore(app.getId(), beforeId, floorId);
+        }
+        return collect(ranges, true, limit, log -> log.getId() < beforeId && log.getId() > floorId
+                && (packageName == null || packageName.equals(log.getPackageName())));
+    }
+
+    /**
+     * Archived logs with an id between {@code afterId} and {@code ceilingId} (both exclusive),
+     * oldest first
+     */
+    public List<NotificationLog> loadAfter(long afterId, long ceilingId, int limit) throws IOException {
+        return loadAfter(null, afterId, ceilingId, limit);
+    }
+
+    /**
+     * Archived logs of a package with an id between {@code afterId} and {@code ceilingId} (both
+     * exclusive), oldest first
+     *
+     * @param packageName null for all packages
+     */
+    public List<NotificationLog> loadAfter(String packageName, long afterId, long ceilingId, int limit)
+            throws IOException {
+        List<LogArchiveBlockRange> ranges;
+        if (packageName == null) {
+            ranges = archiveDao.getBlockRangesAfter(afterId, ceilingId);
+        } else {
+            LogApp app = logDao.getApp(packageName);
+            if (app == null) return new ArrayList<>();
+            ranges = archiveDao.getAppBlockRangesAfter(app.getId(), afterId, ceilingId);
+        }
+        return collect(ranges, false, limit, log -> log.getId() > afterId && log.getId() < ceilingId
+                && (packageName == null || packageName.equals(log.getPackageName())));
+    }
+
+    /**
+     * The first {@code limit} matching logs of the blocks, in id order.
+     * Block ranges can overlap, so blocks are read in order of their nearest id until the next
+     * one starts past the last log of a full page.
+     *
+     * @param ranges sorted by maxLogId descending, or by minLogId ascending
+     */
+    private List<NotificationLog> collect(List<LogArchiveBlockRange> ranges, boolean descending, int limit,
+                                          Predicate<NotificationLog> filter) throws IOException {
+        Comparator<NotificationLog> order = descending
+                ? (a, b) -> Long.compare(b.getId(), a.getId())
+                : (a, b) -> Long.compare(a.getId(), b.getId());
+        List<NotificationLog> result = new ArrayList<>();
+        for (LogArchiveBlockRange range : ranges) {
+            if (result.size() >= limit) {
+                long last = result.get(limit - 1).getId();
+                if (descending ? range.maxLogId < last : range.minLogId > last) break;
+            }
+            for (NotificationLog log : decodeBlock(range.id)) {
+                if (filter.test(log)) result.add(log);
+            }
+            result.sort(order);
+            if (result.size() > limit) result.subList(limit, result.size()).clear();
+        }
+        return result;
+    }
+
+    /**
+     * Delete a log from the archive. The block holding it is written again without it, or
+     * dropped if it was the last log left.
+     *
+     * @return whether the log was found in the archive
+     */
+    public boolean delete(long logId) throws IOException {
+        return database.runInTransaction(() -> {
+            for (LogArchiveBlock block : archiveDao.getBlocksContaining(logId)) {
+                List<NotificationLogRecord> records = decodeRecords(block);
+                if (records.removeIf(record -> record.getId() == logId)) {
+                    replaceBlock(block, records);
+                    return true;
+                }
+            }
+            return false;
+        });
+    }
+
+    /**
+     * Swap a block for one holding the given records. The new block gets a new id, so a reader
+     * that decoded the old one cannot cache it under the id of the new one.
+     */
+    private void replaceBlock(LogArchiveBlock block, List<NotificationLogRecord> records) throws IOException {
+        archiveDao.deleteBlock(block.getId());
+        archiveDao.deleteBlockApps(block.getId());
+        decodedBlocks.remove(block.getId());
+        if (records.isEmpty()) return;
+        LogArchiveDictionary dictionary = null;
+        if (block.getDictionaryId() != 0) {
+            dictionary = archiveDao.getDictionary(block.getDictionaryId());
+            if (dictionary == null) throw new IOException("Archive dictionary " + block.getDictionaryId() + " is missing");
+        }
+        insertBlock(encodeBlock(records, dictionary), records);
+    }
+
+    private void insertBlock(LogArchiveBlock block, List<NotificationLogRecord> records) {
+        long blockId = archiveDao.insertBlock(block);
+        Set<Long> appIds = new LinkedHashSet<>();
+        for (NotificationLogRecord record : records) {
+            appIds.add(record.getAppId());
+        }
+        List<LogArchiveBlockApp> blockApps = new ArrayList<>();
+        for (long appId : appIds) {
+            blockApps.add(new LogArchiveBlockApp(blockId, appId));
+        }
+        archiveDao.insertBlockApps(blockApps);
+    }
+
+    private LogArchiveDictionary getOrTrainDictionary(long cutoff) {
+        LogArchiveDictionary latest = archiveDao.getLatestDictionary();
+        if (latest != null && System.currentTimeMillis() - latest.getCreatedAt() < DICTIONARY_MAX_AGE_MS) {
+            return latest;
+        }
+        // Train on the logs about to be archived; too few to fill a block means nothing to do yet
+        List<NotificationLogRecord> sample = logDao.getRecordsOlderThan(cutoff, DICTIONARY_SAMPLE_ROWS);
+        if (sample.size() < BLOCK_ROWS) return latest;
+        LogArchiveDictionary trained = new LogArchiveDictionary(System.currentTimeMillis(), trainDictionary(sample));
+        trained.setId(archiveDao.insertDictionary(trained));
+        return trained;
+    }
+
+    /**
+     * Build a preset dictionary from the strings that would save the most bytes: whole short
+     * fields and words, scored by occurrences times length. Deflate prefers close matches, so
+     * the most valuable strings go last.
+     */
+    static byte[] trainDictionary(List<NotificationLogRecord> sample) {
+        Map<String, Integer> counts = new HashMap<>();
+        for (NotificationLogRecord record : sample) {
+            for (String field : textFields(record)) {
+                if (field == null || field.isEmpty()) continue;
+                if (field.length() <= DICTIONARY_MAX_STRING_LENGTH) counts.merge(field, 1, Integer::sum);
+                for (String word : field.split("\\s+")) {
+                    if (word.length() >= DICTIONARY_MIN_WORD_LENGTH) counts.merge(word, 1, Integer::sum);
+                }
+            }
+        }
+
+        List<Map.Entry<String, Integer>> candidates = new ArrayList<>();
+        for (Map.Entry<String, Integer> entry : counts.entrySet()) {
+            if (entry.getValue() > 1) candidates.add(entry);
+        }
+        candidates.sort((a, b) -> Long.compare(
+                (long) b.getValue() * b.getKey().length(), (long) a.getValue() * a.getKey().length()));
+
+        List<byte[]> picked = new ArrayList<>();
+        int size = 0;
+        for (Map.Entry<String, Integer> candidate : candidates) {
+            byte[] bytes = (candidate.getKey() + ' ').getBytes(StandardCharsets.UTF_8);
+            if (size + bytes.length > DICTIONARY_SIZE) continue;
+            picked.add(bytes);
+            size += bytes.length;
+        }
+
+        byte[] dictionary = new byte[size];
+        int offset = size;
+        for (byte[] bytes : picked) {
+            offset -= bytes.length;
+            System.arraycopy(bytes, 0, dictionary, offset, bytes.length);
+        }
+        return dictionary;
+    }
+
+    private static String[] textFields(NotificationLogRecord record) {
+        return new String[]{
+                record.getOriginalTitle(), record.getOriginalContent(), record.getOriginalSender(),
+                record.getModifiedTitle(), record.getModifiedContent(), record.getModifiedSender()
+        };
+    }
+
+    /**
+     * Records in id order, stored column by column so similar values sit next to each other
+     */
+    static LogArchiveBlock encodeBlock(List<NotificationLogRecord> records, LogArchiveDictionary dictionary)
+            throws IOException {
+        ByteArrayOutputStream raw = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(raw);
+        out.writeByte(FORMAT_VERSION);
+        out.writeInt(records.size());
+        long previousId = 0;
+        for (NotificationLogRecord record : records) {
+            out.writeLong(record.getId() - previousId);
+            previousId = record.getId();
+        }
+        long previousTimestamp = 0;
+        for (NotificationLogRecord record : records) {
+            out.writeLong(record.getTimestamp() - previousTimestamp);
+            previousTimestamp = record.getTimestamp();
+        }
+        for (NotificationLogRecord record : records) out.writeLong(record.getAppId());
+        for (NotificationLogRecord record : records) out.writeBoolean(record.isWasModified());
+        for (NotificationLogRecord record : records) out.writeLong(record.getRuleId());
+        for (NotificationLogRecord record : records) out.writeInt(record.getMergedCount());
+        for (NotificationLogRecord record : records) writeString(out, record.getAppliedRuleIds());
+        for (NotificationLogRecord record : records) writeString(out, record.getOriginalTitle());
+        for (NotificationLogRecord record : records) writeString(out, record.getOriginalContent());
+        for (NotificationLogRecord record : records) writeString(out, record.getOriginalSender());
+        for (NotificationLogRecord record : records) writeString(out, record.getModifiedTitle());
+        for (NotificationLogRecord record : records) writeString(out, record.getModifiedContent());
+        for (NotificationLogRecord record : records) writeString(out, record.getModifiedSender());
+        out.flush();
+        byte[] bytes = raw.toByteArray();
+
+        NotificationLogRecord first = records.get(0);
+        NotificationLogRecord last = records.get(records.size() - 1);
+        long minTimestamp = Long.MAX_VALUE;
+        long maxTimestamp = Long.MIN_VALUE;
+        for (NotificationLogRecord record : records) {
+            minTimestamp = Math.min(minTimestamp, record.getTimestamp());
+            maxTimestamp = Math.max(maxTimestamp, record.getTimestamp());
+        }
+
+        LogArchiveBlock block = new LogArchiveBlock();
+        block.setDictionaryId(dictionary != null ? dictionary.getId() : 0);
+        block.setMinLogId(first.getId());
+        block.setMaxLogId(last.getId());
+        block.setMinTimestamp(minTimestamp);
+        block.setMaxTimestamp(maxTimestamp);
+        block.setRowCount(records.size());
+        block.setRawSize(bytes.length);
+        block.setData(deflate(bytes, dictionary != null ? dictionary.getData() : null));
+        return block;
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0) return null;
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static byte[] deflate(byte[] data, byte[] dictionary) {
+        Deflater deflater = new Deflater(Deflater.BEST_COMPRESSION);
+        try {
+            if (dictionary != null && dictionary.length > 0) deflater.setDictionary(dictionary);
+            deflater.setInput(data);
+            deflater.finish();
+            ByteArrayOutputStream out = new ByteArrayOutputStream(data.length / 4);
+            byte[] buffer = new byte[8192];
+            while (!deflater.finished()) {
+                int length = deflater.deflate(buffer);
+                out.write(buffer, 0, length);
+            }
+            return out.toByteArray();
+        } finally {
+            deflater.end();
+        }
+    }
+
+    private byte[] inflate(LogArchiveBlock block) throws IOException {
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(block.getData());
+            byte[] data = new byte[block.getRawSize()];
+            int offset = 0;
+            while (offset < data.length) {
+                int length = inflater.inflate(data, offset, data.length - offset);
+                if (length == 0) {
+                    if (inflater.needsDictionary()) {
+                        inflater.setDictionary(getDictionary(block.getDictionaryId()));
+                    } else if (inflater.finished() || inflater.needsInput()) {
+                        throw new IOException("Archive block " + block.getId() + " is truncated");
+                    }
+                }
+                offset += length;
+            }
+            return data;
+        } catch (DataFormatException e) {
+            throw new IOException("Archive block " + block.getId() + " is corrupt", e);
+        } finally {
+            inflater.end();
+        }
+    }
+
+    private byte[] getDictionary(long id) throws IOException {
+        byte[] data = dictionaries.get(id);
+        if (data != null) return data;
+        LogArchiveDictionary dictionary = archiveDao.getDictionary(id);
+        if (dictionary == null) throw new IOException("Archive dictionary " + id + " is missing");
+        dictionaries.put(id, dictionary.getData());
+        return dictionary.getData();
+    }
+
+    /**
+     * Logs of a block in id order. Recently read blocks are kept decoded, since paging back and
+     * forth reads the same blocks repeatedly.
+     */
+    private List<NotificationLog> decodeBlock(long blockId) throws IOException {
+        List<NotificationLog> cached = decodedBlocks.get(blockId);
+        if (cached != null) return cached;
+
+        LogArchiveBlock block = archiveDao.getBlock(blockId);
+        // Deleted since its range was read; the paging source is invalidated by the same write
+        if (block == null) return new ArrayList<>();
+        List<NotificationLogRecord> records = decodeRecords(block);
+        List<NotificationLog> logs = new ArrayList<>(records.size());
+        for (NotificationLogRecord record : records) {
+            NotificationLog log = new NotificationLog();
+            log.setId(record.getId());
+            log.setTimestamp(record.getTimestamp());
+            LogApp app = getApp(record.getAppId());
+            if (app != null) {
+                log.setPackageName(app.getPackageName());
+                log.setAppName(app.getAppName());
+            }
+            log.setWasModified(record.isWasModified());
+            log.setRuleId(record.getRuleId());
+            log.setMergedCount(record.getMergedCount());
+            log.setAppliedRuleIds(record.getAppliedRuleIds());
+            log.setOriginalTitle(record.getOriginalTitle());
+            log.setOriginalContent(record.getOriginalContent());
+            log.setOriginalSender(record.getOriginalSender());
+            // Unchanged fields are stored as null, as in the view
+            log.setModifiedTitle(orElse(record.getModifiedTitle(), record.getOriginalTitle()));
+            log.setModifiedContent(orElse(record.getModifiedContent(), record.getOriginalContent()));
+            log.setModifiedSender(orElse(record.getModifiedSender(), record.getOriginalSender()));
+            logs.add(log);
+        }
+
+        decodedBlocks.put(blockId, logs);
+        return logs;
+    }
+
+    /**
+     * Records of a block in id order, as they were stored before archiving
+     */
+    List<NotificationLogRecord> decodeRecords(LogArchiveBlock block) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(inflate(block)));
+        int version = in.readUnsignedByte();
+        if (version != FORMAT_VERSION) {
+            throw new IOException("Archive block " + block.getId() + " has unknown format " + version);
+        }
+        int count = in.readInt();
+        List<NotificationLogRecord> records = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) records.add(new NotificationLogRecord());
+
+        long id = 0;
+        for (NotificationLogRecord record : records) {
+            id += in.readLong();
+            record.setId(id);
+        }
+        long timestamp = 0;
+        for (NotificationLogRecord record : records) {
+            timestamp += in.readLong();
+            record.setTimestamp(timestamp);
+        }
+        for (NotificationLogRecord record : records) record.setAppId(in.readLong());
+        for (NotificationLogRecord record : records) record.setWasModified(in.readBoolean());
+        for (NotificationLogRecord record : records) record.setRuleId(in.readLong());
+        for (NotificationLogRecord record : records) record.setMergedCount(in.readInt());
+        for (NotificationLogRecord record : records) record.setAppliedRuleIds(readString(in));
+        for (NotificationLogRecord record : records) record.setOriginalTitle(readString(in));
+        for (NotificationLogRecord record : records) record.setOriginalContent(readString(in));
+        for (NotificationLogRecord record : records) record.setOriginalSender(readString(in));
+        for (NotificationLogRecord record : records) record.setModifiedTitle(readString(in));
+        for (NotificationLogRecord record : records) record.setModifiedContent(readString(in));
+        for (NotificationLogRecord record : records) record.setModifiedSender(readString(in));
+        return records;
+    }
+
+    private static String orElse(String value, String fallback) {
+        return value != null ? value : fallback;
+    }
+
+    private LogApp getApp(long appId) {
+        LogApp app = apps.get(appId);
+        if (app == null) {
+            app = logDao.getAppById(appId);
+            if (app != null) apps.put(appId, app);
+        }
+        return app;
+    }
+}
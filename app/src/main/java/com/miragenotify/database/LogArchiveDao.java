@@ -0,0 +1,125 @@
+package com.miragenotify.database;
+
+import androidx.room.Dao;
+import androidx.room.Insert;
+import androidx.room.Query;
+
+import com.miragenotify.model.LogArchiveBlock;
+import com.miragenotify.model.LogArchiveBlockApp;
+import com.miragenotify.model.LogArchiveBlockRange;
+import com.miragenotify.model.LogArchiveDictionary;
+
+import java.util.List;
+
+/**
+ * Data Access Object for the compressed log archive.
+ * Block id ranges mostly follow each other but can overlap, so readers pick blocks by their
+ * ranges and sort the decoded logs themselves.
+ */
+@Dao
+public interface LogArchiveDao {
+
+    @Insert
+    long insertBlock(LogArchiveBlock block);
+
+    @Insert
+    void insertBlockApps(List<LogArchiveBlockApp> blockApps);
+
+    @Insert
+    long insertDictionary(LogArchiveDictionary dictionary);
+
+    @Query("SELECT * FROM log_archive_dictionaries ORDER BY id DESC LIMIT 1")
+    LogArchiveDictionary getLatestDictionary();
+
+    @Query("SELECT * FROM log_archive_dictionaries WHERE id = :id")
+    LogArchiveDictionary getDictionary(long id);
+
+    @Query("SELECT * FROM log_archive_blocks WHERE id = :id")
+    LogArchiveBlock getBlock(long id);
+    
+    /**
+     * Blocks that may hold the log, more than one if their ranges overlap
+     */
+    @Query("SELECT * FROM log_archive_blocks WHERE minLogId <= :logId AND maxLogId >= :logId")
+    List<LogArchiveBlock> getBlocksContaining(long logId);
+    
+    /**
+     * Ranges of the blocks holding logs with an id between {@code floorId} and {@code beforeId},
+     * newest first
+     */
+    @Query("SELECT id, minLogId, maxLogId FROM log_archive_blocks "
+            + "WHERE minLogId < :beforeId AND maxLogId > :floorId ORDER BY maxLogId DESC")
+    List<LogArchiveBlockRange> getBlockRangesBefore(long beforeId, long floorId);
+    
+    /**
+     * Ranges of the blocks holding logs with an id between {@code afterId} and {@code ceilingId},
+     * oldest first
+     */
+    @Query("SELECT id, minLogId, maxLogId FROM log_archive_blocks "
+            + "WHERE maxLogId > :afterId AND minLogId < :ceilingId ORDER BY minLogId ASC")
+    List<LogArchiveBlockRange> getBlockRangesAfter(long afterId, long ceilingId);
+    
+    /**
+     * {@link #getBlockRangesBefore} limited to the blocks holding an app's logs
+     */
+    @Query("SELECT b.id, b.minLogId, b.maxLogId FROM log_archive_block_apps a "
+            + "JOIN log_archive_blocks b ON b.id = a.blockId "
+            + "WHERE a.appId = :appId AND b.minLogId < :beforeId AND b.maxLogId > :floorId "
+            + "ORDER BY b.maxLogId DESC")
+    List<LogArchiveBlockRange> getAppBlockRangesBefore(long appId, long beforeId, long floorId);
+    
+    /**
+     * {@link #getBlockRangesAfter} limited to the blocks holding an app's logs
+     */
+    @Query("SELECT b.id, b.minLogId, b.maxLogId FROM log_archive_block_apps a "
+            + "JOIN log_archive_blocks b ON b.id = a.blockId "
+            + "WHERE a.appId = :appId AND b.maxLogId > :afterId AND b.minLogId < :ceilingId "
+            + "ORDER BY b.minLogId ASC")
+    List<LogArchiveBlockRange> getAppBlockRangesAfter(long appId, long afterId, long ceilingId);
+    
+    @Query("DELETE FROM log_archive_blocks WHERE id = :id")
+    void deleteBlock(long id);
+    
+    @Query("DELETE FROM log_archive_block_apps WHERE blockId = :blockId")
+    void deleteBlockApps(long blockId);
+
+    @Query("SELECT COALESCE(SUM(rowCount), 0) FROM log_archive_blocks")
+    int countArchivedLogs();
+
+    /**
+     * Delete blocks whose newest log is older than the timestamp
+     */
+    @Query("DELETE FROM log_archive_blocks WHERE maxTimestamp < :timestamp")
+    int deleteBlocksOlderThan(long timestamp);
+
+    /**
+     * Number of logs in the oldest block, 0 if the archive is empty
+     */
+    @Query("SELECT COALESCE((SELECT rowCount FROM log_archive_blocks ORDER BY maxLogId LIMIT 1), 0)")
+    int getOldestBlockRowCount();
+
+    /**
+     * Delete the oldest block
+     */
+    @Query("DELETE FROM log_archive_blocks WHERE id = (SELECT id FROM log_archive_blocks ORDER BY maxLogId LIMIT 1)")
+    int deleteOldestBlock();
+
+    /**
+     * Drop index rows of deleted blocks
+     */
+    @Query("DELETE FROM log_archive_block_apps WHERE blockId NOT IN (SELECT id FROM log_archive_blocks)")
+    void deleteOrphanedBlockApps();
+
+    /**
+     * Drop dictionaries no block refers to any more; the newest one is kept for the next run
+     */
+    @Query("DELETE FROM log_archive_dictionaries WHERE id NOT IN (SELECT dictionaryId FROM log_archive_blocks) "
+            + "AND id != (SELECT MAX(id) FROM log_archive_dictionaries)")
+    void deleteUnusedDictionaries();
+
+    @Query("DELETE FROM log_archive_blocks")
+    void deleteAllBlocks();
+
+    @Query("DELETE FROM log_archive_block_apps")
+    void deleteAllBlockApps();
+}
@@ -0,0 +1,133 @@
+package com.miragenotify.database;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.paging.ListenableFuturePagingSource;
+import androidx.paging.PagingState;
+import androidx.room.InvalidationTracker;
+
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.miragenotify.model.NotificationLog;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Executor;
+
+import kotlin.Unit;
+
+/**
+ * Pages the whole log history, newest first, keyed by log id.
+ * Each page merges recent rows from notification_logs with rows decoded from the archive, so
+ * the list scrolls from one tier into the other without a seam. Any write to either tier
+ * invalidates the source, like Room's own paging sources. The history can be limited to one
+ * package, which reads only the archive blocks listing it.
+ */
+public class LogHistoryPagingSource extends ListenableFuturePagingSource<Long, NotificationLog> {
+
+    private final NotificationLogDao logDao;
+    private final LogArchive archive;
+    @Nullable
+    private final String packageName;
+    private final Executor executor;
+
+    public LogHistoryPagingSource(AppDatabase database, LogArchive archive) {
+        this(database, archive, null);
+    }
+
+    /**
+     * @param packageName only page this package's logs, or null for all of them
+     */
+    public LogHistoryPagingSource(AppDatabase database, LogArchive archive, @Nullable String packageName) {
+        this.logDao = database.notificationLogDao();
+        this.archive = archive;
+        this.packageName = packageName;
+        this.executor = database.getQueryExecutor();
+
+        InvalidationTracker.Observer observer = new InvalidationTracker.Observer("notification_logs", "log_archive_blocks") {
+            @Override
+            public void onInvalidated(@NonNull Set<String> tables) {
+                invalidate();
+            }
+        };
+        database.getInvalidationTracker().addObserver(observer);
+        registerInvalidatedCallback(() -> {
+            database.getInvalidationTracker().removeObserver(observer);
+            return Unit.INSTANCE;
+        });
+    }
+
+    @NonNull
+    @Override
+    public ListenableFuture<LoadResult<Long, NotificationLog>> loadFuture(@NonNull LoadParams<Long> params) {
+        return Futures.submit(() -> load(params), executor);
+    }
+
+    private LoadResult<Long, NotificationLog> load(LoadParams<Long> params) {
+        try {
+            int limit = params.getLoadSize();
+            Long key = params.getKey();
+            if (params instanceof LoadParams.Prepend) {
+                long afterId = key;
+                List<NotificationLog> hot = packageName == null
+                        ? logDao.getLogsAfter(afterId, limit)
+                        : logDao.getLogsForPackageAfter(packageName, afterId, limit);
+                // A full page of recent rows bounds how far the archive has to be read
+                long ceilingId = hot.size() == limit ? hot.get(hot.size() - 1).getId() : Long.MAX_VALUE;
+                List<NotificationLog> page = merge(hot, archive.loadAfter(packageName, afterId, ceilingId, limit), limit, false);
+                Collections.reverse(page);
+                Long prevKey = page.size() < limit ? null : page.get(0).getId();
+                Long nextKey = page.isEmpty() ? null : page.get(page.size() - 1).getId();
+                return new LoadResult.Page<>(page, prevKey, nextKey);
+            }
+
+            long beforeId = key != null ? key : Long.MAX_VALUE;
+            List<NotificationLog> hot = packageName == null
+                    ? logDao.getLogsBefore(beforeId, limit)
+                    : logDao.getLogsForPackageBefore(packageName, beforeId, limit);
+            long floorId = hot.size() == limit ? hot.get(hot.size() - 1).getId() : 0;
+            List<NotificationLog> page = merge(hot, archive.loadBefore(packageName, beforeId, floorId, limit), limit, true);
+            // Newer logs than the first one are loaded by prepending; an empty refresh starts at its key
+            Long prevKey = key == null ? null : page.isEmpty() ? key - 1 : page.get(0).getId();
+            Long nextKey = page.size() < limit ? null : page.get(page.size() - 1).getId();
+            return new LoadResult.Page<>(page, prevKey, nextKey);
+        } catch (Exception e) {
+            return new LoadResult.Error<>(e);
+        }
+    }
+
+    /**
+     * Merge two lists sorted by id in the same direction, keeping at most {@code limit} logs
+     */
+    private static List<NotificationLog> merge(List<NotificationLog> a, List<NotificationLog> b,
+                                               int limit, boolean descending) {
+        List<NotificationLog> merged = new ArrayList<>(Math.min(limit, a.size() + b.size()));
+        int i = 0;
+        int j = 0;
+        while (merged.size() < limit && (i < a.size() || j < b.size())) {
+            boolean takeA;
+            if (j >= b.size()) {
+                takeA = true;
+            } else if (i >= a.size()) {
+                takeA = false;
+            } else {
+                int order = Long.compare(a.get(i).getId(), b.get(j).getId());
+                takeA = descending ? order > 0 : order < 0;
+            }
+            merged.add(takeA ? a.get(i++) : b.get(j++));
+        }
+        return merged;
+    }
+
+    @Nullable
+    @Override
+    public Long getRefreshKey(@NonNull PagingState<Long, NotificationLog> state) {
+        Integer anchorPosition = state.getAnchorPosition();
+        if (anchorPosition == null) return null;
+        NotificationLog anchor = state.closestItemToPosition(anchorPosition);
+        // Keys are exclusive, so start just above the anchor to keep it on the first page
+        return anchor != null ? anchor.getId() + 1 : null;
+    }
+}
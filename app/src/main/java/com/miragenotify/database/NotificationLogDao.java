@@ -1,45 +1,116 @@
 package com.miragenotify.database;
 
-import androidx.lifecycle.LiveData;
+import androidx.paging.PagingSource;
 import androidx.room.Dao;
-import androidx.room.Delete;
 import androidx.room.Insert;
+import androidx.room.OnConflictStrategy;
 import androidx.room.Query;
 
+import com.miragenotify.model.LogApp;
 import com.miragenotify.model.NotificationLog;
+import com.miragenotify.model.NotificationLogRecord;
 
 import java.util.List;
 
 /**
- * Data Access Object for NotificationLog
+ * Data Access Object for NotificationLog.
+ * Reads go through the notification_log_view; writes store {@link NotificationLogRecord}s,
+ * with the app interned in log_apps.
  */
 @Dao
 public interface NotificationLogDao {
     
     @Insert
-    long insert(NotificationLog log);
+    void insertAll(List<NotificationLogRecord> records);
     
-    @Delete
-    void delete(NotificationLog log);
+    /**
+     * @return the new id, or -1 if the package is already interned
+     */
+    @Insert(onConflict = OnConflictStrategy.IGNORE)
+    long insertApp(LogApp app);
     
-    @Query("SELECT * FROM notification_logs ORDER BY timestamp DESC LIMIT 500")
-    LiveData<List<NotificationLog>> getAllLogs();
+    @Query("SELECT * FROM log_apps WHERE packageName = :packageName")
+    LogApp getApp(String packageName);
     
-    @Query("SELECT * FROM notification_logs WHERE packageName = :packageName ORDER BY timestamp DESC")
-    LiveData<List<NotificationLog>> getLogsForPackage(String packageName);
+    @Query("SELECT * FROM log_apps WHERE id = :id")
+    LogApp getAppById(long id);
     
-    @Query("SELECT * FROM notification_logs WHERE wasModified = 1 ORDER BY timestamp DESC")
-    LiveData<List<NotificationLog>> getModifiedLogs();
+    @Query("UPDATE log_apps SET appName = :appName WHERE id = :id")
+    void updateAppName(long id, String appName);
     
-    @Query("DELETE FROM notification_logs WHERE timestamp < :timestamp")
-    void deleteOlderThan(long timestamp);
+    /**
+     * @return 0 if the log is not in notification_logs, e.g. because it was archived
+     */
+    @Query("DELETE FROM notification_logs WHERE id = :id")
+    int deleteById(long id);
     
-    @Query("DELETE FROM notification_logs")
-    void deleteAll();
+    @Query("DELETE FROM notification_logs WHERE id IN (:ids)")
+    int deleteByIds(List<Long> ids);
+    
+    /**
+     * Up to {@code limit} logs with an id below {@code beforeId}, newest first (keyset paging)
+     */
+    @Query("SELECT * FROM notification_log_view WHERE id < :beforeId ORDER BY id DESC LIMIT :limit")
+    List<NotificationLog> getLogsBefore(long beforeId, int limit);
+    
+    /**
+     * Up to {@code limit} logs with an id above {@code afterId}, oldest first (keyset paging)
+     */
+    @Query("SELECT * FROM notification_log_view WHERE id > :afterId ORDER BY id ASC LIMIT :limit")
+    List<NotificationLog> getLogsAfter(long afterId, int limit);
+    
+    /**
+     * Up to {@code limit} logs of a package with an id below {@code beforeId}, newest first
+     * (keyset paging)
+     */
+    @Query("SELECT * FROM notification_log_view WHERE packageName = :packageName AND id < :beforeId "
+            + "ORDER BY id DESC LIMIT :limit")
+    List<NotificationLog> getLogsForPackageBefore(String packageName, long beforeId, int limit);
+    
+    /**
+     * Up to {@code limit} logs of a package with an id above {@code afterId}, oldest first
+     * (keyset paging)
+     */
+    @Query("SELECT * FROM notification_log_view WHERE packageName = :packageName AND id > :afterId "
+            + "ORDER BY id ASC LIMIT :limit")
+    List<NotificationLog> getLogsForPackageAfter(String packageName, long afterId, int limit);
+    
+    /**
+     * Stored records older than the cutoff, in id order, for packing into the archive
+     */
+    @Query("SELECT * FROM notification_logs WHERE timestamp < :cutoff ORDER BY id LIMIT :limit")
+    List<NotificationLogRecord> getRecordsOlderThan(long cutoff, int limit);
+    
+    /**
+     * Logs whose original or modified text matches an FTS query, newest first.
+     * Ordered by docid, which the index returns in order without sorting every match; logs are
+     * written in the order they were posted, so it follows the timestamp.
+     *
+     * @param matchQuery FTS4 MATCH expression, e.g. {@code "invoice*" "paid*"}
+     */
+    @Query("SELECT notification_log_view.* FROM notification_logs_fts "
+            + "JOIN notification_log_view ON notification_log_view.id = notification_logs_fts.docid "
+            + "WHERE notification_logs_fts MATCH :matchQuery "
+            + "ORDER BY notification_logs_fts.docid DESC")
+    PagingSource<Integer, NotificationLog> searchLogsPaged(String matchQuery);
+    
+    /**
+     * Delete at most {@code limit} logs older than the timestamp, oldest first
+     */
+    @Query("DELETE FROM notification_logs WHERE id IN "
+            + "(SELECT id FROM notification_logs WHERE timestamp < :timestamp ORDER BY timestamp LIMIT :limit)")
+    int deleteOlderThanChunk(long timestamp, int limit);
+    
+    /**
+     * Delete the {@code limit} oldest logs
+     */
+    @Query("DELETE FROM notification_logs WHERE id IN "
+            + "(SELECT id FROM notification_logs ORDER BY timestamp, id LIMIT :limit)")
+    int deleteOldestChunk(int limit);
     
     @Query("SELECT COUNT(*) FROM notification_logs")
-    LiveData<Integer> getLogCount();
+    int countLogs();
     
-    @Query("SELECT COUNT(*) FROM notification_logs WHERE wasModified = 1")
-    LiveData<Integer> getModifiedCount();
+    @Query("DELETE FROM notification_logs")
+    void deleteAll();
 }
@@ -29,10 +29,14 @@ public interface NotificationRuleDao {
     @Query("SELECT * FROM notification_rules ORDER BY createdAt DESC")
     LiveData<List<NotificationRule>> getAllRules();
     
-    @Query("SELECT * FROM notification_rules WHERE isEnabled = 1")
+    /**
+     * Enabled rules in evaluation order: highest priority first, then oldest first
+     */
+    @Query("SELECT * FROM notification_rules WHERE isEnabled = 1 ORDER BY priority DESC, id ASC")
     List<NotificationRule> getEnabledRules();
     
-    @Query("SELECT * FROM notification_rules WHERE targetPackageName = :packageName AND isEnabled = 1")
+    @Query("SELECT * FROM notification_rules WHERE targetPackageName = :packageName AND isEnabled = 1 "
+            + "ORDER BY priority DESC, id ASC")
     List<NotificationRule> getEnabledRulesForPackage(String packageName);
     
     @Query("SELECT * FROM notification_rules WHERE id = :id")
@@ -0,0 +1,55 @@
+package com.miragenotify.database;
+
+import androidx.lifecycle.LiveData;
+import androidx.room.Dao;
+import androidx.room.Query;
+
+import com.miragenotify.model.PackageStats;
+import com.miragenotify.model.RuleHitCount;
+import com.miragenotify.model.RuleStats;
+
+import java.util.List;
+
+/**
+ * Data Access Object for the materialized interception counters.
+ * Counters are bumped with O(1) upserts, so the dashboard never has to count log rows.
+ */
+@Dao
+public interface StatsDao {
+    
+    @Query("INSERT OR IGNORE INTO package_stats (packageName, interceptedCount, modifiedCount) VALUES (:packageName, 0, 0)")
+    void ensurePackage(String packageName);
+    
+    @Query("UPDATE package_stats SET interceptedCount = interceptedCount + :intercepted, "
+            + "modifiedCount = modifiedCount + :modified WHERE packageName = :packageName")
+    void incrementPackage(String packageName, long intercepted, long modified);
+    
+    @Query("INSERT OR IGNORE INTO rule_stats (ruleId, hitCount) VALUES (:ruleId, 0)")
+    void ensureRule(long ruleId);
+    
+    @Query("UPDATE rule_stats SET hitCount = hitCount + :hits WHERE ruleId = :ruleId")
+    void incrementRule(long ruleId, long hits);
+    
+    @Query("SELECT COALESCE(SUM(interceptedCount), 0) FROM package_stats")
+    LiveData<Long> getInterceptedTotal();
+    
+    @Query("SELECT COALESCE(SUM(modifiedCount), 0) FROM package_stats")
+    LiveData<Long> getModifiedTotal();
+    
+    @Query("SELECT * FROM package_stats ORDER BY interceptedCount DESC LIMIT :limit")
+    LiveData<List<PackageStats>> getTopPackages(int limit);
+    
+    @Query("SELECT rule_stats.ruleId AS ruleId, notification_rules.ruleName AS ruleName, rule_stats.hitCount AS hitCount "
+            + "FROM rule_stats LEFT JOIN notification_rules ON notification_rules.id = rule_stats.ruleId "
+            + "ORDER BY rule_stats.hitCount DESC LIMIT :limit")
+    LiveData<List<RuleHitCount>> getTopRules(int limit);
+    
+    @Query("SELECT * FROM rule_stats")
+    List<RuleStats> getAllRuleStats();
+    
+    @Query("DELETE FROM package_stats")
+    void deleteAllPackageStats();
+    
+    @Query("DELETE FROM rule_stats")
+    void deleteAllRuleStats();
+}
@@ -0,0 +1,55 @@
+package com.miragenotify.model;
+
+import androidx.annotation.NonNull;
+import androidx.room.Entity;
+import androidx.room.PrimaryKey;
+
+/**
+ * Entity class holding a snapshot of one installed app for the rule editor's app picker
+ */
+@Entity(tableName = "installed_apps")
+public class InstalledApp {
+    
+    @PrimaryKey
+    @NonNull
+    private String packageName;
+    
+    @NonNull
+    private String label;
+    
+    // PackageInfo.lastUpdateTime when the label was read; a newer install means reading it again
+    private long lastUpdateTime;
+
+    public InstalledApp(@NonNull String packageName, @NonNull String label, long lastUpdateTime) {
+        this.packageName = packageName;
+        this.label = label;
+        this.lastUpdateTime = lastUpdateTime;
+    }
+
+    // Getters and Setters
+    @NonNull
+    public String getPackageName() {
+        return packageName;
+    }
+
+    public void setPackageName(@NonNull String packageName) {
+        this.packageName = packageName;
+    }
+
+    @NonNull
+    public String getLabel() {
+        return label;
+    }
+
+    public void setLabel(@NonNull String label) {
+        this.label = label;
+    }
+
+    public long getLastUpdateTime() {
+        return lastUpdateTime;
+    }
+
+    public void setLastUpdateTime(long lastUpdateTime) {
+        this.lastUpdateTime = lastUpdateTime;
+    }
+}
@@ -0,0 +1,55 @@
+package com.miragenotify.model;
+
+import androidx.annotation.NonNull;
+import androidx.room.Entity;
+import androidx.room.Index;
+import androidx.room.PrimaryKey;
+
+/**
+ * Entity class interning the package and app name of logged notifications, so log rows only
+ * carry an integer id
+ */
+@Entity(tableName = "log_apps",
+        indices = {@Index(value = "packageName", unique = true)})
+public class LogApp {
+    
+    @PrimaryKey(autoGenerate = true)
+    private long id;
+    
+    @NonNull
+    private String packageName;
+    
+    // Label when the app was last logged
+    private String appName;
+
+    public LogApp(@NonNull String packageName, String appName) {
+        this.packageName = packageName;
+        this.appName = appName;
+    }
+
+    // Getters and Setters
+    public long getId() {
+        return id;
+    }
+
+    public void setId(long id) {
+        this.id = id;
+    }
+
+    @NonNull
+    public String getPackageName() {
+        return packageName;
+    }
+
+    public void setPackageName(@NonNull String packageName) {
+        this.packageName = packageName;
+    }
+
+    public String getAppName() {
+        return appName;
+    }
+
+    public void setAppName(String appName) {
+        this.appName = appName;
+    }
+}
@@ -0,0 +1,104 @@
+package com.miragenotify.model;
+
+import androidx.room.Entity;
+import androidx.room.Index;
+import androidx.room.PrimaryKey;
+
+/**
+ * Entity class holding a run of old log records, Deflate-compressed with a shared dictionary.
+ * The id and time bounds let readers find the block without decompressing it; the packages it
+ * contains are listed in {@link LogArchiveBlockApp}.
+ */
+@Entity(tableName = "log_archive_blocks",
+        indices = {
+                @Index("minLogId"),
+                @Index("maxLogId"),
+                @Index("maxTimestamp")
+        })
+public class LogArchiveBlock {
+    
+    @PrimaryKey(autoGenerate = true)
+    private long id;
+    
+    private long dictionaryId; // LogArchiveDictionary the block was compressed with
+    private long minLogId;
+    private long maxLogId;
+    private long minTimestamp;
+    private long maxTimestamp;
+    private int rowCount;
+    private int rawSize; // Bytes before compression
+    private byte[] data;
+
+    // Getters and Setters
+    public long getId() {
+        return id;
+    }
+
+    public void setId(long id) {
+        this.id = id;
+    }
+
+    public long getDictionaryId() {
+        return dictionaryId;
+    }
+
+    public void setDictionaryId(long dictionaryId) {
+        this.dictionaryId = dictionaryId;
+    }
+
+    public long getMinLogId() {
+        return minLogId;
+    }
+
+    public void setMinLogId(long minLogId) {
+        this.minLogId = minLogId;
+    }
+
+    public long getMaxLogId() {
+        return maxLogId;
+    }
+
+    public void setMaxLogId(long maxLogId) {
+        this.maxLogId = maxLogId;
+    }
+
+    public long getMinTimestamp() {
+        return minTimestamp;
+    }
+
+    public void setMinTimestamp(long minTimestamp) {
+        this.minTimestamp = minTimestamp;
+    }
+
+    public long getMaxTimestamp() {
+        return maxTimestamp;
+    }
+
+    public void setMaxTimestamp(long maxTimestamp) {
+        this.maxTimestamp = maxTimestamp;
+    }
+
+    public int getRowCount() {
+        return rowCount;
+    }
+
+    public void setRowCount(int rowCount) {
+        this.rowCount = rowCount;
+    }
+
+    public int getRawSize() {
+        return rawSize;
+    }
+
+    public void setRawSize(int rawSize) {
+        this.rawSize = rawSize;
+    }
+
+    public byte[] getData() {
+        return data;
+    }
+
+    public void setData(byte[] data) {
+        this.data = data;
+    }
+}
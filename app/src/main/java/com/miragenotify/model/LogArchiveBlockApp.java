@@ -0,0 +1,38 @@
+package com.miragenotify.model;
+
+import androidx.room.Entity;
+import androidx.room.Index;
+
+/**
+ * Entity class indexing which apps have records in an archive block
+ */
+@Entity(tableName = "log_archive_block_apps",
+        primaryKeys = {"blockId", "appId"},
+        indices = {@Index({"appId", "blockId"})})
+public class LogArchiveBlockApp {
+    
+    private long blockId;
+    private long appId;
+
+    public LogArchiveBlockApp(long blockId, long appId) {
+        this.blockId = blockId;
+        this.appId = appId;
+    }
+
+    // Getters and Setters
+    public long getBlockId() {
+        return blockId;
+    }
+
+    public void setBlockId(long blockId) {
+        this.blockId = blockId;
+    }
+
+    public long getAppId() {
+        return appId;
+    }
+
+    public void setAppId(long appId) {
+        this.appId = appId;
+    }
+}
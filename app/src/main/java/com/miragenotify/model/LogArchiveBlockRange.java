@@ -0,0 +1,11 @@
+package com.miragenotify.model;
+
+/**
+ * Id bounds of an archive block, without its data, for choosing which blocks to decode
+ */
+public class LogArchiveBlockRange {
+
+    public long id;
+    public long minLogId;
+    public long maxLogId;
+}
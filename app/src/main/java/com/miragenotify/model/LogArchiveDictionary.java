@@ -0,0 +1,48 @@
+package com.miragenotify.model;
+
+import androidx.room.Entity;
+import androidx.room.PrimaryKey;
+
+/**
+ * Entity class holding a Deflate preset dictionary trained on log text. Blocks keep the
+ * dictionary they were compressed with, so retraining never touches existing blocks.
+ */
+@Entity(tableName = "log_archive_dictionaries")
+public class LogArchiveDictionary {
+    
+    @PrimaryKey(autoGenerate = true)
+    private long id;
+    
+    private long createdAt;
+    private byte[] data;
+
+    public LogArchiveDictionary(long createdAt, byte[] data) {
+        this.createdAt = createdAt;
+        this.data = data;
+    }
+
+    // Getters and Setters
+    public long getId() {
+        return id;
+    }
+
+    public void setId(long id) {
+        this.id = id;
+    }
+
+    public long getCreatedAt() {
+        return createdAt;
+    }
+
+    public void setCreatedAt(long createdAt) {
+        this.createdAt = createdAt;
+    }
+
+    public byte[] getData() {
+        return data;
+    }
+
+    public void setData(byte[] data) {
+        this.data = data;
+    }
+}
@@ -1,15 +1,27 @@
 package com.miragenotify.model;
 
-import androidx.room.Entity;
-import androidx.room.PrimaryKey;
+import androidx.room.DatabaseView;
 
 /**
- * Entity class representing a logged notification (original and modified)
+ * A logged notification (original and modified) as the app sees it.
+ * Read from a view that joins the stored {@link NotificationLogRecord} with its {@link LogApp}
+ * and fills unchanged modified fields with the originals; written through the log writer,
+ * which interns the app and drops the unchanged fields.
  */
-@Entity(tableName = "notification_logs")
+@DatabaseView(viewName = NotificationLog.VIEW_NAME, value = NotificationLog.VIEW_QUERY)
 public class NotificationLog {
     
-    @PrimaryKey(autoGenerate = true)
+    public static final String VIEW_NAME = "notification_log_view";
+    public static final String VIEW_QUERY = "SELECT l.id AS id, a.packageName AS packageName, a.appName AS appName, "
+            + "l.originalTitle AS originalTitle, l.originalContent AS originalContent, "
+            + "l.originalSender AS originalSender, "
+            + "COALESCE(l.modifiedTitle, l.originalTitle) AS modifiedTitle, "
+            + "COALESCE(l.modifiedContent, l.originalContent) AS modifiedContent, "
+            + "COALESCE(l.modifiedSender, l.originalSender) AS modifiedSender, "
+            + "l.wasModified AS wasModified, l.ruleId AS ruleId, l.appliedRuleIds AS appliedRuleIds, "
+            + "l.mergedCount AS mergedCount, l.timestamp AS timestamp "
+            + "FROM notification_logs l LEFT JOIN log_apps a ON a.id = l.appId";
+    
     private long id;
     
     private String packageName;
@@ -27,6 +39,9 @@ public class NotificationLog {
     
     private boolean wasModified;
     private long ruleId; // ID of the rule that was applied (0 if none)
+    private String appliedRuleIds; // Comma-separated IDs of every applied rule, in priority order
+    // Earlier updates of the same notification that were superseded before being processed
+    private int mergedCount;
     private long timestamp;
 
     public NotificationLog() {
@@ -122,6 +137,50 @@ public class NotificationLog {
         this.ruleId = ruleId;
     }
 
+    public String getAppliedRuleIds() {
+        return appliedRuleIds;
+    }
+
+    public void setAppliedRuleIds(String appliedRuleIds) {
+        this.appliedRuleIds = appliedRuleIds;
+    }
+
+    public int getMergedCount() {
+        return mergedCount;
+    }
+
+    public void setMergedCount(int mergedCount) {
+        this.mergedCount = mergedCount;
+    }
+
+    /**
+     * Encode rule ids for {@link #setAppliedRuleIds}, or null if there are none
+     */
+    public static String joinRuleIds(long[] ruleIds) {
+        if (ruleIds == null || ruleIds.length == 0) return null;
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < ruleIds.length; i++) {
+            if (i > 0) sb.append(',');
+            sb.append(ruleIds[i]);
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Decode {@link #getAppliedRuleIds}, falling back to the single rule id for older entries
+     */
+    public long[] getAppliedRuleIdArray() {
+        if (appliedRuleIds == null || appliedRuleIds.isEmpty()) {
+            return ruleId != 0 ? new long[]{ruleId} : new long[0];
+        }
+        String[] parts = appliedRuleIds.split(",");
+        long[] ids = new long[parts.length];
+        for (int i = 0; i < parts.length; i++) {
+            ids[i] = Long.parseLong(parts[i]);
+        }
+        return ids;
+    }
+
     public long getTimestamp() {
         return timestamp;
     }
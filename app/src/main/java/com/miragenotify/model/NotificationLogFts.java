@@ -0,0 +1,71 @@
+package com.miragenotify.model;
+
+import androidx.room.Entity;
+import androidx.room.Fts4;
+import androidx.room.FtsOptions;
+
+/**
+ * Full-text index over the text of {@link NotificationLog}.
+ * External content table: only the index is stored, the text stays in notification_logs, and
+ * triggers on that table keep the index in sync. Its docid is the log's id. Modified fields are
+ * only indexed where they differ from the original.
+ */
+@Fts4(contentEntity = NotificationLogRecord.class, tokenizer = FtsOptions.TOKENIZER_UNICODE61)
+@Entity(tableName = "notification_logs_fts")
+public class NotificationLogFts {
+
+    private String originalTitle;
+    private String originalContent;
+    private String originalSender;
+    private String modifiedTitle;
+    private String modifiedContent;
+    private String modifiedSender;
+
+    public String getOriginalTitle() {
+        return originalTitle;
+    }
+
+    public void setOriginalTitle(String originalTitle) {
+        this.originalTitle = originalTitle;
+    }
+
+    public String getOriginalContent() {
+        return originalContent;
+    }
+
+    public void setOriginalContent(String originalContent) {
+        this.originalContent = originalContent;
+    }
+
+    public String getOriginalSender() {
+        return originalSender;
+    }
+
+    public void setOriginalSender(String originalSender) {
+        this.originalSender = originalSender;
+    }
+
+    public String getModifiedTitle() {
+        return modifiedTitle;
+    }
+
+    public void setModifiedTitle(String modifiedTitle) {
+        this.modifiedTitle = modifiedTitle;
+    }
+
+    public String getModifiedContent() {
+        return modifiedContent;
+    }
+
+    public void setModifiedContent(String modifiedContent) {
+        this.modifiedContent = modifiedContent;
+    }
+
+    public String getModifiedSender() {
+        return modifiedSender;
+    }
+
+    public void setModifiedSender(String modifiedSender) {
+        this.modifiedSender = modifiedSender;
+    }
+}
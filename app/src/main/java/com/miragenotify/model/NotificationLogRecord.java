@@ -0,0 +1,174 @@
+package com.miragenotify.model;
+
+import androidx.room.ColumnInfo;
+import androidx.room.Entity;
+import androidx.room.Index;
+import androidx.room.PrimaryKey;
+
+import java.util.Objects;
+
+/**
+ * Entity class for how a log entry is stored. The app is a {@link LogApp} id, and a modified
+ * field is only stored when it differs from the original (null means unchanged).
+ * Read entries through {@link NotificationLog}, which puts the full row back together.
+ */
+@Entity(tableName = "notification_logs",
+        indices = {
+                @Index("timestamp"),
+                @Index({"appId", "timestamp"}),
+                @Index({"wasModified", "timestamp"})
+        })
+public class NotificationLogRecord {
+    
+    @PrimaryKey(autoGenerate = true)
+    private long id;
+    
+    private long appId; // LogApp id, 0 if the package is unknown
+    
+    private String originalTitle;
+    private String originalContent;
+    private String originalSender;
+    
+    private String modifiedTitle;
+    private String modifiedContent;
+    private String modifiedSender;
+    
+    private boolean wasModified;
+    private long ruleId;
+    private String appliedRuleIds;
+    @ColumnInfo(defaultValue = "0")
+    private int mergedCount;
+    private long timestamp;
+
+    public NotificationLogRecord() {
+    }
+
+    /**
+     * Storage form of a log entry, with its app already interned
+     */
+    public static NotificationLogRecord from(NotificationLog log, long appId) {
+        NotificationLogRecord record = new NotificationLogRecord();
+        record.appId = appId;
+        record.originalTitle = log.getOriginalTitle();
+        record.originalContent = log.getOriginalContent();
+        record.originalSender = log.getOriginalSender();
+        record.modifiedTitle = changedOrNull(log.getOriginalTitle(), log.getModifiedTitle());
+        record.modifiedContent = changedOrNull(log.getOriginalContent(), log.getModifiedContent());
+        record.modifiedSender = changedOrNull(log.getOriginalSender(), log.getModifiedSender());
+        record.wasModified = log.isWasModified();
+        record.ruleId = log.getRuleId();
+        record.appliedRuleIds = log.getAppliedRuleIds();
+        record.mergedCount = log.getMergedCount();
+        record.timestamp = log.getTimestamp();
+        return record;
+    }
+
+    private static String changedOrNull(String original, String modified) {
+        return Objects.equals(original, modified) ? null : modified;
+    }
+
+    // Getters and Setters
+    public long getId() {
+        return id;
+    }
+
+    public void setId(long id) {
+        this.id = id;
+    }
+
+    public long getAppId() {
+        return appId;
+    }
+
+    public void setAppId(long appId) {
+        this.appId = appId;
+    }
+
+    public String getOriginalTitle() {
+        return originalTitle;
+    }
+
+    public void setOriginalTitle(String originalTitle) {
+        this.originalTitle = originalTitle;
+    }
+
+    public String getOriginalContent() {
+        return originalContent;
+    }
+
+    public void setOriginalContent(String originalContent) {
+        this.originalContent = originalContent;
+    }
+
+    public String getOriginalSender() {
+        return originalSender;
+    }
+
+    public void setOriginalSender(String originalSender) {
+        this.originalSender = originalSender;
+    }
+
+    public String getModifiedTitle() {
+        return modifiedTitle;
+    }
+
+    public void setModifiedTitle(String modifiedTitle) {
+        this.modifiedTitle = modifiedTitle;
+    }
+
+    public String getModifiedContent() {
+        return modifiedContent;
+    }
+
+    public void setModifiedContent(String modifiedContent) {
+        this.modifiedContent = modifiedContent;
+    }
+
+    public String getModifiedSender() {
+        return modifiedSender;
+    }
+
+    public void setModifiedSender(String modifiedSender) {
+        this.modifiedSender = modifiedSender;
+    }
+
+    public boolean isWasModified() {
+        return wasModified;
+    }
+
+    public void setWasModified(boolean wasModified) {
+        this.wasModified = wasModified;
+    }
+
+    public long getRuleId() {
+        return ruleId;
+    }
+
+    public void setRuleId(long ruleId) {
+        this.ruleId = ruleId;
+    }
+
+    public String getAppliedRuleIds() {
+        return appliedRuleIds;
+    }
+
+    public void setAppliedRuleIds(String appliedRuleIds) {
+        this.appliedRuleIds = appliedRuleIds;
+    }
+
+    public int getMergedCount() {
+        return mergedCount;
+    }
+
+    public void setMergedCount(int mergedCount) {
+        this.mergedCount = mergedCount;
+    }
+
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    public void setTimestamp(long timestamp) {
+        this.timestamp = timestamp;
+    }
+}
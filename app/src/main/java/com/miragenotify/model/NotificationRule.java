@@ -1,13 +1,20 @@
 package com.miragenotify.model;
 
+import androidx.room.ColumnInfo;
 import androidx.room.Entity;
+import androidx.room.Index;
 import androidx.room.PrimaryKey;
 
+import com.miragenotify.engine.MatchMode;
+import com.miragenotify.engine.RewriteAction;
+import com.miragenotify.engine.RewriteRule;
+
 /**
  * Entity class representing a notification modification rule
  */
-@Entity(tableName = "notification_rules")
-public class NotificationRule {
+@Entity(tableName = "notification_rules",
+        indices = {@Index({"targetPackageName", "isEnabled"})})
+public class NotificationRule implements RewriteRule {
     
     @PrimaryKey(autoGenerate = true)
     private long id;
@@ -15,10 +22,13 @@ public class NotificationRule {
     private String ruleName;
     private String targetPackageName; // Package name of the app to target
     private boolean isEnabled;
+    @ColumnInfo(defaultValue = "0")
+    private int priority; // Higher is tested first; 0 means no explicit priority
     private ModificationType modificationType;
     
     // Modification parameters
     private String searchText; // Text to search for
+    private MatchMode matchMode; // How searchText is interpreted
     private String replacementText; // Text to replace with
     private boolean modifyTitle;
     private boolean modifyContent;
@@ -31,6 +41,7 @@ public class NotificationRule {
         this.createdAt = System.currentTimeMillis();
         this.updatedAt = System.currentTimeMillis();
         this.isEnabled = true;
+        this.matchMode = MatchMode.LITERAL;
     }
 
     // Getters and Setters
@@ -66,6 +77,14 @@ public class NotificationRule {
         isEnabled = enabled;
     }
 
+    public int getPriority() {
+        return priority;
+    }
+
+    public void setPriority(int priority) {
+        this.priority = priority;
+    }
+
     public ModificationType getModificationType() {
         return modificationType;
     }
@@ -74,6 +93,20 @@ public class NotificationRule {
         this.modificationType = modificationType;
     }
 
+    /**
+     * The engine action for this rule's modification type
+     */
+    @Override
+    public RewriteAction getRewriteAction() {
+        if (modificationType == null) return RewriteAction.NONE;
+        switch (modificationType) {
+            case REPLACE_TEXT: return RewriteAction.REPLACE;
+            case MASK_TEXT: return RewriteAction.MASK;
+            case RENAME_SENDER: return RewriteAction.REPLACE_FIELD;
+            default: return RewriteAction.NONE;
+        }
+    }
+
     public String getSearchText() {
         return searchText;
     }
@@ -82,6 +115,14 @@ public class NotificationRule {
         this.searchText = searchText;
     }
 
+    public MatchMode getMatchMode() {
+        return matchMode;
+    }
+
+    public void setMatchMode(MatchMode matchMode) {
+        this.matchMode = matchMode;
+    }
+
     public String getReplacementText() {
         return replacementText;
     }
@@ -0,0 +1,49 @@
+package com.miragenotify.model;
+
+import androidx.annotation.NonNull;
+import androidx.room.Entity;
+import androidx.room.PrimaryKey;
+
+/**
+ * Entity class holding running interception counters for one package
+ */
+@Entity(tableName = "package_stats")
+public class PackageStats {
+    
+    @PrimaryKey
+    @NonNull
+    private String packageName;
+    
+    private long interceptedCount;
+    private long modifiedCount;
+
+    public PackageStats(@NonNull String packageName) {
+        this.packageName = packageName;
+    }
+
+    // Getters and Setters
+    @NonNull
+    public String getPackageName() {
+        return packageName;
+    }
+
+    public void setPackageName(@NonNull String packageName) {
+        this.packageName = packageName;
+    }
+
+    public long getInterceptedCount() {
+        return interceptedCount;
+    }
+
+    public void setInterceptedCount(long interceptedCount) {
+        this.interceptedCount = interceptedCount;
+    }
+
+    public long getModifiedCount() {
+        return modifiedCount;
+    }
+
+    public void setModifiedCount(long modifiedCount) {
+        this.modifiedCount = modifiedCount;
+    }
+}
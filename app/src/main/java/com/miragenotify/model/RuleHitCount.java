@@ -0,0 +1,11 @@
+package com.miragenotify.model;
+
+/**
+ * Rule name joined with its hit counter, for the Home dashboard
+ */
+public class RuleHitCount {
+    
+    public long ruleId;
+    public String ruleName;
+    public long hitCount;
+}
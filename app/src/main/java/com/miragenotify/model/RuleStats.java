@@ -0,0 +1,37 @@
+package com.miragenotify.model;
+
+import androidx.room.Entity;
+import androidx.room.PrimaryKey;
+
+/**
+ * Entity class holding the running hit counter for one rule
+ */
+@Entity(tableName = "rule_stats")
+public class RuleStats {
+    
+    @PrimaryKey
+    private long ruleId;
+    
+    private long hitCount;
+
+    public RuleStats(long ruleId) {
+        this.ruleId = ruleId;
+    }
+
+    // Getters and Setters
+    public long getRuleId() {
+        return ruleId;
+    }
+
+    public void setRuleId(long ruleId) {
+        this.ruleId = ruleId;
+    }
+
+    public long getHitCount() {
+        return hitCount;
+    }
+
+    public void setHitCount(long hitCount) {
+        this.hitCount = hitCount;
+    }
+}
@@ -0,0 +1,97 @@
+package com.miragenotify.service;
+
+import com.miragenotify.engine.MemoStats;
+
+import java.io.PrintWriter;
+import java.util.Locale;
+
+/**
+ * Process-wide latency histograms for every stage between onNotificationPosted and the repost.
+ * Written by the interception service, read by the diagnostics screen and dumpsys.
+ */
+public class InterceptionMetrics {
+
+    public enum Stage {
+        ENQUEUE_WAIT,  // posted callback until an intercept lane picks the notification up (includes coalescing window)
+        RULE_LOOKUP,   // fetching the package's compiled rules from the index
+        MATCH,         // scanning every text segment, messages included (literals only in first-match mode)
+        REWRITE,       // picking rules, running patterns they need and building the modified text
+        CANCEL,        // cancelNotification for the original
+        REPOST,        // building and posting the replacement
+        END_TO_END,    // posted callback until the replacement is posted (modified only)
+        LOG_PERSIST    // one log batch transaction, including counter updates
+    }
+
+    private static volatile InterceptionMetrics INSTANCE;
+
+    private final LatencyHistogram[] histograms = new LatencyHistogram[Stage.values().length];
+    private final MemoStats memoStats = new MemoStats();
+    private volatile long resetAtMillis = System.currentTimeMillis();
+
+    private InterceptionMetrics() {
+        for (Stage stage : Stage.values()) {
+            histograms[stage.ordinal()] = new LatencyHistogram();
+        }
+    }
+
+    /**
+     * Get the metrics instance (Singleton pattern)
+     */
+    public static InterceptionMetrics getInstance() {
+        if (INSTANCE == null) {
+            synchronized (InterceptionMetrics.class) {
+                if (INSTANCE == null) {
+                    INSTANCE = new InterceptionMetrics();
+                }
+            }
+        }
+        return INSTANCE;
+    }
+
+    public void record(Stage stage, long nanos) {
+        histograms[stage.ordinal()].record(nanos);
+    }
+
+    public LatencyHistogram getHistogram(Stage stage) {
+        return histograms[stage.ordinal()];
+    }
+
+    /**
+     * Counters of the rule sets' scan memo (titles and sender names seen before)
+     */
+    public MemoStats getMemoStats() {
+        return memoStats;
+    }
+
+    public void reset() {
+        for (LatencyHistogram histogram : histograms) histogram.reset();
+        memoStats.reset();
+        resetAtMillis = System.currentTimeMillis();
+    }
+
+    /**
+     * Percentile table in milliseconds, shared by dumpsys and the diagnostics screen
+     */
+    public void dump(PrintWriter writer) {
+        long sinceSeconds = (System.currentTimeMillis() - resetAtMillis) / 1000;
+        writer.println("Interception latency (ms), last " + sinceSeconds + " s:");
+        writer.println(String.format(Locale.US, "  %-13s %8s %8s %8s %8s %8s",
+                "stage", "count", "p50", "p95", "p99", "max"));
+        for (Stage stage : Stage.values()) {
+            LatencyHistogram h = histograms[stage.ordinal()];
+            writer.println(String.format(Locale.US, "  %-13s %8d %8s %8s %8s %8s",
+                    stage.name().toLowerCase(Locale.US),
+                    h.getCount(),
+                    formatMillis(h.getPercentileNanos(50)),
+                    formatMillis(h.getPercentileNanos(95)),
+                    formatMillis(h.getPercentileNanos(99)),
+                    formatMillis(h.getMaxNanos())));
+        }
+        writer.println(String.format(Locale.US, "Scan memo: hits=%d misses=%d (%.1f%%)",
+                memoStats.getHits(), memoStats.getMisses(), memoStats.getHitRate() * 100));
+    }
+
+    private static String formatMillis(long nanos) {
+        return String.format(Locale.US, "%.3f", nanos / 1_000_000.0);
+    }
+}
@@ -0,0 +1,406 @@
+package com.miragenotify.service;
+
+import android.os.Process;
+import android.util.Log;
+
+import java.io.PrintWriter;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Staged executor for the interception service.
+ * The intercept stage (matching, cancel and repost) runs on high-priority lanes; every package is
+ * pinned to one lane so its notifications are handled in posting order. Updates of the same
+ * notification key can be coalesced, so a burst of reposts is processed once, as its newest version.
+ * A lane runs its tasks strictly in submission order: a task that may start earlier than the one
+ * before it (after a change of coalescing window) waits for it.
+ * Logging and other work that can wait runs on a single low-priority background stage.
+ */
+public class InterceptionPipeline {
+
+    private static final String TAG = "InterceptionPipeline";
+    private static final int DEFAULT_LANE_COUNT = 2;
+
+    public enum Stage {
+        INTERCEPT,
+        BACKGROUND
+    }
+
+    /**
+     * Work for the newest update of a key. One instance serves every update; what differs between
+     * them is passed in, so submitting an update allocates nothing.
+     */
+    public interface CoalescedTask<T> {
+        /**
+         * @param item what the update was submitted with
+         * @param submittedAt {@link System#nanoTime()} when the update was submitted
+         * @param mergedCount number of older updates of the key that were dropped in favour of this one
+         */
+        void run(T item, long submittedAt, int mergedCount);
+    }
+
+    private final Lane[] lanes;
+    private final ThreadPoolExecutor background;
+    private final StageStats[] stats = new StageStats[Stage.values().length];
+    private final AtomicLong coalescedCount = new AtomicLong();
+
+    public InterceptionPipeline() {
+        this(DEFAULT_LANE_COUNT);
+    }
+
+    public InterceptionPipeline(int laneCount) {
+        for (Stage stage : Stage.values()) {
+            stats[stage.ordinal()] = new StageStats();
+        }
+        lanes = new Lane[Math.max(1, laneCount)];
+        for (int i = 0; i < lanes.length; i++) {
+            lanes[i] = new Lane("MirageIntercept-" + i, stats[Stage.INTERCEPT.ordinal()], coalescedCount);
+        }
+        background = newStageExecutor("MirageBackground", Process.THREAD_PRIORITY_BACKGROUND);
+    }
+
+    /**
+     * Run critical work for a package. Tasks for the same package run in submission order.
+     */
+    public void submitIntercept(String packageName, Runnable task) {
+        laneFor(packageName).submit(null, 0, task, null);
+    }
+
+    /**
+     * Run critical work for one update of a notification key. An update that is still queued
+     * when a newer one of the same key arrives is dropped, and the newer one is told how many
+     * updates it replaced. With a window of 0 this only merges updates that piled up behind
+     * other work, so nothing is delayed; a longer window makes every update wait that long for
+     * a newer one, trading latency for fewer reposts.
+     */
+    public <T> void submitCoalesced(String packageName, String key, long windowMs, T item,
+                                    CoalescedTask<? super T> task) {
+        laneFor(packageName).submit(key, windowMs, task, item);
+    }
+
+    private Lane laneFor(String packageName) {
+        return lanes[(packageName.hashCode() & Integer.MAX_VALUE) % lanes.length];
+    }
+
+    /**
+     * Run work that must not delay interception
+     */
+    public void submitBackground(Runnable task) {
+        StageStats stageStats = stats[Stage.BACKGROUND.ordinal()];
+        long enqueuedAt = System.nanoTime();
+        try {
+            background.execute(() -> {
+                long startedAt = System.nanoTime();
+                try {
+                    task.run();
+                } finally {
+                    stageStats.record(startedAt - enqueuedAt, System.nanoTime() - startedAt);
+                }
+            });
+        } catch (Exception e) {
+            Log.w(TAG, Stage.BACKGROUND + " task rejected", e);
+        }
+    }
+
+    public int getQueueDepth(Stage stage) {
+        if (stage == Stage.BACKGROUND) return background.getQueue().size();
+        int depth = 0;
+        for (Lane lane : lanes) depth += lane.size();
+        return depth;
+    }
+
+    public StageStats getStats(Stage stage) {
+        return stats[stage.ordinal()];
+    }
+
+    /**
+     * Updates dropped because a newer update of the same key replaced them
+     */
+    public long getCoalescedCount() {
+        return coalescedCount.get();
+    }
+
+    public void dump(PrintWriter writer) {
+        writer.println("Pipeline (" + lanes.length + " intercept lanes, " + coalescedCount.get() + " coalesced):");
+        for (Stage stage : Stage.values()) {
+            StageStats s = stats[stage.ordinal()];
+            writer.println("  " + stage + ": queued=" + getQueueDepth(stage)
+                    + " completed=" + s.getCount()
+                    + " avgWaitUs=" + s.getAverageWaitNanos() / 1000
+                    + " avgRunUs=" + s.getAverageRunNanos() / 1000
+                    + " maxRunUs=" + s.getMaxRunNanos() / 1000);
+        }
+    }
+
+    /**
+     * Stop accepting work and wait for queued work to finish, pending coalescing windows included.
+     * The lanes are drained before the background stage is shut down, since intercept tasks hand
+     * their logging to it.
+     *
+     * @return false if the timeout passed with work still queued
+     */
+    public boolean shutdown(long timeoutMs) {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMs);
+        for (Lane lane : lanes) lane.shutdown();
+        boolean terminated = true;
+        try {
+            for (Lane lane : lanes) {
+                terminated &= lane.awaitTermination(deadline - System.nanoTime());
+            }
+            background.shutdown();
+            terminated &= background.awaitTermination(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+        } catch (InterruptedException e) {
+            background.shutdown();
+            Thread.currentThread().interrupt();
+            return false;
+        }
+        if (!terminated) {
+            Log.w(TAG, "Pipeline did not drain in " + timeoutMs + " ms, " + getQueueDepth(Stage.INTERCEPT)
+                    + " intercept and " + getQueueDepth(Stage.BACKGROUND) + " background tasks left");
+        }
+        return terminated;
+    }
+
+    private static ThreadPoolExecutor newStageExecutor(String name, int priority) {
+        return new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<>(),
+                newThreadFactory(name, priority));
+    }
+
+    private static ThreadFactory newThreadFactory(String name, int priority) {
+        return runnable -> new Thread(() -> {
+            Process.setThreadPriority(priority);
+            runnable.run();
+        }, name);
+    }
+
+    /**
+     * One intercept lane: a thread and the queue of its tasks, in submission order. Due times never
+     * decrease along the queue, so the thread only ever waits for the head and a task can never
+     * overtake an older one.
+     * The queue is a ring of parallel arrays that only grows when a backlog outgrows it, and each
+     * task records its own wait and run time, so a task costs no allocation from submission to run.
+     * Coalescing looks for a queued update of the same key by scanning the queue, which is short
+     * unless the lane has fallen behind; a key always maps to the same lane, so nothing is shared.
+     */
+    private static final class Lane implements Runnable {
+        private static final int INITIAL_CAPACITY = 64;
+
+        private final Thread thread;
+        private final StageStats stats;
+        private final AtomicLong coalescedCount;
+
+        // Slot i holds a Runnable, or a CoalescedTask with its item; a dropped update keeps an empty slot
+        private Object[] tasks = new Object[INITIAL_CAPACITY];
+        private Object[] items = new Object[INITIAL_CAPACITY];
+        private String[] keys = new String[INITIAL_CAPACITY];
+        private int[] mergedCounts = new int[INITIAL_CAPACITY];
+        private long[] submittedAt = new long[INITIAL_CAPACITY];
+        private long[] dueNanos = new long[INITIAL_CAPACITY];
+        private int head;
+        private int count;
+        private int live;
+        private long lastDueNanos = System.nanoTime();
+        private boolean shutdown;
+
+        Lane(String name, StageStats stats, AtomicLong coalescedCount) {
+            this.stats = stats;
+            this.coalescedCount = coalescedCount;
+            this.thread = new Thread(this, name);
+            thread.start();
+        }
+
+        /**
+         * @param key coalescing key, or null to run the task unconditionally
+         * @param task a Runnable if key is null, otherwise a CoalescedTask taking the item
+         */
+        synchronized void submit(String key, long delayMs, Object task, Object item) {
+            if (shutdown) {
+                Log.w(TAG, Stage.INTERCEPT + " task rejected, pipeline is shut down");
+                return;
+            }
+            long now = System.nanoTime();
+            long due = now + TimeUnit.MILLISECONDS.toNanos(Math.max(0, delayMs));
+            if (due - lastDueNanos < 0) due = lastDueNanos;
+            int merged = key != null ? dropQueued(key) : 0;
+            if (count == tasks.length) grow();
+            int slot = (head + count) % tasks.length;
+            tasks[slot] = task;
+            items[slot] = item;
+            keys[slot] = key;
+            mergedCounts[slot] = merged;
+            submittedAt[slot] = now;
+            dueNanos[slot] = due;
+            count++;
+            live++;
+            lastDueNanos = due;
+            if (count == 1) notifyAll();
+        }
+
+        /**
+         * Drop the queued update of a key, if any. It has not started yet, or it would have left the queue.
+         *
+         * @return number of updates the next one of the key replaces
+         */
+        private int dropQueued(String key) {
+            for (int i = 0; i < count; i++) {
+                int slot = (head + i) % tasks.length;
+                if (tasks[slot] != null && key.equals(keys[slot])) {
+                    clear(slot);
+                    live--;
+                    coalescedCount.incrementAndGet();
+                    return mergedCounts[slot] + 1;
+                }
+            }
+            return 0;
+        }
+
+        private void clear(int slot) {
+            tasks[slot] = null;
+            items[slot] = null;
+            keys[slot] = null;
+        }
+
+        private void grow() {
+            int capacity = tasks.length * 2;
+            tasks = copy(tasks, new Object[capacity]);
+            items = copy(items, new Object[capacity]);
+            keys = copy(keys, new String[capacity]);
+            int[] newMerged = new int[capacity];
+            long[] newSubmitted = new long[capacity];
+            long[] newDue = new long[capacity];
+            for (int i = 0; i < count; i++) {
+                int slot = (head + i) % mergedCounts.length;
+                newMerged[i] = mergedCounts[slot];
+                newSubmitted[i] = submittedAt[slot];
+                newDue[i] = dueNanos[slot];
+            }
+            mergedCounts = newMerged;
+            submittedAt = newSubmitted;
+            dueNanos = newDue;
+            head = 0;
+        }
+
+        private <A> A[] copy(A[] from, A[] to) {
+            for (int i = 0; i < count; i++) {
+                to[i] = from[(head + i) % from.length];
+            }
+            return to;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public void run() {
+            Process.setThreadPriority(Process.THREAD_PRIORITY_FOREGROUND);
+            while (true) {
+                Object task;
+                Object item;
+                long submitted;
+                int merged;
+                synchronized (this) {
+                    try {
+                        if (!awaitDueHead()) return;
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                    task = tasks[head];
+                    item = items[head];
+                    submitted = submittedAt[head];
+                    merged = mergedCounts[head];
+                    clear(head);
+                    head = (head + 1) % tasks.length;
+                    count--;
+                    if (task != null) live--;
+                }
+                if (task == null) continue;
+
+                long startedAt = System.nanoTime();
+                try {
+                    if (task instanceof Runnable) {
+                        ((Runnable) task).run();
+                    } else {
+                        ((CoalescedTask<Object>) task).run(item, submitted, merged);
+                    }
+                } catch (RuntimeException e) {
+                    Log.e(TAG, Stage.INTERCEPT + " task failed", e);
+                } finally {
+                    stats.record(startedAt - submitted, System.nanoTime() - startedAt);
+                }
+            }
+        }
+
+        /**
+         * Wait until the head of the queue is due
+         *
+         * @return false once the lane is shut down and its queue is empty
+         */
+        private boolean awaitDueHead() throws InterruptedException {
+            while (true) {
+                if (count == 0) {
+                    if (shutdown) return false;
+                    wait();
+                    continue;
+                }
+                long delay = dueNanos[head] - System.nanoTime();
+                if (delay <= 0) return true;
+                wait(delay / 1_000_000, (int) (delay % 1_000_000));
+            }
+        }
+
+        /**
+         * Stop accepting tasks; the queued ones, pending coalescing windows included, still run
+         */
+        synchronized void shutdown() {
+            shutdown = true;
+            notifyAll();
+        }
+
+        boolean awaitTermination(long timeoutNanos) throws InterruptedException {
+            if (timeoutNanos > 0) {
+                thread.join(TimeUnit.NANOSECONDS.toMillis(timeoutNanos) + 1);
+            }
+            return !thread.isAlive();
+        }
+
+        synchronized int size() {
+            return live;
+        }
+    }
+
+    /**
+     * Completed task count and latency totals for one stage
+     */
+    public static class StageStats {
+        private final AtomicLong count = new AtomicLong();
+        private final AtomicLong totalWaitNanos = new AtomicLong();
+        private final AtomicLong totalRunNanos = new AtomicLong();
+        private final AtomicLong maxRunNanos = new AtomicLong();
+
+        void record(long waitNanos, long runNanos) {
+            count.incrementAndGet();
+            totalWaitNanos.addAndGet(waitNanos);
+            totalRunNanos.addAndGet(runNanos);
+            maxRunNanos.accumulateAndGet(runNanos, Math::max);
+        }
+
+        public long getCount() {
+            return count.get();
+        }
+
+        public long getAverageWaitNanos() {
+            long n = count.get();
+            return n == 0 ? 0 : totalWaitNanos.get() / n;
+        }
+
+        public long getAverageRunNanos() {
+            long n = count.get();
+            return n == 0 ? 0 : totalRunNanos.get() / n;
+        }
+
+        public long getMaxRunNanos() {
+            return maxRunNanos.get();
+        }
+    }
+}
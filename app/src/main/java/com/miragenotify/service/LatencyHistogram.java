@@ -0,0 +1,84 @@
+package com.miragenotify.service;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock-free latency recorder with log-linear buckets, in the style of HdrHistogram.
+ * Values below 32 ns are kept exactly; above that every power of two is split into 16 buckets,
+ * so reported percentiles are within about 6% of the recorded value. Recording is a single
+ * atomic increment and never allocates, so it is safe on the intercept lanes.
+ */
+public class LatencyHistogram {
+
+    private static final int SUB_BUCKET_BITS = 5;
+    private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;      // 32
+    private static final int SUB_BUCKET_HALF = SUB_BUCKET_COUNT / 2;       // 16
+    private static final long MAX_TRACKABLE_NANOS = 1L << 42;              // ~73 minutes
+    private static final int BUCKET_COUNT = indexOf(MAX_TRACKABLE_NANOS) + 1;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKET_COUNT);
+    private final AtomicLong totalCount = new AtomicLong();
+    private final AtomicLong maxNanos = new AtomicLong();
+
+    public void record(long nanos) {
+        if (nanos < 0) nanos = 0;
+        counts.incrementAndGet(indexOf(Math.min(nanos, MAX_TRACKABLE_NANOS)));
+        totalCount.incrementAndGet();
+        maxNanos.accumulateAndGet(nanos, Math::max);
+    }
+
+    public long getCount() {
+        return totalCount.get();
+    }
+
+    public long getMaxNanos() {
+        return maxNanos.get();
+    }
+
+    /**
+     * Upper bound of the bucket holding the given percentile, capped at the recorded maximum
+     *
+     * @param percentile 0 to 100
+     * @return 0 if nothing was recorded
+     */
+    public long getPercentileNanos(double percentile) {
+        // Sum the buckets first; concurrent records may make it differ slightly from totalCount
+        long total = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) total += counts.get(i);
+        if (total == 0) return 0;
+
+        long rank = Math.max(1, (long) Math.ceil(percentile / 100.0 * total));
+        long seen = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            seen += counts.get(i);
+            if (seen >= rank) return Math.min(highestValueAt(i), maxNanos.get());
+        }
+        return maxNanos.get();
+    }
+
+    /**
+     * Clear all recorded values. Records racing with the reset may survive it.
+     */
+    public void reset() {
+        for (int i = 0; i < BUCKET_COUNT; i++) counts.set(i, 0);
+        totalCount.set(0);
+        maxNanos.set(0);
+    }
+
+    private static int indexOf(long value) {
+        if (value < SUB_BUCKET_COUNT) return (int) value;
+        // shift >= 1; (value >>> shift) lands in [16, 32)
+        int shift = 63 - Long.numberOfLeadingZeros(value) - (SUB_BUCKET_BITS - 1);
+        int subBucket = (int) (value >>> shift);
+        return SUB_BUCKET_COUNT + (shift - 1) * SUB_BUCKET_HALF + (subBucket - SUB_BUCKET_HALF);
+    }
+
+    private static long highestValueAt(int index) {
+        if (index < SUB_BUCKET_COUNT) return index;
+        int offset = index - SUB_BUCKET_COUNT;
+        int shift = offset / SUB_BUCKET_HALF + 1;
+        long subBucket = offset % SUB_BUCKET_HALF + SUB_BUCKET_HALF;
+        return ((subBucket + 1) << shift) - 1;
+    }
+}
@@ -0,0 +1,291 @@
+package com.miragenotify.service;
+
+import android.os.Process;
+import android.util.Log;
+
+import com.miragenotify.database.AppDatabase;
+import com.miragenotify.database.NotificationLogDao;
+import com.miragenotify.database.StatsDao;
+import com.miragenotify.model.LogApp;
+import com.miragenotify.model.NotificationLog;
+import com.miragenotify.model.NotificationLogRecord;
+import com.miragenotify.utils.PreferenceManager;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Write-behind sink for notification logs.
+ * Entries are queued in memory and written by a dedicated thread in batches, one transaction
+ * per batch, so interception never waits for the database. The same transaction bumps the
+ * per-package and per-rule counters by the batch's totals, plus notifications that were only
+ * counted and not logged (see {@link PreferenceManager.LogPolicy}).
+ * Entries are stored as {@link NotificationLogRecord}s: the app is interned once and referenced
+ * by id, and modified fields are dropped where the rules left them unchanged.
+ */
+public class LogWriter {
+
+    private static final String TAG = "LogWriter";
+    private static final long SHUTDOWN_TIMEOUT_MS = 2000;
+
+    private final AppDatabase database;
+    private final ArrayBlockingQueue<NotificationLog> queue;
+    private final int batchSize;
+    private final long flushIntervalMs;
+    private final PreferenceManager.LogDropPolicy dropPolicy;
+    private final InterceptionMetrics metrics;
+    private final Thread writerThread;
+    private final AtomicLong droppedCount = new AtomicLong();
+    private final AtomicLong writtenCount = new AtomicLong();
+    // Notifications seen but not logged, per package, and the modified share of them and the
+    // rules that changed them, until the next write
+    private final ConcurrentHashMap<String, AtomicLong> unloggedCounts = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, AtomicLong> unloggedModifiedCounts = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<Long, AtomicLong> unloggedRuleHits = new ConcurrentHashMap<>();
+    // Interned apps by package; only touched by the writer thread
+    private final Map<String, LogApp> internedApps = new HashMap<>();
+
+    private volatile boolean running = true;
+
+    public LogWriter(AppDatabase database, PreferenceManager preferenceManager, InterceptionMetrics metrics) {
+        this.database = database;
+        this.metrics = metrics;
+        this.queue = new ArrayBlockingQueue<>(Math.max(1, preferenceManager.getLogQueueDepth()));
+        this.batchSize = Math.max(1, preferenceManager.getLogBatchSize());
+        this.flushIntervalMs = Math.max(1, preferenceManager.getLogFlushIntervalMs());
+        this.dropPolicy = preferenceManager.getLogDropPolicy();
+        this.writerThread = new Thread(this::runWriter, "MirageLogWriter");
+    }
+
+    public void start() {
+        writerThread.start();
+    }
+
+    /**
+     * Queue a log entry without blocking. Applies the drop policy when the queue is full.
+     *
+     * @return false if an entry had to be dropped
+     */
+    public boolean enqueue(NotificationLog log) {
+        if (queue.offer(log)) return true;
+        droppedCount.incrementAndGet();
+        if (dropPolicy == PreferenceManager.LogDropPolicy.DROP_OLDEST) {
+            queue.poll();
+            queue.offer(log);
+        }
+        return false;
+    }
+
+    /**
+     * Count an unmodified notification that is not logged. Lock-free and allocation-free once the
+     * package has been seen, so it can run on the binder thread.
+     */
+    public void countUnlogged(String packageName) {
+        increment(unloggedCounts, packageName);
+    }
+
+    /**
+     * Count a modified notification that is not logged, crediting every rule that was applied
+     */
+    public void countUnlogged(String packageName, long[] appliedRuleIds) {
+        increment(unloggedCounts, packageName);
+        increment(unloggedModifiedCounts, packageName);
+        for (long ruleId : appliedRuleIds) {
+            increment(unloggedRuleHits, ruleId);
+        }
+    }
+
+    private static <K> void increment(ConcurrentHashMap<K, AtomicLong> counts, K key) {
+        AtomicLong count = counts.get(key);
+        if (count == null) {
+            count = counts.computeIfAbsent(key, k -> new AtomicLong());
+        }
+        count.incrementAndGet();
+    }
+
+    public int getQueueDepth() {
+        return queue.size();
+    }
+
+    public long getDroppedCount() {
+        return droppedCount.get();
+    }
+
+    public long getWrittenCount() {
+        return writtenCount.get();
+    }
+
+    /**
+     * Stop accepting work and write everything still queued
+     */
+    public void shutdown() {
+        running = false;
+        writerThread.interrupt();
+        try {
+            writerThread.join(SHUTDOWN_TIMEOUT_MS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (writerThread.isAlive()) {
+            Log.w(TAG, "Log writer did not finish flushing, " + queue.size() + " entries lost");
+        }
+    }
+
+    private void runWriter() {
+        Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+        List<NotificationLog> batch = new ArrayList<>(batchSize);
+        while (running) {
+            try {
+                NotificationLog first = queue.poll(flushIntervalMs, TimeUnit.MILLISECONDS);
+                // An empty interval still writes the counts of unlogged notifications
+                if (first != null) {
+                    batch.add(first);
+
+                    // Keep collecting until the batch is full or the flush interval has passed
+                    long deadline = System.currentTimeMillis() + flushIntervalMs;
+                    while (batch.size() < batchSize) {
+                        queue.drainTo(batch, batchSize - batch.size());
+                        long remaining = deadline - System.currentTimeMillis();
+                        if (batch.size() >= batchSize || remaining <= 0) break;
+                        NotificationLog next = queue.poll(remaining, TimeUnit.MILLISECONDS);
+                        if (next == null) break;
+                        batch.add(next);
+                    }
+                }
+            } catch (InterruptedException e) {
+                // Shutdown requested, fall through to the final flush
+            }
+            write(batch);
+        }
+
+        // Final flush of whatever is left in the queue
+        do {
+            queue.drainTo(batch, batchSize);
+            write(batch);
+        } while (!queue.isEmpty());
+    }
+
+    private void write(List<NotificationLog> batch) {
+        // Totals are taken last: countUnlogged bumps them first, so no modified count outruns its total
+        Map<String, Long> unloggedModified = takeCounts(unloggedModifiedCounts);
+        Map<Long, Long> unloggedHits = takeCounts(unloggedRuleHits);
+        Map<String, Long> unlogged = takeCounts(unloggedCounts);
+        if (batch.isEmpty() && unlogged.isEmpty() && unloggedHits.isEmpty()) return;
+        try {
+            long startedAt = System.nanoTime();
+            database.runInTransaction(() -> {
+                if (!batch.isEmpty()) insertLogs(batch);
+                updateStats(batch, unlogged, unloggedModified, unloggedHits);
+            });
+            metrics.record(InterceptionMetrics.Stage.LOG_PERSIST, System.nanoTime() - startedAt);
+            writtenCount.addAndGet(batch.size());
+        } catch (Exception e) {
+            Log.e(TAG, "Error writing " + batch.size() + " notification logs", e);
+            // Apps interned by the rolled back transaction are gone again
+            internedApps.clear();
+            // Counts are cheap to keep; give them back for the next write
+            giveBack(unloggedCounts, unlogged);
+            giveBack(unloggedModifiedCounts, unloggedModified);
+            giveBack(unloggedRuleHits, unloggedHits);
+        }
+        batch.clear();
+    }
+
+    private void insertLogs(List<NotificationLog> batch) {
+        NotificationLogDao logDao = database.notificationLogDao();
+        List<NotificationLogRecord> records = new ArrayList<>(batch.size());
+        for (NotificationLog log : batch) {
+            records.add(NotificationLogRecord.from(log, internApp(logDao, log.getPackageName(), log.getAppName())));
+        }
+        logDao.insertAll(records);
+    }
+
+    /**
+     * Id of the package's row in log_apps, created on first sight. Keeps the stored app name current.
+     */
+    private long internApp(NotificationLogDao logDao, String packageName, String appName) {
+        if (packageName == null) return 0;
+        LogApp app = internedApps.get(packageName);
+        if (app == null) {
+            app = logDao.getApp(packageName);
+            if (app == null) {
+                app = new LogApp(packageName, appName);
+                app.setId(logDao.insertApp(app));
+            }
+            internedApps.put(packageName, app);
+        }
+        if (appName != null && !appName.equals(app.getAppName())) {
+            logDao.updateAppName(app.getId(), appName);
+            app.setAppName(appName);
+        }
+        return app.getId();
+    }
+
+    private static <K> Map<K, Long> takeCounts(ConcurrentHashMap<K, AtomicLong> source) {
+        Map<K, Long> counts = Collections.emptyMap();
+        for (Map.Entry<K, AtomicLong> e : source.entrySet()) {
+            long count = e.getValue().getAndSet(0);
+            if (count == 0) continue;
+            if (counts.isEmpty()) counts = new HashMap<>();
+            counts.put(e.getKey(), count);
+        }
+        return counts;
+    }
+
+    private static <K> void giveBack(ConcurrentHashMap<K, AtomicLong> target, Map<K, Long> counts) {
+        for (Map.Entry<K, Long> count : counts.entrySet()) {
+            target.get(count.getKey()).addAndGet(count.getValue());
+        }
+    }
+
+    private void updateStats(List<NotificationLog> batch, Map<String, Long> unlogged,
+                             Map<String, Long> unloggedModified, Map<Long, Long> unloggedHits) {
+        // Fold the batch into one increment per package and per rule
+        Map<String, long[]> packageDeltas = new HashMap<>();
+        Map<Long, long[]> ruleDeltas = new HashMap<>();
+        for (Map.Entry<String, Long> e : unlogged.entrySet()) {
+            Long modified = unloggedModified.get(e.getKey());
+            packageDeltas.put(e.getKey(), new long[]{e.getValue(), modified != null ? modified : 0});
+        }
+        for (Map.Entry<Long, Long> e : unloggedHits.entrySet()) {
+            ruleDeltas.put(e.getKey(), new long[]{e.getValue()});
+        }
+        for (NotificationLog log : batch) {
+            if (log.getPackageName() != null) {
+                long[] delta = packageDeltas.get(log.getPackageName());
+                if (delta == null) {
+                    delta = new long[2];
+                    packageDeltas.put(log.getPackageName(), delta);
+                }
+                delta[0]++;
+                if (log.isWasModified()) delta[1]++;
+            }
+            if (!log.isWasModified()) continue;
+            for (long ruleId : log.getAppliedRuleIdArray()) {
+                long[] hits = ruleDeltas.get(ruleId);
+                if (hits == null) {
+                    hits = new long[1];
+                    ruleDeltas.put(ruleId, hits);
+                }
+                hits[0]++;
+            }
+        }
+
+        StatsDao statsDao = database.statsDao();
+        for (Map.Entry<String, long[]> e : packageDeltas.entrySet()) {
+            statsDao.ensurePackage(e.getKey());
+            statsDao.incrementPackage(e.getKey(), e.getValue()[0], e.getValue()[1]);
+        }
+        for (Map.Entry<Long, long[]> e : ruleDeltas.entrySet()) {
+            statsDao.ensureRule(e.getKey());
+            statsDao.incrementRule(e.getKey(), e.getValue()[0]);
+        }
+    }
+}
@@ -0,0 +1,239 @@
+package com.miragenotify.service;
+
+import android.app.Notification;
+import android.app.Person;
+import android.os.Build;
+import android.os.Bundle;
+import android.os.Parcelable;
+
+import com.miragenotify.engine.MatchResult;
+import com.miragenotify.engine.NotificationText;
+import com.miragenotify.engine.RewriteOutcome;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Text of an intercepted notification including its expanded style: every MessagingStyle message,
+ * InboxStyle line and BigTextStyle text becomes a segment of one {@link NotificationText}, read in
+ * a single walk over the extras. After the rules ran, {@link #buildStyle} creates a fresh style
+ * with only what the repost shows, so no unmasked copy of the payload travels along with it.
+ * One instance is kept per intercept lane and refilled for every notification; segments reference
+ * the app's CharSequences directly, so reading allocates nothing once the lane has warmed up.
+ */
+public class NotificationContent {
+
+    enum StyleType {
+        NONE,
+        BIG_TEXT,
+        INBOX,
+        MESSAGING
+    }
+
+    // Keys of the bundles in EXTRA_MESSAGES, as written by Notification.MessagingStyle.Message
+    private static final String KEY_TEXT = "text";
+    private static final String KEY_TIMESTAMP = "time";
+    private static final String KEY_SENDER = "sender";
+    private static final String KEY_SENDER_PERSON = "sender_person";
+
+    private final NotificationText text = new NotificationText(null, null, null, 16);
+    private StyleType styleType = StyleType.NONE;
+
+    private int bigTitleSegment;
+    private int summarySegment;
+    private int bigTextSegment;
+    private int firstLineSegment;
+    private int lineCount;
+
+    private int conversationTitleSegment;
+    // Entries are reused; only the first messageCount are valid
+    private final List<MessageEntry> messages = new ArrayList<>();
+    private int messageCount;
+    private Person user;
+    private CharSequence selfDisplayName;
+    private boolean groupConversation;
+
+    /**
+     * Read the title, content and sender of a notification, and its style payload if asked for.
+     * Replaces whatever was read before.
+     */
+    @SuppressWarnings("deprecation")
+    public void read(Notification notification, boolean includeStyle) {
+        Bundle extras = notification.extras;
+        text.reset(extras.getCharSequence(Notification.EXTRA_TITLE),
+                extras.getCharSequence(Notification.EXTRA_TEXT),
+                extras.getCharSequence(Notification.EXTRA_SUB_TEXT));
+        clearStyle();
+        if (!includeStyle) return;
+
+        styleType = styleTypeOf(extras.getString(Notification.EXTRA_TEMPLATE));
+        switch (styleType) {
+            case BIG_TEXT:
+                addExpandedHeader(extras);
+                bigTextSegment = addIfPresent(MatchResult.FIELD_CONTENT,
+                        extras.getCharSequence(Notification.EXTRA_BIG_TEXT));
+                break;
+            case INBOX: {
+                addExpandedHeader(extras);
+                CharSequence[] lines = extras.getCharSequenceArray(Notification.EXTRA_TEXT_LINES);
+                int count = lines != null ? lines.length : 0;
+                firstLineSegment = text.size();
+                for (int i = 0; i < count; i++) {
+                    text.add(MatchResult.FIELD_CONTENT, lines[i]);
+                }
+                lineCount = count;
+                break;
+            }
+            case MESSAGING: {
+                conversationTitleSegment = addIfPresent(MatchResult.FIELD_TITLE,
+                        extras.getCharSequence(Notification.EXTRA_CONVERSATION_TITLE));
+                selfDisplayName = extras.getCharSequence(Notification.EXTRA_SELF_DISPLAY_NAME);
+                if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.P) {
+                    user = extras.getParcelable(Notification.EXTRA_MESSAGING_PERSON);
+                    groupConversation = extras.getBoolean(Notification.EXTRA_IS_GROUP_CONVERSATION);
+                }
+                // EXTRA_HISTORIC_MESSAGES is not read: the repost only carries the visible messages
+                Parcelable[] bundles = extras.getParcelableArray(Notification.EXTRA_MESSAGES);
+                int count = bundles != null ? bundles.length : 0;
+                for (int i = 0; i < count; i++) {
+                    if (bundles[i] instanceof Bundle) addMessage((Bundle) bundles[i]);
+                }
+                break;
+            }
+            default:
+                break;
+        }
+    }
+
+    private void clearStyle() {
+        styleType = StyleType.NONE;
+        bigTitleSegment = -1;
+        summarySegment = -1;
+        bigTextSegment = -1;
+        firstLineSegment = -1;
+        lineCount = 0;
+        conversationTitleSegment = -1;
+        for (int i = 0; i < messageCount; i++) messages.get(i).senderPerson = null;
+        messageCount = 0;
+        user = null;
+        selfDisplayName = null;
+        groupConversation = false;
+    }
+
+    private static StyleType styleTypeOf(String template) {
+        if (template == null) return StyleType.NONE;
+        if (template.equals(Notification.MessagingStyle.class.getName())) return StyleType.MESSAGING;
+        if (template.equals(Notification.InboxStyle.class.getName())) return StyleType.INBOX;
+        if (template.equals(Notification.BigTextStyle.class.getName())) return StyleType.BIG_TEXT;
+        return StyleType.NONE;
+    }
+
+    private void addExpandedHeader(Bundle extras) {
+        bigTitleSegment = addIfPresent(MatchResult.FIELD_TITLE, extras.getCharSequence(Notification.EXTRA_TITLE_BIG));
+        summarySegment = addIfPresent(MatchResult.FIELD_CONTENT, extras.getCharSequence(Notification.EXTRA_SUMMARY_TEXT));
+    }
+
+    @SuppressWarnings("deprecation")
+    private void addMessage(Bundle bundle) {
+        if (messageCount == messages.size()) messages.add(new MessageEntry());
+        MessageEntry entry = messages.get(messageCount++);
+        entry.timestamp = bundle.getLong(KEY_TIMESTAMP);
+        entry.textSegment = text.add(MatchResult.FIELD_CONTENT, bundle.getCharSequence(KEY_TEXT));
+
+        CharSequence senderName = bundle.getCharSequence(KEY_SENDER);
+        entry.senderPerson = null;
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.P) {
+            entry.senderPerson = bundle.getParcelable(KEY_SENDER_PERSON);
+            if (entry.senderPerson != null) senderName = entry.senderPerson.getName();
+        }
+        // Messages without a sender were written by the user; their name is not rewritten
+        entry.senderSegment = addIfPresent(MatchResult.FIELD_SENDER, senderName);
+    }
+
+    /**
+     * Optional parts only become segments when set, so a whole-field replacement cannot add them
+     */
+    private int addIfPresent(int field, CharSequence value) {
+        return value != null ? text.add(field, value) : -1;
+    }
+
+    public NotificationText getText() {
+        return text;
+    }
+
+    /**
+     * Build the style for the repost from the rewritten segments, or null if the original had none
+     *
+     * @param defaultUserName shown for the user's own messages when the app did not name the user
+     */
+    public Notification.Style buildStyle(RewriteOutcome outcome, CharSequence defaultUserName) {
+        switch (styleType) {
+            case BIG_TEXT:
+                return new Notification.BigTextStyle()
+                        .setBigContentTitle(valueOf(outcome, bigTitleSegment))
+                        .setSummaryText(valueOf(outcome, summarySegment))
+                        .bigText(valueOf(outcome, bigTextSegment));
+            case INBOX: {
+                Notification.InboxStyle style = new Notification.InboxStyle()
+                        .setBigContentTitle(valueOf(outcome, bigTitleSegment))
+                        .setSummaryText(valueOf(outcome, summarySegment));
+                for (int i = 0; i < lineCount; i++) {
+                    style.addLine(valueOf(outcome, firstLineSegment + i));
+                }
+                return style;
+            }
+            case MESSAGING:
+                return buildMessagingStyle(outcome, defaultUserName);
+            default:
+                return null;
+        }
+    }
+
+    @SuppressWarnings("deprecation")
+    private Notification.Style buildMessagingStyle(RewriteOutcome outcome, CharSequence defaultUserName) {
+        CharSequence userName = selfDisplayName != null ? selfDisplayName : defaultUserName;
+        Notification.MessagingStyle style;
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.P) {
+            Person self = user != null && user.getName() != null
+                    ? user : new Person.Builder().setName(userName).build();
+            style = new Notification.MessagingStyle(self);
+            style.setGroupConversation(groupConversation);
+        } else {
+            style = new Notification.MessagingStyle(userName);
+        }
+        style.setConversationTitle(valueOf(outcome, conversationTitleSegment));
+
+        // Attached images point into the original app's provider, which we cannot grant on; only text is reposted
+        for (int i = 0; i < messageCount; i++) {
+            MessageEntry entry = messages.get(i);
+            CharSequence messageText = valueOf(outcome, entry.textSegment);
+            CharSequence senderName = valueOf(outcome, entry.senderSegment);
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.P) {
+                Person sender = entry.senderPerson;
+                if (sender == null && senderName != null) {
+                    sender = new Person.Builder().setName(senderName).build();
+                } else if (sender != null && senderName != sender.getName()) {
+                    sender = sender.toBuilder().setName(senderName).build();
+                }
+                style.addMessage(new Notification.MessagingStyle.Message(messageText, entry.timestamp, sender));
+            } else {
+                style.addMessage(new Notification.MessagingStyle.Message(messageText, entry.timestamp, senderName));
+            }
+        }
+        return style;
+    }
+
+    /**
+     * Rewritten value of a segment; segments no rule changed are the app's original CharSequence
+     */
+    private static CharSequence valueOf(RewriteOutcome outcome, int segment) {
+        return segment >= 0 ? outcome.getSegment(segment) : null;
+    }
+
+    private static class MessageEntry {
+        int textSegment = -1;
+        int senderSegment = -1;
+        long timestamp;
+        Person senderPerson;
+    }
+}
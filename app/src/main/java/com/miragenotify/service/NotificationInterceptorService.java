@@ -6,9 +6,6 @@ import android.app.NotificationManager;
 import android.content.Intent;
 import android.content.pm.ServiceInfo;
 import android.graphics.Bitmap;
-import android.graphics.Canvas;
-import android.graphics.drawable.BitmapDrawable;
-import android.graphics.drawable.Drawable;
 import android.os.Build;
 import android.os.Bundle;
 import android.service.notification.NotificationListenerService;
@@ -17,13 +14,19 @@ import android.util.Log;
 
 import com.miragenotify.R;
 import com.miragenotify.database.AppDatabase;
+import com.miragenotify.engine.CompiledRuleSet;
+import com.miragenotify.engine.MatchResult;
+import com.miragenotify.engine.NotificationText;
+import com.miragenotify.engine.RewriteOutcome;
 import com.miragenotify.model.NotificationLog;
-import com.miragenotify.model.NotificationRule;
+import com.miragenotify.utils.AppMetadataCache;
 import com.miragenotify.utils.PreferenceManager;
 
-import java.util.List;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.io.FileDescriptor;
+import java.io.PrintWriter;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Core service that intercepts and modifies notifications.
@@ -35,10 +38,28 @@ public class NotificationInterceptorService extends NotificationListenerService
     private static final String FOREGROUND_CHANNEL_ID = "mirage_notify_service";
     private static final String MODIFIED_CHANNEL_ID = "modified_notifications";
     private static final int FOREGROUND_NOTIFICATION_ID = 1001;
+    private static final long PIPELINE_SHUTDOWN_TIMEOUT_MS = 1000;
+    // Marks our reposts; only read by addExtras, which copies it
+    private static final Bundle MODIFIED_MARKER = new Bundle();
+    
+    static {
+        MODIFIED_MARKER.putBoolean("mirage_modified", true);
+    }
     
     private AppDatabase database;
-    private ExecutorService executorService;
+    private InterceptionPipeline pipeline;
     private PreferenceManager preferenceManager;
+    private RuleIndex ruleIndex;
+    private LogWriter logWriter;
+    private AppMetadataCache appMetadataCache;
+    private InterceptionMetrics metrics;
+    private final ThreadLocal<LaneState> laneState = ThreadLocal.withInitial(LaneState::new);
+    // One instance for every notification, so submitting one captures nothing
+    private final InterceptionPipeline.CoalescedTask<StatusBarNotification> processTask = this::processNotification;
+    private final Map<String, String> repostTags = new ConcurrentHashMap<>();
+    private String selfDisplayName;
+    // Unmodified notifications seen per package, for the sampled log policy
+    private final Map<String, AtomicLong> unmodifiedSeen = new ConcurrentHashMap<>();
     
     @Override
     public void onCreate() {
@@ -46,8 +67,15 @@ public class NotificationInterceptorService extends NotificationListenerService
         Log.d(TAG, "Service created");
         
         database = AppDatabase.getInstance(this);
-        executorService = Executors.newSingleThreadExecutor();
+        pipeline = new InterceptionPipeline();
         preferenceManager = new PreferenceManager(this);
+        appMetadataCache = AppMetadataCache.getInstance(this);
+        metrics = InterceptionMetrics.getInstance();
+        selfDisplayName = getString(R.string.messaging_self_name);
+        ruleIndex = new RuleIndex(database, preferenceManager, metrics);
+        ruleIndex.start();
+        logWriter = new LogWriter(database, preferenceManager, metrics);
+        logWriter.start();
         
         createNotificationChannels();
         
@@ -79,54 +107,112 @@ public class NotificationInterceptorService extends NotificationListenerService
             return;
         }
         
-        executorService.execute(() -> processNotification(sbn));
+        // Apps without rules never reach the executor: they are only counted, or logged if the policy says so
+        String packageName = sbn.getPackageName();
+        if (!ruleIndex.isTargeted(packageName)) {
+            if (shouldLog(packageName, false)) {
+                Bundle extras = sbn.getNotification().extras;
+                logNotification(packageName, extras.getCharSequence(Notification.EXTRA_TITLE),
+                        extras.getCharSequence(Notification.EXTRA_TEXT),
+                        extras.getCharSequence(Notification.EXTRA_SUB_TEXT), null, 0);
+            } else {
+                logWriter.countUnlogged(packageName);
+            }
+            return;
+        }
+        
+        // Chat apps repost the same key several times a second; only the newest version is processed
+        pipeline.submitCoalesced(packageName, sbn.getKey(), preferenceManager.getCoalesceWindowMs(),
+                sbn, processTask);
+    }
+    
+    /**
+     * Whether a notification gets a log entry under the current log policy; the others are only counted
+     */
+    private boolean shouldLog(String packageName, boolean modified) {
+        switch (preferenceManager.getLogPolicy()) {
+            case ALL:
+                return true;
+            case MODIFIED_ONLY:
+                return modified;
+            case SAMPLED:
+                return modified || sampleUnmodified(packageName);
+            case COUNTERS_ONLY:
+            default:
+                return false;
+        }
     }
     
-    private void processNotification(StatusBarNotification sbn) {
+    /**
+     * One in N per package, so a chatty app cannot crowd the others out of the sample
+     */
+    private boolean sampleUnmodified(String packageName) {
+        AtomicLong seen = unmodifiedSeen.get(packageName);
+        if (seen == null) {
+            seen = unmodifiedSeen.computeIfAbsent(packageName, name -> new AtomicLong());
+        }
+        return seen.getAndIncrement() % preferenceManager.getLogSampleRate() == 0;
+    }
+    
+    private void processNotification(StatusBarNotification sbn, long postedAt, int mergedCount) {
+        metrics.record(InterceptionMetrics.Stage.ENQUEUE_WAIT, System.nanoTime() - postedAt);
         try {
             Notification notification = sbn.getNotification();
-            Bundle extras = notification.extras;
-            
             String packageName = sbn.getPackageName();
-            CharSequence titleCs = extras.getCharSequence(Notification.EXTRA_TITLE);
-            CharSequence textCs = extras.getCharSequence(Notification.EXTRA_TEXT);
-            CharSequence subTextCs = extras.getCharSequence(Notification.EXTRA_SUB_TEXT);
-
-            String originalTitle = titleCs != null ? titleCs.toString() : "";
-            String originalContent = textCs != null ? textCs.toString() : "";
-            String originalSender = subTextCs != null ? subTextCs.toString() : "";
+            LaneState lane = laneState.get();
             
-            String appName = getAppName(packageName);
-            List<NotificationRule> rules = database.notificationRuleDao().getEnabledRulesForPackage(packageName);
+            long t0 = System.nanoTime();
+            CompiledRuleSet ruleSet = ruleIndex.getRuleSet(packageName);
+            long t1 = System.nanoTime();
+            metrics.record(InterceptionMetrics.Stage.RULE_LOOKUP, t1 - t0);
             
-            String modifiedTitle = originalTitle;
-            String modifiedContent = originalContent;
-            String modifiedSender = originalSender;
-            boolean wasModified = false;
-            long appliedRuleId = 0;
+            // Messages, inbox lines and big text are matched too, each as its own segment.
+            // The text is matched in place; nothing is copied unless a rule rewrites it.
+            NotificationContent content = lane.content;
+            content.read(notification, !ruleSet.isEmpty());
+            NotificationText text = content.getText();
             
-            for (NotificationRule rule : rules) {
-                if (applyRule(rule, modifiedTitle, modifiedContent, modifiedSender)) {
-                    wasModified = true;
-                    appliedRuleId = rule.getId();
-                    
-                    if (rule.isModifyTitle()) modifiedTitle = modifyText(modifiedTitle, rule);
-                    if (rule.isModifyContent()) modifiedContent = modifyText(modifiedContent, rule);
-                    if (rule.isModifySender()) modifiedSender = modifyText(modifiedSender, rule);
-                    break;
+            RewriteOutcome outcome = null;
+            if (!ruleSet.isEmpty()) {
+                boolean compose = preferenceManager.isComposeRules();
+                // First-match mode only runs the patterns of rules it actually reaches
+                MatchResult matches = compose
+                        ? ruleSet.match(text, lane.matches) : ruleSet.matchLiterals(text, lane.matches);
+                long t2 = System.nanoTime();
+                if (ruleSet.findFirstMatch(text, matches) >= 0) {
+                    outcome = compose ? ruleSet.applyAll(text, matches) : ruleSet.apply(text, matches);
                 }
+                metrics.record(InterceptionMetrics.Stage.MATCH, t2 - t1);
+                metrics.record(InterceptionMetrics.Stage.REWRITE, System.nanoTime() - t2);
+                if (outcome != null) ruleIndex.recordHits(outcome.getRuleIds());
             }
             
-            logNotification(packageName, appName, originalTitle, originalContent, originalSender,
-                    modifiedTitle, modifiedContent, modifiedSender, wasModified, appliedRuleId);
-            
-            if (wasModified) {
+            if (outcome != null) {
                 // 1. Delete (cancel) the original message
+                long t3 = System.nanoTime();
                 cancelNotification(sbn.getKey());
+                long t4 = System.nanoTime();
                 
                 // 2. Push the modified message through our app
-                postModifiedNotification(sbn, modifiedTitle, modifiedContent, modifiedSender);
-                Log.d(TAG, "Replaced original notification from " + packageName + " with modified version.");
+                postModifiedNotification(sbn, outcome, content);
+                long t5 = System.nanoTime();
+                metrics.record(InterceptionMetrics.Stage.CANCEL, t4 - t3);
+                metrics.record(InterceptionMetrics.Stage.REPOST, t5 - t4);
+                metrics.record(InterceptionMetrics.Stage.END_TO_END, t5 - postedAt);
+                if (Log.isLoggable(TAG, Log.DEBUG)) {
+                    Log.d(TAG, "Replaced original notification from " + packageName + " with modified version.");
+                }
+            }
+            
+            // 3. Logging never delays the next notification; what is not logged is still counted
+            if (shouldLog(packageName, outcome != null)) {
+                logNotification(packageName, text.getText(MatchResult.FIELD_TITLE),
+                        text.getText(MatchResult.FIELD_CONTENT), text.getText(MatchResult.FIELD_SENDER),
+                        outcome, mergedCount);
+            } else if (outcome != null) {
+                logWriter.countUnlogged(packageName, outcome.getRuleIds());
+            } else {
+                logWriter.countUnlogged(packageName);
             }
             
         } catch (Exception e) {
@@ -134,45 +220,16 @@ public class NotificationInterceptorService extends NotificationListenerService
         }
     }
     
-    private boolean applyRule(NotificationRule rule, String title, String content, String sender) {
-        String searchText = rule.getSearchText();
-        if (searchText == null || searchText.isEmpty()) return true;
-        return (title != null && title.contains(searchText)) ||
-               (content != null && content.contains(searchText)) ||
-               (sender != null && sender.contains(searchText));
-    }
-    
-    private String modifyText(String text, NotificationRule rule) {
-        if (text == null) return "";
-        switch (rule.getModificationType()) {
-            case REPLACE_TEXT:
-                String search = rule.getSearchText();
-                if (search != null && !search.isEmpty()) {
-                    return text.replace(search, rule.getReplacementText() != null ? rule.getReplacementText() : "");
-                }
-                return text;
-            case MASK_TEXT:
-                String searchMask = rule.getSearchText();
-                if (searchMask != null && !searchMask.isEmpty()) {
-                    String masked = searchMask.replaceAll(".", "*");
-                    return text.replace(searchMask, masked);
-                }
-                return text;
-            case RENAME_SENDER:
-                return rule.getReplacementText() != null ? rule.getReplacementText() : text;
-            default:
-                return text;
-        }
-    }
-    
-    private void postModifiedNotification(StatusBarNotification sbn, String title, String content, String sender) {
+    private void postModifiedNotification(StatusBarNotification sbn, RewriteOutcome outcome,
+                                          NotificationContent content) {
         try {
             Notification original = sbn.getNotification();
             NotificationManager notificationManager = (NotificationManager) getSystemService(NOTIFICATION_SERVICE);
             
-            Bundle extras = new Bundle(original.extras);
-            extras.putBoolean("mirage_modified", true);
-
+            // Only our marker, never a copy of the original extras: they still hold the unmasked
+            // message history and would bloat the repost. A new Builder per repost is deliberate:
+            // a reused framework Builder keeps its last Notification and merges that one's extras,
+            // style payload included, into the next build.
             Notification.Builder builder;
             if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
                 builder = new Notification.Builder(this, MODIFIED_CHANNEL_ID);
@@ -181,27 +238,30 @@ public class NotificationInterceptorService extends NotificationListenerService
             }
             
             // Mirror the original app's icon but add our app's identity through the channel
-            try {
-                Drawable appIcon = getPackageManager().getApplicationIcon(sbn.getPackageName());
-                builder.setLargeIcon(drawableToBitmap(appIcon));
-            } catch (Exception ignored) {}
+            Bitmap appIcon = appMetadataCache.getLargeIcon(sbn.getPackageName());
+            if (appIcon != null) builder.setLargeIcon(appIcon);
 
-            builder.setContentTitle(title)
-                    .setContentText(content)
+            CharSequence sender = outcome.getSender();
+            builder.setContentTitle(outcome.getTitle())
+                    .setContentText(outcome.getContent())
                     .setSmallIcon(R.drawable.ic_notification) // Pushing "through our app"
                     .setPriority(Notification.PRIORITY_MAX) 
                     .setDefaults(Notification.DEFAULT_ALL)
                     .setAutoCancel(true)
-                    .addExtras(extras);
+                    .addExtras(MODIFIED_MARKER);
             
-            if (sender != null && !sender.isEmpty()) builder.setSubText(sender);
+            if (sender != null && sender.length() > 0) builder.setSubText(sender);
+
+            // Rebuilt from the rewritten segments, holding only what the expanded view shows
+            Notification.Style style = content.buildStyle(outcome, selfDisplayName);
+            if (style != null) builder.setStyle(style);
             
             // Preserve the original notification's PendingIntent for seamless interaction
             if (original.contentIntent != null) {
                 builder.setContentIntent(original.contentIntent);
             }
             
-            String tag = "Mirage_" + sbn.getPackageName();
+            String tag = repostTags.computeIfAbsent(sbn.getPackageName(), name -> "Mirage_" + name);
             if (notificationManager != null) {
                 notificationManager.notify(tag, sbn.getId(), builder.build());
             }
@@ -211,18 +271,6 @@ public class NotificationInterceptorService extends NotificationListenerService
         }
     }
     
-    private Bitmap drawableToBitmap(Drawable drawable) {
-        if (drawable instanceof BitmapDrawable) {
-            return ((BitmapDrawable) drawable).getBitmap();
-        }
-        Bitmap bitmap = Bitmap.createBitmap(drawable.getIntrinsicWidth(), 
-                drawable.getIntrinsicHeight(), Bitmap.Config.ARGB_8888);
-        Canvas canvas = new Canvas(bitmap);
-        drawable.setBounds(0, 0, canvas.getWidth(), canvas.getHeight());
-        drawable.draw(canvas);
-        return bitmap;
-    }
-
     private void createNotificationChannels() {
         if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
             NotificationManager manager = getSystemService(NotificationManager.class);
@@ -251,35 +299,66 @@ public class NotificationInterceptorService extends NotificationListenerService
                 .build();
     }
 
-    private void logNotification(String packageName, String appName, String originalTitle, String originalContent, 
-                                String originalSender, String modifiedTitle, String modifiedContent, 
-                                String modifiedSender, boolean wasModified, long ruleId) {
-        NotificationLog log = new NotificationLog();
-        log.setPackageName(packageName);
-        log.setAppName(appName);
-        log.setOriginalTitle(originalTitle);
-        log.setOriginalContent(originalContent);
-        log.setOriginalSender(originalSender);
-        log.setModifiedTitle(modifiedTitle);
-        log.setModifiedContent(modifiedContent);
-        log.setModifiedSender(modifiedSender);
-        log.setWasModified(wasModified);
-        log.setRuleId(ruleId);
-        log.setTimestamp(System.currentTimeMillis());
-        database.notificationLogDao().insert(log);
+    /**
+     * Queue a log entry. Takes the segments themselves rather than the lane's NotificationText,
+     * which is refilled by the next notification.
+     */
+    private void logNotification(String packageName, CharSequence originalTitle, CharSequence originalContent,
+                                 CharSequence originalSender, RewriteOutcome outcome, int mergedCount) {
+        long timestamp = System.currentTimeMillis();
+        
+        // Building the entry and resolving the app label (a binder call) happen off the intercept lanes
+        pipeline.submitBackground(() -> {
+            NotificationLog log = new NotificationLog();
+            log.setPackageName(packageName);
+            log.setOriginalTitle(originalTitle != null ? originalTitle.toString() : "");
+            log.setOriginalContent(originalContent != null ? originalContent.toString() : "");
+            log.setOriginalSender(originalSender != null ? originalSender.toString() : "");
+            if (outcome != null) {
+                log.setModifiedTitle(outcome.getTitle().toString());
+                log.setModifiedContent(outcome.getContent().toString());
+                log.setModifiedSender(outcome.getSender().toString());
+                log.setWasModified(true);
+                log.setRuleId(outcome.getRuleId());
+                log.setAppliedRuleIds(NotificationLog.joinRuleIds(outcome.getRuleIds()));
+            } else {
+                log.setModifiedTitle(log.getOriginalTitle());
+                log.setModifiedContent(log.getOriginalContent());
+                log.setModifiedSender(log.getOriginalSender());
+            }
+            log.setMergedCount(mergedCount);
+            log.setTimestamp(timestamp);
+            log.setAppName(appMetadataCache.getLabel(packageName));
+            logWriter.enqueue(log);
+        });
     }
     
-    private String getAppName(String packageName) {
-        try {
-            return getPackageManager().getApplicationLabel(getPackageManager().getApplicationInfo(packageName, 0)).toString();
-        } catch (Exception e) {
-            return packageName;
+    /**
+     * Scratch state of one intercept lane, reused for every notification the lane processes
+     */
+    private static class LaneState {
+        final NotificationContent content = new NotificationContent();
+        final MatchResult matches = new MatchResult();
+    }
+    
+    @Override
+    protected void dump(FileDescriptor fd, PrintWriter writer, String[] args) {
+        // adb shell dumpsys activity service com.miragenotify/.service.NotificationInterceptorService
+        if (metrics != null) metrics.dump(writer);
+        if (pipeline != null) pipeline.dump(writer);
+        if (logWriter != null) {
+            writer.println("Log writer: queued=" + logWriter.getQueueDepth()
+                    + " written=" + logWriter.getWrittenCount()
+                    + " dropped=" + logWriter.getDroppedCount());
         }
     }
     
     @Override
     public void onDestroy() {
         super.onDestroy();
-        if (executorService != null) executorService.shutdown();
+        // The pipeline's last tasks still enqueue logs, so it has to drain before the writer's final flush
+        if (pipeline != null) pipeline.shutdown(PIPELINE_SHUTDOWN_TIMEOUT_MS);
+        if (ruleIndex != null) ruleIndex.stop();
+        if (logWriter != null) logWriter.shutdown();
     }
 }
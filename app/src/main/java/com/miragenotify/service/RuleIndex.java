@@ -0,0 +1,318 @@
+package com.miragenotify.service;
+
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.room.InvalidationTracker;
+
+import com.miragenotify.database.AppDatabase;
+import com.miragenotify.engine.CompiledRuleSet;
+import com.miragenotify.engine.MemoStats;
+import com.miragenotify.engine.RulePatternCache;
+import com.miragenotify.model.NotificationRule;
+import com.miragenotify.model.RuleStats;
+import com.miragenotify.utils.PreferenceManager;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * In-memory index of enabled rules keyed by target package name.
+ * The index is loaded once when the service starts and refreshed whenever Room reports
+ * a change to the notification_rules table, so the matching path never queries the database.
+ * With adaptive ordering enabled, rules without an explicit priority are periodically re-sorted
+ * by how often they matched recently, so the rules that usually match are tested first.
+ */
+public class RuleIndex {
+
+    private static final String TAG = "RuleIndex";
+    private static final String RULES_TABLE = "notification_rules";
+    private static final long INITIAL_LOAD_TIMEOUT_MS = 2000;
+    // Recent hit counts are halved on every reorder, so older hits fade out
+    private static final long REORDER_INTERVAL_MS = 60_000;
+
+    private final AppDatabase database;
+    private final PreferenceManager preferenceManager;
+    private final ScheduledExecutorService rebuildExecutor;
+    private final AtomicBoolean rebuildScheduled = new AtomicBoolean(false);
+    private final CountDownLatch initialLoad = new CountDownLatch(1);
+    private final InvalidationTracker.Observer observer;
+    private final RulePatternCache patternCache = new RulePatternCache();
+    private final MemoStats memoStats;
+    // Hits since start, seeded from the persisted counters; only touched in memory
+    private final ConcurrentHashMap<Long, AtomicLong> recentHits = new ConcurrentHashMap<>();
+
+    // Immutable snapshot, replaced as a whole on every rebuild or reorder. Its key set doubles as
+    // the prefilter of targeted packages.
+    private volatile Map<String, PackageRules> rulesByPackage = Collections.emptyMap();
+
+    public RuleIndex(AppDatabase database, PreferenceManager preferenceManager, InterceptionMetrics metrics) {
+        this.database = database;
+        this.preferenceManager = preferenceManager;
+        this.memoStats = metrics.getMemoStats();
+        this.rebuildExecutor = Executors.newSingleThreadScheduledExecutor();
+        this.observer = new InvalidationTracker.Observer(RULES_TABLE) {
+            @Override
+            public void onInvalidated(@NonNull Set<String> tables) {
+                scheduleRebuild();
+            }
+        };
+    }
+
+    /**
+     * Load the index and start listening for rule changes
+     */
+    public void start() {
+        database.getInvalidationTracker().addObserver(observer);
+        scheduleRebuild();
+        rebuildExecutor.scheduleWithFixedDelay(this::reorder,
+                REORDER_INTERVAL_MS, REORDER_INTERVAL_MS, TimeUnit.MILLISECONDS);
+    }
+
+    public void stop() {
+        database.getInvalidationTracker().removeObserver(observer);
+        rebuildExecutor.shutdown();
+    }
+
+    /**
+     * Get the compiled rules for a package. Blocks only until the very first load has finished.
+     */
+    public CompiledRuleSet getRuleSet(String packageName) {
+        awaitInitialLoad();
+        PackageRules entry = rulesByPackage.get(packageName);
+        return entry != null ? entry.ruleSet : CompiledRuleSet.EMPTY;
+    }
+
+    /**
+     * Whether any enabled rule targets the package. Safe on the binder thread: it reads the current
+     * immutable snapshot and never waits. Until the first load has finished every package counts
+     * as targeted, so nothing slips through while rules are still loading.
+     */
+    public boolean isTargeted(String packageName) {
+        return initialLoad.getCount() > 0 || rulesByPackage.containsKey(packageName);
+    }
+
+    /**
+     * Count matches for adaptive ordering. Memory only; the persisted counters are kept by the log writer.
+     */
+    public void recordHits(long[] ruleIds) {
+        for (long ruleId : ruleIds) {
+            AtomicLong hits = recentHits.get(ruleId);
+            if (hits == null) {
+                hits = recentHits.computeIfAbsent(ruleId, id -> new AtomicLong());
+            }
+            hits.incrementAndGet();
+        }
+    }
+
+    private void awaitInitialLoad() {
+        if (initialLoad.getCount() == 0) return;
+        try {
+            if (!initialLoad.await(INITIAL_LOAD_TIMEOUT_MS, TimeUnit.MILLISECONDS)) {
+                Log.w(TAG, "Rule index not loaded yet, matching against an empty index");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void scheduleRebuild() {
+        // Collapse bursts of invalidations into a single reload
+        if (rebuildScheduled.compareAndSet(false, true)) {
+            try {
+                rebuildExecutor.execute(this::rebuild);
+            } catch (Exception e) {
+                rebuildScheduled.set(false);
+                Log.w(TAG, "Rule index rebuild rejected", e);
+            }
+        }
+    }
+
+    private void rebuild() {
+        rebuildScheduled.set(false);
+        try {
+            if (initialLoad.getCount() > 0) {
+                seedHits();
+            }
+            List<NotificationRule> enabledRules = database.notificationRuleDao().getEnabledRules();
+
+            // The query returns rules in priority order; grouping keeps that order per package
+            Map<String, List<NotificationRule>> grouped = new HashMap<>();
+            List<Long> enabledIds = new ArrayList<>(enabledRules.size());
+            for (NotificationRule rule : enabledRules) {
+                enabledIds.add(rule.getId());
+                String packageName = rule.getTargetPackageName();
+                if (packageName == null) continue;
+                List<NotificationRule> list = grouped.get(packageName);
+                if (list == null) {
+                    list = new ArrayList<>();
+                    grouped.put(packageName, list);
+                }
+                list.add(rule);
+            }
+
+            // Reuse the previous entry for every package whose rules did not change
+            boolean adaptive = preferenceManager.isAdaptiveRuleOrder();
+            Map<String, PackageRules> previous = rulesByPackage;
+            Map<String, PackageRules> next = new HashMap<>(grouped.size());
+            int rebuilt = 0;
+            for (Map.Entry<String, List<NotificationRule>> e : grouped.entrySet()) {
+                PackageRules old = previous.get(e.getKey());
+                if (old != null && old.hasSameRules(e.getValue())) {
+                    next.put(e.getKey(), old);
+                } else {
+                    PackageRules entry = new PackageRules(e.getValue(), patternCache, memoStats);
+                    next.put(e.getKey(), adaptive ? entry.ordered(recentHits) : entry);
+                    rebuilt++;
+                }
+            }
+            rulesByPackage = Collections.unmodifiableMap(next);
+            patternCache.retainAll(enabledIds);
+            recentHits.keySet().retainAll(enabledIds);
+            Log.d(TAG, "Rule index refreshed: " + next.size() + " packages, " + rebuilt + " rebuilt");
+        } catch (Exception e) {
+            Log.e(TAG, "Error rebuilding rule index", e);
+        } finally {
+            initialLoad.countDown();
+        }
+    }
+
+    /**
+     * Start adaptive ordering from the persisted all-time counters rather than from nothing
+     */
+    private void seedHits() {
+        for (RuleStats stats : database.statsDao().getAllRuleStats()) {
+            recentHits.computeIfAbsent(stats.getRuleId(), id -> new AtomicLong()).addAndGet(stats.getHitCount());
+        }
+    }
+
+    /**
+     * Re-sort every package by recent hits (or restore priority order if adaptive ordering was
+     * turned off), then decay the counts. Runs on the rebuild thread, so it never races a rebuild.
+     */
+    private void reorder() {
+        try {
+            boolean adaptive = preferenceManager.isAdaptiveRuleOrder();
+            Map<String, PackageRules> current = rulesByPackage;
+            Map<String, PackageRules> next = new HashMap<>(current.size());
+            boolean changed = false;
+            for (Map.Entry<String, PackageRules> e : current.entrySet()) {
+                PackageRules entry = e.getValue();
+                PackageRules updated = adaptive ? entry.ordered(recentHits) : entry.unordered();
+                changed |= updated != entry;
+                next.put(e.getKey(), updated);
+            }
+            if (changed) {
+                rulesByPackage = Collections.unmodifiableMap(next);
+            }
+            for (AtomicLong hits : recentHits.values()) {
+                hits.updateAndGet(v -> v >> 1);
+            }
+        } catch (Exception e) {
+            Log.e(TAG, "Error reordering rules", e);
+        }
+    }
+
+    /**
+     * Compiled rules of a single package, kept with the rules they were compiled from to detect changes.
+     * baseRuleSet is in priority order; ruleSet is the order currently used for matching.
+     */
+    private static class PackageRules {
+        final List<NotificationRule> rules;
+        final CompiledRuleSet baseRuleSet;
+        final CompiledRuleSet ruleSet;
+        final int[] order;
+
+        PackageRules(List<NotificationRule> rules, RulePatternCache patternCache, MemoStats memoStats) {
+            this.rules = rules;
+            // A fresh set comes with an empty scan memo, so a rule change invalidates it atomically
+            this.baseRuleSet = new CompiledRuleSet(rules, patternCache, memoStats);
+            this.ruleSet = baseRuleSet;
+            this.order = null;
+        }
+
+        private PackageRules(PackageRules base, int[] order) {
+            this.rules = base.rules;
+            this.baseRuleSet = base.baseRuleSet;
+            this.ruleSet = order != null ? baseRuleSet.reorder(order) : baseRuleSet;
+            this.order = order;
+        }
+
+        /**
+         * Whether the rules compare equal, field by field, to those this entry was compiled from.
+         * Rules are compared by content rather than updatedAt, which not every write bumps and
+         * which two edits in the same millisecond share.
+         */
+        boolean hasSameRules(List<NotificationRule> other) {
+            if (other.size() != rules.size()) return false;
+            for (int i = 0; i < rules.size(); i++) {
+                if (!sameRule(rules.get(i), other.get(i))) return false;
+            }
+            return true;
+        }
+
+        /**
+         * Rules without a priority (priority 0, contiguous in priority order) sorted by recent hits
+         */
+        PackageRules ordered(Map<Long, AtomicLong> hits) {
+            int from = 0;
+            while (from < rules.size() && rules.get(from).getPriority() > 0) from++;
+            int to = from;
+            while (to < rules.size() && rules.get(to).getPriority() == 0) to++;
+            if (to - from < 2) return this;
+
+            Integer[] group = new Integer[to - from];
+            long[] counts = new long[rules.size()];
+            for (int i = from; i < to; i++) {
+                group[i - from] = i;
+                AtomicLong h = hits.get(rules.get(i).getId());
+                counts[i] = h != null ? h.get() : 0;
+            }
+            // Stable sort keeps priority order between rules with equal counts
+            Arrays.sort(group, (a, b) -> Long.compare(counts[b], counts[a]));
+
+            int[] newOrder = new int[rules.size()];
+            boolean identity = true;
+            for (int i = 0; i < newOrder.length; i++) {
+                newOrder[i] = i >= from && i < to ? group[i - from] : i;
+                identity &= newOrder[i] == i;
+            }
+            if (identity) return unordered();
+            if (Arrays.equals(newOrder, order)) return this;
+            return new PackageRules(this, newOrder);
+        }
+
+        PackageRules unordered() {
+            return order == null ? this : new PackageRules(this, null);
+        }
+
+        /**
+         * Every field that goes into a compiled rule set. Package and enabled state are implied by
+         * the grouping.
+         */
+        private static boolean sameRule(NotificationRule a, NotificationRule b) {
+            return a.getId() == b.getId()
+                    && a.getPriority() == b.getPriority()
+                    && Objects.equals(a.getSearchText(), b.getSearchText())
+                    && a.getMatchMode() == b.getMatchMode()
+                    && a.getRewriteAction() == b.getRewriteAction()
+                    && Objects.equals(a.getReplacementText(), b.getReplacementText())
+                    && a.isModifyTitle() == b.isModifyTitle()
+                    && a.isModifyContent() == b.isModifyContent()
+                    && a.isModifySender() == b.isModifySender();
+        }
+    }
+}
@@ -0,0 +1,83 @@
+package com.miragenotify.ui.diagnostics;
+
+import android.os.Bundle;
+import android.os.Handler;
+import android.os.Looper;
+import android.view.LayoutInflater;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.TextView;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.fragment.app.Fragment;
+
+import com.miragenotify.R;
+import com.miragenotify.service.InterceptionMetrics;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+
+/**
+ * Live view of the interception latency histograms, opened from Settings
+ */
+public class DiagnosticsFragment extends Fragment {
+
+    private static final long REFRESH_INTERVAL_MS = 1000;
+
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    private InterceptionMetrics metrics;
+    private TextView tvLatencyTable;
+
+    private final Runnable refresh = new Runnable() {
+        @Override
+        public void run() {
+            updateTable();
+            handler.postDelayed(this, REFRESH_INTERVAL_MS);
+        }
+    };
+
+    @Nullable
+    @Override
+    public View onCreateView(@NonNull LayoutInflater inflater, @Nullable ViewGroup container,
+                             @Nullable Bundle savedInstanceState) {
+        return inflater.inflate(R.layout.fragment_diagnostics, container, false);
+    }
+
+    @Override
+    public void onViewCreated(@NonNull View view, @Nullable Bundle savedInstanceState) {
+        super.onViewCreated(view, savedInstanceState);
+        requireActivity().setTitle(R.string.diagnostics);
+
+        metrics = InterceptionMetrics.getInstance();
+        tvLatencyTable = view.findViewById(R.id.tv_latency_table);
+        view.findViewById(R.id.btn_reset_latency).setOnClickListener(v -> {
+            metrics.reset();
+            updateTable();
+        });
+    }
+
+    @Override
+    public void onResume() {
+        super.onResume();
+        handler.post(refresh);
+    }
+
+    @Override
+    public void onPause() {
+        super.onPause();
+        handler.removeCallbacks(refresh);
+    }
+
+    @Override
+    public void onDestroyView() {
+        super.onDestroyView();
+        requireActivity().setTitle(R.string.settings_title);
+    }
+
+    private void updateTable() {
+        StringWriter out = new StringWriter();
+        metrics.dump(new PrintWriter(out));
+        tvLatencyTable.setText(out.toString());
+    }
+}
@@ -14,6 +14,9 @@ import androidx.lifecycle.ViewModelProvider;
 import com.google.android.material.bottomnavigation.BottomNavigationView;
 import com.google.android.material.switchmaterial.SwitchMaterial;
 import com.miragenotify.R;
+import com.miragenotify.model.PackageStats;
+import com.miragenotify.model.RuleHitCount;
+import com.miragenotify.utils.AppMetadataCache;
 import com.miragenotify.utils.NotificationHelper;
 import com.miragenotify.utils.PreferenceManager;
 import com.miragenotify.viewmodel.LogViewModel;
@@ -24,6 +27,8 @@ import com.miragenotify.viewmodel.RuleViewModel;
  */
 public class HomeFragment extends Fragment {
     
+    private static final int TOP_STATS_LIMIT = 5;
+    
     private PreferenceManager preferenceManager;
     private RuleViewModel ruleViewModel;
     private LogViewModel logViewModel;
@@ -32,6 +37,8 @@ public class HomeFragment extends Fragment {
     private TextView tvInterceptedCount;
     private TextView tvModifiedCount;
     private TextView tvRulesCount;
+    private TextView tvTopApps;
+    private TextView tvTopRules;
     private SwitchMaterial switchService;
     private View statusIndicator;
     
@@ -55,6 +62,8 @@ public class HomeFragment extends Fragment {
         tvInterceptedCount = view.findViewById(R.id.tv_intercepted_count);
         tvModifiedCount = view.findViewById(R.id.tv_modified_count);
         tvRulesCount = view.findViewById(R.id.tv_rules_count);
+        tvTopApps = view.findViewById(R.id.tv_top_apps);
+        tvTopRules = view.findViewById(R.id.tv_top_rules);
         switchService = view.findViewById(R.id.switch_service);
         statusIndicator = view.findViewById(R.id.status_indicator);
         
@@ -101,6 +110,36 @@ public class HomeFragment extends Fragment {
                 tvRulesCount.setText(count + " rules active");
             }
         });
+        
+        logViewModel.getTopPackages(TOP_STATS_LIMIT).observe(getViewLifecycleOwner(), stats -> {
+            if (stats == null || stats.isEmpty()) {
+                tvTopApps.setText(R.string.no_stats_yet);
+                return;
+            }
+            AppMetadataCache appMetadataCache = AppMetadataCache.getInstance(requireContext());
+            StringBuilder text = new StringBuilder();
+            for (PackageStats s : stats) {
+                if (text.length() > 0) text.append('\n');
+                text.append(appMetadataCache.getLabel(s.getPackageName()))
+                        .append(": ").append(s.getInterceptedCount())
+                        .append(" intercepted, ").append(s.getModifiedCount()).append(" modified");
+            }
+            tvTopApps.setText(text);
+        });
+        
+        logViewModel.getTopRules(TOP_STATS_LIMIT).observe(getViewLifecycleOwner(), rules -> {
+            if (rules == null || rules.isEmpty()) {
+                tvTopRules.setText(R.string.no_stats_yet);
+                return;
+            }
+            StringBuilder text = new StringBuilder();
+            for (RuleHitCount r : rules) {
+                if (text.length() > 0) text.append('\n');
+                text.append(r.ruleName != null ? r.ruleName : "Deleted rule")
+                        .append(": ").append(r.hitCount).append(" hits");
+            }
+            tvTopRules.setText(text);
+        });
     }
     
     private void updateServiceStatus() {
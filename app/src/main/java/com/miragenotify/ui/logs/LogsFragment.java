@@ -1,14 +1,20 @@
 package com.miragenotify.ui.logs;
 
 import android.os.Bundle;
+import android.os.Handler;
+import android.os.Looper;
+import android.text.Editable;
+import android.text.TextWatcher;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
+import android.widget.EditText;
 
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 import androidx.fragment.app.Fragment;
 import androidx.lifecycle.ViewModelProvider;
+import androidx.paging.LoadState;
 import androidx.recyclerview.widget.LinearLayoutManager;
 import androidx.recyclerview.widget.RecyclerView;
 
@@ -16,12 +22,22 @@ import com.miragenotify.R;
 import com.miragenotify.adapter.LogAdapter;
 import com.miragenotify.viewmodel.LogViewModel;
 
+import kotlin.Unit;
+
 public class LogsFragment extends Fragment {
     
+    // Wait for a pause in typing so every keystroke does not start a query
+    private static final long SEARCH_DEBOUNCE_MS = 300;
+    
+    private final Handler handler = new Handler(Looper.getMainLooper());
     private LogViewModel viewModel;
     private LogAdapter adapter;
     private RecyclerView recyclerView;
     private View emptyState;
+    private EditText etSearch;
+    private final Runnable applySearch = () -> {
+        if (etSearch != null) viewModel.setSearchQuery(etSearch.getText().toString());
+    };
     
     @Nullable
     @Override
@@ -43,19 +59,47 @@ public class LogsFragment extends Fragment {
         recyclerView.setLayoutManager(new LinearLayoutManager(requireContext()));
         recyclerView.setAdapter(adapter);
         
-        viewModel.getAllLogs().observe(getViewLifecycleOwner(), logs -> {
-            adapter.setLogs(logs);
-            if (logs == null || logs.isEmpty()) {
+        viewModel.getPagedLogs().observe(getViewLifecycleOwner(), pagingData ->
+                adapter.submitData(getViewLifecycleOwner().getLifecycle(), pagingData));
+        
+        adapter.addLoadStateListener(loadStates -> {
+            boolean loaded = loadStates.getRefresh() instanceof LoadState.NotLoading;
+            if (loaded && adapter.getItemCount() == 0) {
                 emptyState.setVisibility(View.VISIBLE);
                 recyclerView.setVisibility(View.GONE);
             } else {
                 emptyState.setVisibility(View.GONE);
                 recyclerView.setVisibility(View.VISIBLE);
             }
+            return Unit.INSTANCE;
+        });
+        
+        etSearch = view.findViewById(R.id.et_search_logs);
+        etSearch.addTextChangedListener(new TextWatcher() {
+            @Override
+            public void beforeTextChanged(CharSequence s, int start, int count, int after) {
+            }
+            
+            @Override
+            public void onTextChanged(CharSequence s, int start, int before, int count) {
+            }
+            
+            @Override
+            public void afterTextChanged(Editable s) {
+                handler.removeCallbacks(applySearch);
+                handler.postDelayed(applySearch, SEARCH_DEBOUNCE_MS);
+            }
         });
         
         view.findViewById(R.id.btn_clear_logs).setOnClickListener(v -> {
             viewModel.deleteAll();
         });
     }
+    
+    @Override
+    public void onDestroyView() {
+        handler.removeCallbacks(applySearch);
+        etSearch = null;
+        super.onDestroyView();
+    }
 }
@@ -1,16 +1,14 @@
 package com.miragenotify.ui.rules;
 
-import android.content.pm.ApplicationInfo;
-import android.content.pm.PackageManager;
 import android.os.Bundle;
+import android.text.Editable;
+import android.text.TextWatcher;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
-import android.widget.ArrayAdapter;
 import android.widget.CheckBox;
 import android.widget.EditText;
 import android.widget.RadioGroup;
-import android.widget.Spinner;
 import android.widget.TextView;
 import android.widget.Toast;
 
@@ -18,17 +16,23 @@ import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 import androidx.appcompat.app.AlertDialog;
 import androidx.fragment.app.Fragment;
+import androidx.lifecycle.Observer;
 import androidx.lifecycle.ViewModelProvider;
 import androidx.recyclerview.widget.LinearLayoutManager;
 import androidx.recyclerview.widget.RecyclerView;
 
 import com.google.android.material.floatingactionbutton.FloatingActionButton;
 import com.miragenotify.R;
+import com.miragenotify.adapter.AppPickerAdapter;
 import com.miragenotify.adapter.RuleAdapter;
+import com.miragenotify.engine.MatchMode;
+import com.miragenotify.engine.RulePatternCache;
+import com.miragenotify.model.InstalledApp;
 import com.miragenotify.model.NotificationRule;
+import com.miragenotify.utils.AppCatalog;
+import com.miragenotify.utils.AppMetadataCache;
 import com.miragenotify.viewmodel.RuleViewModel;
 
-import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 
@@ -38,7 +42,8 @@ public class RulesFragment extends Fragment implements RuleAdapter.OnRuleClickLi
     private RuleAdapter adapter;
     private RecyclerView recyclerView;
     private View emptyState;
-    private final List<AppEntry> installedApps = new ArrayList<>();
+    private AppCatalog appCatalog;
+    private List<InstalledApp> installedApps = Collections.emptyList();
     
     @Nullable
     @Override
@@ -75,26 +80,18 @@ public class RulesFragment extends Fragment implements RuleAdapter.OnRuleClickLi
         
         fabAdd.setOnClickListener(v -> showRuleEditorDialog(null));
         
-        // Load apps in background or once during creation
-        loadInstalledApps();
+        // The catalog is loaded and kept current in the background; this only keeps the latest list
+        appCatalog = AppCatalog.getInstance(requireContext());
+        appCatalog.getApps().observe(getViewLifecycleOwner(), apps -> {
+            installedApps = apps != null ? apps : Collections.emptyList();
+        });
     }
 
-    private void loadInstalledApps() {
-        PackageManager pm = requireContext().getPackageManager();
-        List<ApplicationInfo> apps = pm.getInstalledApplications(PackageManager.GET_META_DATA);
-        installedApps.clear();
-
-        for (ApplicationInfo app : apps) {
-            // Filter to show user-installed apps and updated system apps (like WhatsApp, Telegram, etc.)
-            boolean isSystemApp = (app.flags & ApplicationInfo.FLAG_SYSTEM) != 0;
-            boolean isUpdatedSystemApp = (app.flags & ApplicationInfo.FLAG_UPDATED_SYSTEM_APP) != 0;
-            
-            if (!isSystemApp || isUpdatedSystemApp) {
-                String label = pm.getApplicationLabel(app).toString();
-                installedApps.add(new AppEntry(label, app.packageName));
-            }
+    private String getAppLabel(String packageName) {
+        for (InstalledApp app : installedApps) {
+            if (app.getPackageName().equals(packageName)) return app.getLabel();
         }
-        Collections.sort(installedApps);
+        return packageName;
     }
 
     @Override
@@ -117,47 +114,54 @@ public class RulesFragment extends Fragment implements RuleAdapter.OnRuleClickLi
         
         TextView tvTitle = dialogView.findViewById(R.id.tv_dialog_title);
         EditText etName = dialogView.findViewById(R.id.et_rule_name);
-        Spinner spinnerApps = dialogView.findViewById(R.id.spinner_apps);
+        TextView tvSelectedApp = dialogView.findViewById(R.id.tv_selected_app);
         RadioGroup rgType = dialogView.findViewById(R.id.rg_modification_type);
         EditText etSearch = dialogView.findViewById(R.id.et_search_text);
+        RadioGroup rgMatchMode = dialogView.findViewById(R.id.rg_match_mode);
         EditText etReplacement = dialogView.findViewById(R.id.et_replacement_text);
+        EditText etPriority = dialogView.findViewById(R.id.et_priority);
         CheckBox cbTitle = dialogView.findViewById(R.id.cb_title);
         CheckBox cbContent = dialogView.findViewById(R.id.cb_content);
         CheckBox cbSender = dialogView.findViewById(R.id.cb_sender);
 
-        // Setup Spinner
-        ArrayAdapter<AppEntry> spinnerAdapter = new ArrayAdapter<>(
-                requireContext(),
-                android.R.layout.simple_spinner_item,
-                installedApps
-        );
-        spinnerAdapter.setDropDownViewResource(android.R.layout.simple_spinner_dropdown_item);
-        spinnerApps.setAdapter(spinnerAdapter);
+        // Target app, chosen from the searchable picker
+        String[] selectedPackage = new String[1];
+        tvSelectedApp.setOnClickListener(v -> showAppPicker(app -> {
+            selectedPackage[0] = app.getPackageName();
+            tvSelectedApp.setText(app.getLabel());
+        }));
 
         if (ruleToEdit != null) {
             tvTitle.setText(R.string.edit_rule);
             etName.setText(ruleToEdit.getRuleName());
             etSearch.setText(ruleToEdit.getSearchText());
             etReplacement.setText(ruleToEdit.getReplacementText());
+            etPriority.setText(String.valueOf(ruleToEdit.getPriority()));
             cbTitle.setChecked(ruleToEdit.isModifyTitle());
             cbContent.setChecked(ruleToEdit.isModifyContent());
             cbSender.setChecked(ruleToEdit.isModifySender());
 
-            // Set spinner selection based on existing rule's package name
-            for (int i = 0; i < installedApps.size(); i++) {
-                if (installedApps.get(i).packageName.equals(ruleToEdit.getTargetPackageName())) {
-                    spinnerApps.setSelection(i);
-                    break;
-                }
-            }
+            // Kept even if the app is no longer installed, so saving does not retarget the rule
+            selectedPackage[0] = ruleToEdit.getTargetPackageName();
+            if (selectedPackage[0] != null) tvSelectedApp.setText(getAppLabel(selectedPackage[0]));
 
             switch (ruleToEdit.getModificationType()) {
                 case REPLACE_TEXT: rgType.check(R.id.rb_replace); break;
                 case MASK_TEXT: rgType.check(R.id.rb_mask); break;
                 case RENAME_SENDER: rgType.check(R.id.rb_rename); break;
             }
+
+            MatchMode matchMode = ruleToEdit.getMatchMode() != null
+                    ? ruleToEdit.getMatchMode() : MatchMode.LITERAL;
+            switch (matchMode) {
+                case LITERAL: rgMatchMode.check(R.id.rb_match_literal); break;
+                case CASE_INSENSITIVE: rgMatchMode.check(R.id.rb_match_case_insensitive); break;
+                case WHOLE_WORD: rgMatchMode.check(R.id.rb_match_whole_word); break;
+                case REGEX: rgMatchMode.check(R.id.rb_match_regex); break;
+            }
         } else {
             rgType.check(R.id.rb_replace);
+            rgMatchMode.check(R.id.rb_match_literal);
             cbContent.setChecked(true);
         }
 
@@ -165,18 +169,28 @@ public class RulesFragment extends Fragment implements RuleAdapter.OnRuleClickLi
                 .setView(dialogView)
                 .setPositiveButton(R.string.save_rule, (dialog, which) -> {
                     String name = etName.getText().toString().trim();
-                    AppEntry selectedApp = (AppEntry) spinnerApps.getSelectedItem();
+                    String targetPackage = selectedPackage[0];
                     
-                    if (name.isEmpty() || selectedApp == null) {
+                    if (name.isEmpty() || targetPackage == null) {
                         Toast.makeText(getContext(), "Rule name and target app are required", Toast.LENGTH_SHORT).show();
                         return;
                     }
 
+                    String searchText = etSearch.getText().toString();
+                    MatchMode matchMode = getSelectedMatchMode(rgMatchMode);
+                    String patternError = RulePatternCache.validate(searchText, matchMode);
+                    if (patternError != null) {
+                        Toast.makeText(getContext(), "Invalid regular expression: " + patternError, Toast.LENGTH_LONG).show();
+                        return;
+                    }
+
                     NotificationRule rule = ruleToEdit != null ? ruleToEdit : new NotificationRule();
                     rule.setRuleName(name);
-                    rule.setTargetPackageName(selectedApp.packageName);
-                    rule.setSearchText(etSearch.getText().toString());
+                    rule.setTargetPackageName(targetPackage);
+                    rule.setSearchText(searchText);
+                    rule.setMatchMode(matchMode);
                     rule.setReplacementText(etReplacement.getText().toString());
+                    rule.setPriority(parsePriority(etPriority));
                     rule.setModifyTitle(cbTitle.isChecked());
                     rule.setModifyContent(cbContent.isChecked());
                     rule.setModifySender(cbSender.isChecked());
@@ -193,27 +207,68 @@ public class RulesFragment extends Fragment implements RuleAdapter.OnRuleClickLi
                 .show();
     }
 
-    /**
-     * Helper class to store app label and package name for the spinner
-     */
-    private static class AppEntry implements Comparable<AppEntry> {
-        final String label;
-        final String packageName;
-
-        AppEntry(String label, String packageName) {
-            this.label = label;
-            this.packageName = packageName;
-        }
+    private void showAppPicker(AppPickerAdapter.OnAppClickListener onPicked) {
+        View pickerView = LayoutInflater.from(requireContext()).inflate(R.layout.dialog_app_picker, null);
+        EditText etSearch = pickerView.findViewById(R.id.et_search_apps);
+        TextView tvEmpty = pickerView.findViewById(R.id.tv_apps_empty);
+        RecyclerView recyclerApps = pickerView.findViewById(R.id.recycler_apps);
+        
+        AlertDialog dialog = new AlertDialog.Builder(requireContext())
+                .setTitle(R.string.choose_app)
+                .setView(pickerView)
+                .setNegativeButton(R.string.cancel, null)
+                .create();
+        
+        AppPickerAdapter pickerAdapter = new AppPickerAdapter(AppMetadataCache.getInstance(requireContext()), app -> {
+            onPicked.onAppClick(app);
+            dialog.dismiss();
+        });
+        pickerAdapter.setOnListChangedListener(() -> {
+            boolean empty = pickerAdapter.getItemCount() == 0;
+            tvEmpty.setVisibility(empty ? View.VISIBLE : View.GONE);
+            tvEmpty.setText(pickerAdapter.hasApps() ? R.string.no_apps_found : R.string.loading_apps);
+        });
+        recyclerApps.setLayoutManager(new LinearLayoutManager(requireContext()));
+        recyclerApps.setAdapter(pickerAdapter);
+        
+        etSearch.addTextChangedListener(new TextWatcher() {
+            @Override
+            public void beforeTextChanged(CharSequence s, int start, int count, int after) {
+            }
+            
+            @Override
+            public void onTextChanged(CharSequence s, int start, int before, int count) {
+            }
+            
+            @Override
+            public void afterTextChanged(Editable s) {
+                pickerAdapter.setFilter(s.toString());
+            }
+        });
+        
+        // Follows the catalog while open, e.g. when the first sync finishes
+        Observer<List<InstalledApp>> observer = pickerAdapter::setApps;
+        appCatalog.getApps().observe(getViewLifecycleOwner(), observer);
+        dialog.setOnDismissListener(d -> {
+            appCatalog.getApps().removeObserver(observer);
+            pickerAdapter.release();
+        });
+        dialog.show();
+    }
 
-        @NonNull
-        @Override
-        public String toString() {
-            return label; // This is what the spinner displays
+    private static int parsePriority(EditText editText) {
+        try {
+            return Integer.parseInt(editText.getText().toString().trim());
+        } catch (NumberFormatException e) {
+            return 0;
         }
+    }
 
-        @Override
-        public int compareTo(AppEntry other) {
-            return label.compareToIgnoreCase(other.label);
-        }
+    private MatchMode getSelectedMatchMode(RadioGroup rgMatchMode) {
+        int checkedId = rgMatchMode.getCheckedRadioButtonId();
+        if (checkedId == R.id.rb_match_case_insensitive) return MatchMode.CASE_INSENSITIVE;
+        if (checkedId == R.id.rb_match_whole_word) return MatchMode.WHOLE_WORD;
+        if (checkedId == R.id.rb_match_regex) return MatchMode.REGEX;
+        return MatchMode.LITERAL;
     }
 }
@@ -1,32 +1,75 @@
 package com.miragenotify.ui.settings;
 
+import android.net.Uri;
 import android.os.Bundle;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
+import android.widget.EditText;
 import android.widget.TextView;
 import android.widget.Toast;
 
+import androidx.activity.result.ActivityResultLauncher;
+import androidx.activity.result.contract.ActivityResultContracts;
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 import androidx.appcompat.app.AlertDialog;
 import androidx.appcompat.app.AppCompatDelegate;
 import androidx.fragment.app.Fragment;
 import androidx.lifecycle.ViewModelProvider;
+import androidx.work.Data;
+import androidx.work.WorkInfo;
 
 import com.google.android.material.switchmaterial.SwitchMaterial;
 import com.miragenotify.R;
+import com.miragenotify.ui.diagnostics.DiagnosticsFragment;
 import com.miragenotify.utils.NotificationHelper;
 import com.miragenotify.utils.PreferenceManager;
 import com.miragenotify.viewmodel.LogViewModel;
 import com.miragenotify.viewmodel.RuleViewModel;
+import com.miragenotify.worker.LogExportWorker;
+import com.miragenotify.worker.LogRetentionWorker;
+
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
 
 public class SettingsFragment extends Fragment {
     
+    private static final String STATE_EXPORT_FORMAT = "export_format";
+    private static final String STATE_EXPORT_GZIP = "export_gzip";
+    // Matches coalesce_window_entries
+    private static final long[] COALESCE_WINDOWS_MS = {0, 15, 50, 100};
+    
     private PreferenceManager preferenceManager;
     private RuleViewModel ruleViewModel;
     private LogViewModel logViewModel;
     
+    // Chosen before the document picker opens, used once it returns
+    private LogExportWorker.Format exportFormat = LogExportWorker.Format.JSONL;
+    private boolean exportGzip;
+    private boolean exportRunning;
+    private final ActivityResultLauncher<String> createExportDocument = registerForActivityResult(
+            new ActivityResultContracts.CreateDocument("application/octet-stream"), this::startExport);
+    
+    @Override
+    public void onCreate(@Nullable Bundle savedInstanceState) {
+        super.onCreate(savedInstanceState);
+        if (savedInstanceState != null) {
+            exportFormat = LogExportWorker.Format.valueOf(
+                    savedInstanceState.getString(STATE_EXPORT_FORMAT, exportFormat.name()));
+            exportGzip = savedInstanceState.getBoolean(STATE_EXPORT_GZIP);
+        }
+    }
+    
+    @Override
+    public void onSaveInstanceState(@NonNull Bundle outState) {
+        super.onSaveInstanceState(outState);
+        outState.putString(STATE_EXPORT_FORMAT, exportFormat.name());
+        outState.putBoolean(STATE_EXPORT_GZIP, exportGzip);
+    }
+    
     @Nullable
     @Override
     public View onCreateView(@NonNull LayoutInflater inflater, @Nullable ViewGroup container, 
@@ -43,6 +86,8 @@ public class SettingsFragment extends Fragment {
         logViewModel = new ViewModelProvider(this).get(LogViewModel.class);
         
         SwitchMaterial switchService = view.findViewById(R.id.switch_service_status);
+        SwitchMaterial switchComposeRules = view.findViewById(R.id.switch_compose_rules);
+        SwitchMaterial switchAdaptiveOrder = view.findViewById(R.id.switch_adaptive_rule_order);
         SwitchMaterial switchDarkMode = view.findViewById(R.id.switch_dark_mode);
         TextView tvPermissionStatus = view.findViewById(R.id.tv_permission_status);
         
@@ -52,6 +97,25 @@ public class SettingsFragment extends Fragment {
             preferenceManager.setServiceEnabled(isChecked);
         });
         
+        // Compose Rules Switch
+        switchComposeRules.setChecked(preferenceManager.isComposeRules());
+        switchComposeRules.setOnCheckedChangeListener((buttonView, isChecked) -> {
+            preferenceManager.setComposeRules(isChecked);
+        });
+        
+        // Adaptive Rule Order Switch
+        switchAdaptiveOrder.setChecked(preferenceManager.isAdaptiveRuleOrder());
+        switchAdaptiveOrder.setOnCheckedChangeListener((buttonView, isChecked) -> {
+            preferenceManager.setAdaptiveRuleOrder(isChecked);
+        });
+        
+        // Coalescing Window
+        TextView tvCoalesceSummary = view.findViewById(R.id.tv_coalesce_window_summary);
+        updateCoalesceWindowSummary(tvCoalesceSummary);
+        view.findViewById(R.id.layout_coalesce_window).setOnClickListener(v -> {
+            showCoalesceWindowDialog(tvCoalesceSummary);
+        });
+        
         // Dark Mode Switch
         switchDarkMode.setChecked(preferenceManager.isDarkMode());
         switchDarkMode.setOnCheckedChangeListener((buttonView, isChecked) -> {
@@ -66,6 +130,41 @@ public class SettingsFragment extends Fragment {
             NotificationHelper.openNotificationAccessSettings(requireContext());
         });
         
+        // Log Policy
+        TextView tvLogPolicySummary = view.findViewById(R.id.tv_log_policy_summary);
+        updateLogPolicySummary(tvLogPolicySummary);
+        view.findViewById(R.id.layout_log_policy).setOnClickListener(v -> {
+            showLogPolicyDialog(tvLogPolicySummary);
+        });
+        
+        // Log Retention
+        TextView tvRetentionSummary = view.findViewById(R.id.tv_retention_summary);
+        updateRetentionSummary(tvRetentionSummary);
+        view.findViewById(R.id.layout_log_retention).setOnClickListener(v -> {
+            showRetentionDialog(tvRetentionSummary);
+        });
+        
+        // Export Logs
+        TextView tvExportSummary = view.findViewById(R.id.tv_export_summary);
+        LogExportWorker.getWorkInfo(requireContext()).observe(getViewLifecycleOwner(),
+                workInfos -> updateExportSummary(tvExportSummary, workInfos));
+        view.findViewById(R.id.layout_export_logs).setOnClickListener(v -> {
+            if (exportRunning) {
+                showCancelExportDialog();
+            } else {
+                showExportFormatDialog();
+            }
+        });
+        
+        // Diagnostics
+        view.findViewById(R.id.layout_diagnostics).setOnClickListener(v -> {
+            getParentFragmentManager()
+                    .beginTransaction()
+                    .replace(R.id.fragment_container, new DiagnosticsFragment())
+                    .addToBackStack(null)
+                    .commit();
+        });
+        
         // Clear All Data
         view.findViewById(R.id.layout_clear_data).setOnClickListener(v -> {
             showClearDataConfirmation();
@@ -92,6 +191,169 @@ public class SettingsFragment extends Fragment {
         }
     }
 
+    private void updateCoalesceWindowSummary(TextView tv) {
+        int index = coalesceWindowIndex(preferenceManager.getCoalesceWindowMs());
+        tv.setText(index >= 0 ? getResources().getStringArray(R.array.coalesce_window_entries)[index]
+                : "Wait " + preferenceManager.getCoalesceWindowMs() + " ms");
+    }
+
+    private void showCoalesceWindowDialog(TextView tvSummary) {
+        new AlertDialog.Builder(requireContext())
+                .setTitle(R.string.coalesce_window)
+                .setSingleChoiceItems(R.array.coalesce_window_entries,
+                        coalesceWindowIndex(preferenceManager.getCoalesceWindowMs()),
+                        (dialog, which) -> {
+                            // Read by the service for every notification, no restart needed
+                            preferenceManager.setCoalesceWindowMs(COALESCE_WINDOWS_MS[which]);
+                            updateCoalesceWindowSummary(tvSummary);
+                            Toast.makeText(getContext(), R.string.coalesce_window_saved, Toast.LENGTH_SHORT).show();
+                            dialog.dismiss();
+                        })
+                .setNegativeButton(R.string.cancel, null)
+                .show();
+    }
+
+    private static int coalesceWindowIndex(long windowMs) {
+        for (int i = 0; i < COALESCE_WINDOWS_MS.length; i++) {
+            if (COALESCE_WINDOWS_MS[i] == windowMs) return i;
+        }
+        return -1;
+    }
+
+    private void updateLogPolicySummary(TextView tv) {
+        PreferenceManager.LogPolicy policy = preferenceManager.getLogPolicy();
+        String summary = getResources().getStringArray(R.array.log_policy_entries)[policy.ordinal()];
+        if (policy == PreferenceManager.LogPolicy.SAMPLED) {
+            summary += " (1 in " + preferenceManager.getLogSampleRate() + " per app)";
+        }
+        tv.setText(summary);
+    }
+
+    private void showLogPolicyDialog(TextView tvSummary) {
+        PreferenceManager.LogPolicy[] policies = PreferenceManager.LogPolicy.values();
+        new AlertDialog.Builder(requireContext())
+                .setTitle(R.string.log_policy)
+                .setSingleChoiceItems(R.array.log_policy_entries, preferenceManager.getLogPolicy().ordinal(),
+                        (dialog, which) -> {
+                            preferenceManager.setLogPolicy(policies[which]);
+                            updateLogPolicySummary(tvSummary);
+                            Toast.makeText(getContext(), R.string.log_policy_saved, Toast.LENGTH_SHORT).show();
+                            dialog.dismiss();
+                        })
+                .setNegativeButton(R.string.cancel, null)
+                .show();
+    }
+
+    private void updateRetentionSummary(TextView tv) {
+        int days = preferenceManager.getRetentionMaxAgeDays();
+        int rows = preferenceManager.getRetentionMaxRows();
+        int sizeMb = preferenceManager.getRetentionMaxSizeMb();
+        int archiveDays = preferenceManager.getArchiveAfterDays();
+        tv.setText((days > 0 ? days + " days" : "Forever")
+                + " · " + (rows > 0 ? rows + " logs max" : "No row limit")
+                + " · " + (sizeMb > 0 ? sizeMb + " MB max" : "No size limit")
+                + " · " + (archiveDays > 0 ? "Archive after " + archiveDays + " days" : "No archive"));
+    }
+
+    private void showRetentionDialog(TextView tvSummary) {
+        View dialogView = LayoutInflater.from(requireContext()).inflate(R.layout.dialog_log_retention, null);
+        EditText etMaxAge = dialogView.findViewById(R.id.et_retention_max_age);
+        EditText etMaxRows = dialogView.findViewById(R.id.et_retention_max_rows);
+        EditText etMaxSize = dialogView.findViewById(R.id.et_retention_max_size);
+        EditText etArchiveAfter = dialogView.findViewById(R.id.et_archive_after_days);
+        
+        etMaxAge.setText(String.valueOf(preferenceManager.getRetentionMaxAgeDays()));
+        etMaxRows.setText(String.valueOf(preferenceManager.getRetentionMaxRows()));
+        etMaxSize.setText(String.valueOf(preferenceManager.getRetentionMaxSizeMb()));
+        etArchiveAfter.setText(String.valueOf(preferenceManager.getArchiveAfterDays()));
+        
+        new AlertDialog.Builder(requireContext())
+                .setView(dialogView)
+                .setPositiveButton(R.string.save, (dialog, which) -> {
+                    preferenceManager.setRetentionMaxAgeDays(parseLimit(etMaxAge));
+                    preferenceManager.setRetentionMaxRows(parseLimit(etMaxRows));
+                    preferenceManager.setRetentionMaxSizeMb(parseLimit(etMaxSize));
+                    preferenceManager.setArchiveAfterDays(parseLimit(etArchiveAfter));
+                    updateRetentionSummary(tvSummary);
+                    LogRetentionWorker.runNow(requireContext());
+                    Toast.makeText(getContext(), R.string.retention_saved, Toast.LENGTH_SHORT).show();
+                })
+                .setNegativeButton(R.string.cancel, null)
+                .show();
+    }
+
+    private static int parseLimit(EditText editText) {
+        try {
+            return Math.max(0, Integer.parseInt(editText.getText().toString().trim()));
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    private void updateExportSummary(TextView tv, List<WorkInfo> workInfos) {
+        // A replaced export stays listed next to the one that replaced it
+        WorkInfo latest = null;
+        for (WorkInfo workInfo : workInfos) {
+            if (latest == null || !workInfo.getState().isFinished()) latest = workInfo;
+        }
+        exportRunning = latest != null && !latest.getState().isFinished();
+        if (latest == null) {
+            tv.setText(R.string.export_logs_desc);
+            return;
+        }
+        switch (latest.getState()) {
+            case RUNNING:
+                Data progress = latest.getProgress();
+                long total = progress.getLong(LogExportWorker.KEY_TOTAL, 0);
+                tv.setText(total > 0
+                        ? "Exporting… " + progress.getLong(LogExportWorker.KEY_EXPORTED, 0) + " of " + total + " logs"
+                        : "Exporting…");
+                break;
+            case SUCCEEDED:
+                tv.setText("Exported " + latest.getOutputData().getLong(LogExportWorker.KEY_EXPORTED, 0) + " logs");
+                break;
+            case FAILED:
+                tv.setText("Export failed");
+                break;
+            case CANCELLED:
+                tv.setText("Export cancelled");
+                break;
+            default:
+                tv.setText("Export waiting to start");
+                break;
+        }
+    }
+
+    private void showExportFormatDialog() {
+        new AlertDialog.Builder(requireContext())
+                .setTitle(R.string.export_logs)
+                .setItems(R.array.export_format_entries, (dialog, which) -> {
+                    // Entries: JSON Lines, CSV, then both again gzip-compressed
+                    exportFormat = which % 2 == 0 ? LogExportWorker.Format.JSONL : LogExportWorker.Format.CSV;
+                    exportGzip = which >= 2;
+                    String timestamp = new SimpleDateFormat("yyyyMMdd_HHmm", Locale.US).format(new Date());
+                    String extension = exportFormat == LogExportWorker.Format.CSV ? ".csv" : ".jsonl";
+                    createExportDocument.launch("mirage_notify_logs_" + timestamp + extension + (exportGzip ? ".gz" : ""));
+                })
+                .setNegativeButton(R.string.cancel, null)
+                .show();
+    }
+
+    private void startExport(Uri uri) {
+        // Null if the picker was dismissed
+        if (uri == null) return;
+        LogExportWorker.start(requireContext(), uri, exportFormat, exportGzip);
+        Toast.makeText(getContext(), R.string.export_started, Toast.LENGTH_SHORT).show();
+    }
+
+    private void showCancelExportDialog() {
+        new AlertDialog.Builder(requireContext())
+                .setMessage(R.string.export_cancel_message)
+                .setPositiveButton(R.string.export_cancel, (dialog, which) -> LogExportWorker.cancel(requireContext()))
+                .setNegativeButton(R.string.continue_export, null)
+                .show();
+    }
+
     private void showClearDataConfirmation() {
         new AlertDialog.Builder(requireContext())
                 .setTitle(R.string.dialog_clear_data_title)
@@ -0,0 +1,182 @@
+package com.miragenotify.utils;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.content.pm.ApplicationInfo;
+import android.content.pm.PackageInfo;
+import android.content.pm.PackageManager;
+import android.net.Uri;
+import android.os.SystemClock;
+import android.util.Log;
+
+import androidx.core.content.ContextCompat;
+import androidx.lifecycle.LiveData;
+
+import com.miragenotify.database.AppDatabase;
+import com.miragenotify.database.InstalledAppDao;
+import com.miragenotify.model.InstalledApp;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Process-wide catalog of the apps rules can target, backed by a snapshot in the database.
+ * The picker shows the last snapshot immediately; the first use in a process compares it with
+ * the installed packages in the background and only reads labels of new or updated apps.
+ * After that, package broadcasts keep it current one package at a time.
+ */
+public class AppCatalog {
+
+    private static final String TAG = "AppCatalog";
+
+    private static volatile AppCatalog INSTANCE;
+
+    private final PackageManager packageManager;
+    private final AppDatabase database;
+    private final InstalledAppDao installedAppDao;
+    private final LiveData<List<InstalledApp>> apps;
+    private final ExecutorService executorService = Executors.newSingleThreadExecutor();
+    private final AtomicBoolean synced = new AtomicBoolean();
+
+    private AppCatalog(Context context) {
+        Context appContext = context.getApplicationContext();
+        this.packageManager = appContext.getPackageManager();
+        this.database = AppDatabase.getInstance(appContext);
+        this.installedAppDao = database.installedAppDao();
+        this.apps = installedAppDao.getAllApps();
+        registerReceivers(appContext);
+    }
+
+    /**
+     * Get the catalog instance (Singleton pattern)
+     */
+    public static AppCatalog getInstance(Context context) {
+        if (INSTANCE == null) {
+            synchronized (AppCatalog.class) {
+                if (INSTANCE == null) {
+                    INSTANCE = new AppCatalog(context);
+                }
+            }
+        }
+        return INSTANCE;
+    }
+
+    /**
+     * Pickable apps sorted by label. Brings the snapshot up to date once per process.
+     */
+    public LiveData<List<InstalledApp>> getApps() {
+        if (synced.compareAndSet(false, true)) {
+            executorService.execute(() -> syncAll(false));
+        }
+        return apps;
+    }
+
+    /**
+     * User-installed apps and updated system apps (like WhatsApp, Telegram, etc.)
+     */
+    private static boolean isPickable(ApplicationInfo app) {
+        if (app == null) return false;
+        boolean isSystemApp = (app.flags & ApplicationInfo.FLAG_SYSTEM) != 0;
+        boolean isUpdatedSystemApp = (app.flags & ApplicationInfo.FLAG_UPDATED_SYSTEM_APP) != 0;
+        return !isSystemApp || isUpdatedSystemApp;
+    }
+
+    private InstalledApp snapshot(PackageInfo info) {
+        String label = packageManager.getApplicationLabel(info.applicationInfo).toString();
+        return new InstalledApp(info.packageName, label, info.lastUpdateTime);
+    }
+
+    /**
+     * Diff the snapshot against every installed package
+     *
+     * @param relabel read every label again, e.g. after the system language changed
+     */
+    private void syncAll(boolean relabel) {
+        long startedAt = SystemClock.elapsedRealtime();
+        try {
+            Map<String, InstalledApp> known = new HashMap<>();
+            for (InstalledApp app : installedAppDao.getAllAppsSnapshot()) {
+                known.put(app.getPackageName(), app);
+            }
+
+            // Listing packages is cheap; reading labels loads each app's resources, so skip unchanged ones
+            List<InstalledApp> changed = new ArrayList<>();
+            for (PackageInfo info : packageManager.getInstalledPackages(0)) {
+                if (!isPickable(info.applicationInfo)) continue;
+                InstalledApp previous = known.remove(info.packageName);
+                if (!relabel && previous != null && previous.getLastUpdateTime() == info.lastUpdateTime) continue;
+                changed.add(snapshot(info));
+            }
+            List<String> removed = new ArrayList<>(known.keySet());
+
+            if (!changed.isEmpty() || !removed.isEmpty()) {
+                database.runInTransaction(() -> {
+                    if (!changed.isEmpty()) installedAppDao.upsertAll(changed);
+                    if (!removed.isEmpty()) installedAppDao.deleteApps(removed);
+                });
+            }
+            if (Log.isLoggable(TAG, Log.DEBUG)) {
+                Log.d(TAG, "Synced app catalog in " + (SystemClock.elapsedRealtime() - startedAt) + " ms: "
+                        + changed.size() + " updated, " + removed.size() + " removed");
+            }
+        } catch (Exception e) {
+            Log.e(TAG, "Error syncing app catalog", e);
+            // Try again on the next use
+            synced.set(false);
+        }
+    }
+
+    private void syncPackage(String packageName) {
+        try {
+            PackageInfo info = packageManager.getPackageInfo(packageName, 0);
+            if (isPickable(info.applicationInfo)) {
+                installedAppDao.upsertAll(Collections.singletonList(snapshot(info)));
+                return;
+            }
+        } catch (PackageManager.NameNotFoundException e) {
+            // Uninstalled
+        } catch (Exception e) {
+            Log.e(TAG, "Error syncing " + packageName, e);
+            return;
+        }
+        installedAppDao.deleteApps(Collections.singletonList(packageName));
+    }
+
+    private void registerReceivers(Context context) {
+        IntentFilter packageFilter = new IntentFilter();
+        packageFilter.addAction(Intent.ACTION_PACKAGE_ADDED);
+        packageFilter.addAction(Intent.ACTION_PACKAGE_REPLACED);
+        packageFilter.addAction(Intent.ACTION_PACKAGE_CHANGED);
+        packageFilter.addAction(Intent.ACTION_PACKAGE_REMOVED);
+        packageFilter.addDataScheme("package");
+        ContextCompat.registerReceiver(context, new BroadcastReceiver() {
+            @Override
+            public void onReceive(Context context, Intent intent) {
+                Uri data = intent.getData();
+                if (data == null) return;
+                // An update sends REMOVED before REPLACED; keep the entry until then
+                if (Intent.ACTION_PACKAGE_REMOVED.equals(intent.getAction())
+                        && intent.getBooleanExtra(Intent.EXTRA_REPLACING, false)) {
+                    return;
+                }
+                String packageName = data.getSchemeSpecificPart();
+                executorService.execute(() -> syncPackage(packageName));
+            }
+        }, packageFilter, ContextCompat.RECEIVER_NOT_EXPORTED);
+
+        ContextCompat.registerReceiver(context, new BroadcastReceiver() {
+            @Override
+            public void onReceive(Context context, Intent intent) {
+                executorService.execute(() -> syncAll(true));
+            }
+        }, new IntentFilter(Intent.ACTION_LOCALE_CHANGED), ContextCompat.RECEIVER_NOT_EXPORTED);
+    }
+}
@@ -0,0 +1,170 @@
+package com.miragenotify.utils;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.content.pm.ApplicationInfo;
+import android.content.pm.PackageManager;
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.drawable.BitmapDrawable;
+import android.graphics.drawable.Drawable;
+import android.net.Uri;
+import android.util.Log;
+import android.util.LruCache;
+
+import androidx.core.content.ContextCompat;
+
+/**
+ * Process-wide, byte-bounded cache of app labels and notification-sized icons.
+ * Entries are dropped when the package is replaced or removed, so an update is picked up
+ * without checking the installed version on every lookup.
+ */
+public class AppMetadataCache {
+
+    private static final String TAG = "AppMetadataCache";
+    private static final int MAX_CACHE_BYTES = 4 * 1024 * 1024;
+    private static final int ENTRY_OVERHEAD_BYTES = 64;
+
+    private static volatile AppMetadataCache INSTANCE;
+
+    private final Context context;
+    private final PackageManager packageManager;
+    private final int iconWidth;
+    private final int iconHeight;
+    private final LruCache<String, AppMetadata> cache;
+
+    private AppMetadataCache(Context context) {
+        this.context = context.getApplicationContext();
+        this.packageManager = this.context.getPackageManager();
+        this.iconWidth = this.context.getResources().getDimensionPixelSize(android.R.dimen.notification_large_icon_width);
+        this.iconHeight = this.context.getResources().getDimensionPixelSize(android.R.dimen.notification_large_icon_height);
+
+        int maxBytes = (int) Math.min(MAX_CACHE_BYTES, Runtime.getRuntime().maxMemory() / 32);
+        this.cache = new LruCache<String, AppMetadata>(maxBytes) {
+            @Override
+            protected int sizeOf(String key, AppMetadata value) {
+                return value.getByteCount();
+            }
+        };
+        registerPackageReceiver();
+    }
+
+    /**
+     * Get the cache instance (Singleton pattern)
+     */
+    public static AppMetadataCache getInstance(Context context) {
+        if (INSTANCE == null) {
+            synchronized (AppMetadataCache.class) {
+                if (INSTANCE == null) {
+                    INSTANCE = new AppMetadataCache(context);
+                }
+            }
+        }
+        return INSTANCE;
+    }
+
+    /**
+     * User-visible app name, or the package name if the app is not installed
+     */
+    public String getLabel(String packageName) {
+        AppMetadata metadata = get(packageName);
+        return metadata != null ? metadata.label : packageName;
+    }
+
+    /**
+     * App icon pre-scaled to the notification large-icon size, or null if unavailable
+     */
+    public Bitmap getLargeIcon(String packageName) {
+        AppMetadata metadata = get(packageName);
+        if (metadata == null) return null;
+        if (metadata.icon != null) return metadata.icon;
+
+        Bitmap icon = loadIcon(packageName);
+        if (icon != null) {
+            // Re-insert so the cache accounts for the bitmap's bytes
+            cache.put(packageName, new AppMetadata(metadata.label, icon));
+        }
+        return icon;
+    }
+
+    /**
+     * Icon if it is already cached, without touching the package manager; safe on the main thread
+     */
+    public Bitmap peekLargeIcon(String packageName) {
+        AppMetadata metadata = cache.get(packageName);
+        return metadata != null ? metadata.icon : null;
+    }
+
+    public void invalidate(String packageName) {
+        cache.remove(packageName);
+    }
+
+    private AppMetadata get(String packageName) {
+        AppMetadata metadata = cache.get(packageName);
+        if (metadata != null) return metadata;
+        try {
+            ApplicationInfo appInfo = packageManager.getApplicationInfo(packageName, 0);
+            String label = packageManager.getApplicationLabel(appInfo).toString();
+            metadata = new AppMetadata(label, null);
+            cache.put(packageName, metadata);
+            return metadata;
+        } catch (PackageManager.NameNotFoundException e) {
+            return null;
+        }
+    }
+
+    private Bitmap loadIcon(String packageName) {
+        try {
+            Drawable drawable = packageManager.getApplicationIcon(packageName);
+            if (drawable instanceof BitmapDrawable) {
+                Bitmap source = ((BitmapDrawable) drawable).getBitmap();
+                if (source.getWidth() == iconWidth && source.getHeight() == iconHeight) return source;
+                return Bitmap.createScaledBitmap(source, iconWidth, iconHeight, true);
+            }
+            // Draw adaptive and vector icons straight at the target size
+            Bitmap bitmap = Bitmap.createBitmap(iconWidth, iconHeight, Bitmap.Config.ARGB_8888);
+            Canvas canvas = new Canvas(bitmap);
+            drawable.setBounds(0, 0, iconWidth, iconHeight);
+            drawable.draw(canvas);
+            return bitmap;
+        } catch (Exception e) {
+            Log.w(TAG, "Unable to load icon for " + packageName, e);
+            return null;
+        }
+    }
+
+    private void registerPackageReceiver() {
+        IntentFilter filter = new IntentFilter();
+        filter.addAction(Intent.ACTION_PACKAGE_REPLACED);
+        filter.addAction(Intent.ACTION_PACKAGE_REMOVED);
+        filter.addDataScheme("package");
+        ContextCompat.registerReceiver(context, new BroadcastReceiver() {
+            @Override
+            public void onReceive(Context context, Intent intent) {
+                Uri data = intent.getData();
+                if (data != null) invalidate(data.getSchemeSpecificPart());
+            }
+        }, filter, ContextCompat.RECEIVER_NOT_EXPORTED);
+    }
+
+    /**
+     * Cached label and icon of one installed package
+     */
+    private static class AppMetadata {
+        final String label;
+        final Bitmap icon;
+
+        AppMetadata(String label, Bitmap icon) {
+            this.label = label;
+            this.icon = icon;
+        }
+
+        int getByteCount() {
+            int bytes = ENTRY_OVERHEAD_BYTES + label.length() * 2;
+            if (icon != null) bytes += icon.getAllocationByteCount();
+            return bytes;
+        }
+    }
+}
@@ -12,6 +12,29 @@ public class PreferenceManager {
     private static final String KEY_SERVICE_ENABLED = "service_enabled";
     private static final String KEY_ONBOARDING_COMPLETE = "onboarding_complete";
     private static final String KEY_DARK_MODE = "dark_mode";
+    private static final String KEY_COMPOSE_RULES = "compose_rules";
+    private static final String KEY_ADAPTIVE_RULE_ORDER = "adaptive_rule_order";
+    private static final String KEY_COALESCE_WINDOW_MS = "coalesce_window_ms";
+    private static final String KEY_LOG_POLICY = "log_policy";
+    private static final String KEY_LOG_SAMPLE_RATE = "log_sample_rate";
+    private static final String KEY_LOG_QUEUE_DEPTH = "log_queue_depth";
+    private static final String KEY_LOG_BATCH_SIZE = "log_batch_size";
+    private static final String KEY_LOG_FLUSH_INTERVAL_MS = "log_flush_interval_ms";
+    private static final String KEY_LOG_DROP_POLICY = "log_drop_policy";
+    private static final String KEY_RETENTION_MAX_AGE_DAYS = "retention_max_age_days";
+    private static final String KEY_RETENTION_MAX_ROWS = "retention_max_rows";
+    private static final String KEY_RETENTION_MAX_SIZE_MB = "retention_max_size_mb";
+    private static final String KEY_ARCHIVE_AFTER_DAYS = "archive_after_days";
+    
+    private static final long DEFAULT_COALESCE_WINDOW_MS = 0;
+    private static final int DEFAULT_LOG_SAMPLE_RATE = 10;
+    private static final int DEFAULT_LOG_QUEUE_DEPTH = 1000;
+    private static final int DEFAULT_LOG_BATCH_SIZE = 50;
+    private static final long DEFAULT_LOG_FLUSH_INTERVAL_MS = 500;
+    private static final int DEFAULT_RETENTION_MAX_AGE_DAYS = 30;
+    private static final int DEFAULT_RETENTION_MAX_ROWS = 50000;
+    private static final int DEFAULT_RETENTION_MAX_SIZE_MB = 50;
+    private static final int DEFAULT_ARCHIVE_AFTER_DAYS = 7;
     
     private final SharedPreferences preferences;
     
@@ -42,4 +65,179 @@ public class PreferenceManager {
     public void setDarkMode(boolean darkMode) {
         preferences.edit().putBoolean(KEY_DARK_MODE, darkMode).apply();
     }
+    
+    /**
+     * Apply every matching rule of a package instead of only the first one
+     */
+    public boolean isComposeRules() {
+        return preferences.getBoolean(KEY_COMPOSE_RULES, false);
+    }
+    
+    public void setComposeRules(boolean compose) {
+        preferences.edit().putBoolean(KEY_COMPOSE_RULES, compose).apply();
+    }
+    
+    /**
+     * Test rules without an explicit priority in order of how often they matched recently
+     */
+    public boolean isAdaptiveRuleOrder() {
+        return preferences.getBoolean(KEY_ADAPTIVE_RULE_ORDER, false);
+    }
+    
+    public void setAdaptiveRuleOrder(boolean adaptive) {
+        preferences.edit().putBoolean(KEY_ADAPTIVE_RULE_ORDER, adaptive).apply();
+    }
+    
+    /**
+     * How long every update waits for a newer version of the same notification before it is
+     * processed. The default of 0 adds no delay and only drops versions that are already
+     * outdated when their turn comes.
+     */
+    public long getCoalesceWindowMs() {
+        return preferences.getLong(KEY_COALESCE_WINDOW_MS, DEFAULT_COALESCE_WINDOW_MS);
+    }
+    
+    public void setCoalesceWindowMs(long windowMs) {
+        preferences.edit().putLong(KEY_COALESCE_WINDOW_MS, windowMs).apply();
+    }
+    
+    public LogPolicy getLogPolicy() {
+        String value = preferences.getString(KEY_LOG_POLICY, LogPolicy.MODIFIED_ONLY.name());
+        try {
+            return LogPolicy.valueOf(value);
+        } catch (IllegalArgumentException e) {
+            return LogPolicy.MODIFIED_ONLY;
+        }
+    }
+    
+    public void setLogPolicy(LogPolicy policy) {
+        preferences.edit().putString(KEY_LOG_POLICY, policy.name()).apply();
+    }
+    
+    /**
+     * With {@link LogPolicy#SAMPLED}, log one in this many unmodified notifications of each package
+     */
+    public int getLogSampleRate() {
+        return preferences.getInt(KEY_LOG_SAMPLE_RATE, DEFAULT_LOG_SAMPLE_RATE);
+    }
+    
+    /**
+     * @param rate at least 1; 1 logs every unmodified notification
+     */
+    public void setLogSampleRate(int rate) {
+        if (rate < 1) {
+            throw new IllegalArgumentException("Sample rate must be at least 1, was " + rate);
+        }
+        preferences.edit().putInt(KEY_LOG_SAMPLE_RATE, rate).apply();
+    }
+    
+    /**
+     * Maximum number of log entries waiting to be written
+     */
+    public int getLogQueueDepth() {
+        return preferences.getInt(KEY_LOG_QUEUE_DEPTH, DEFAULT_LOG_QUEUE_DEPTH);
+    }
+    
+    public void setLogQueueDepth(int depth) {
+        preferences.edit().putInt(KEY_LOG_QUEUE_DEPTH, depth).apply();
+    }
+    
+    /**
+     * Number of log entries written per database transaction
+     */
+    public int getLogBatchSize() {
+        return preferences.getInt(KEY_LOG_BATCH_SIZE, DEFAULT_LOG_BATCH_SIZE);
+    }
+    
+    public void setLogBatchSize(int batchSize) {
+        preferences.edit().putInt(KEY_LOG_BATCH_SIZE, batchSize).apply();
+    }
+    
+    /**
+     * Longest time a log entry waits in the queue before a partial batch is written
+     */
+    public long getLogFlushIntervalMs() {
+        return preferences.getLong(KEY_LOG_FLUSH_INTERVAL_MS, DEFAULT_LOG_FLUSH_INTERVAL_MS);
+    }
+    
+    public void setLogFlushIntervalMs(long intervalMs) {
+        preferences.edit().putLong(KEY_LOG_FLUSH_INTERVAL_MS, intervalMs).apply();
+    }
+    
+    public LogDropPolicy getLogDropPolicy() {
+        String value = preferences.getString(KEY_LOG_DROP_POLICY, LogDropPolicy.DROP_OLDEST.name());
+        try {
+            return LogDropPolicy.valueOf(value);
+        } catch (IllegalArgumentException e) {
+            return LogDropPolicy.DROP_OLDEST;
+        }
+    }
+    
+    public void setLogDropPolicy(LogDropPolicy policy) {
+        preferences.edit().putString(KEY_LOG_DROP_POLICY, policy.name()).apply();
+    }
+    
+    /**
+     * Logs older than this many days are deleted (0 keeps them forever)
+     */
+    public int getRetentionMaxAgeDays() {
+        return preferences.getInt(KEY_RETENTION_MAX_AGE_DAYS, DEFAULT_RETENTION_MAX_AGE_DAYS);
+    }
+    
+    public void setRetentionMaxAgeDays(int days) {
+        preferences.edit().putInt(KEY_RETENTION_MAX_AGE_DAYS, days).apply();
+    }
+    
+    /**
+     * Only the newest this many logs are kept (0 means no limit)
+     */
+    public int getRetentionMaxRows() {
+        return preferences.getInt(KEY_RETENTION_MAX_ROWS, DEFAULT_RETENTION_MAX_ROWS);
+    }
+    
+    public void setRetentionMaxRows(int rows) {
+        preferences.edit().putInt(KEY_RETENTION_MAX_ROWS, rows).apply();
+    }
+    
+    /**
+     * Oldest logs are deleted while the database is larger than this (0 means no limit)
+     */
+    public int getRetentionMaxSizeMb() {
+        return preferences.getInt(KEY_RETENTION_MAX_SIZE_MB, DEFAULT_RETENTION_MAX_SIZE_MB);
+    }
+    
+    public void setRetentionMaxSizeMb(int megabytes) {
+        preferences.edit().putInt(KEY_RETENTION_MAX_SIZE_MB, megabytes).apply();
+    }
+    
+    /**
+     * Logs older than this many days are compressed into the archive (0 never archives).
+     * Archived logs stay in the list but are left out of search.
+     */
+    public int getArchiveAfterDays() {
+        return preferences.getInt(KEY_ARCHIVE_AFTER_DAYS, DEFAULT_ARCHIVE_AFTER_DAYS);
+    }
+    
+    public void setArchiveAfterDays(int days) {
+        preferences.edit().putInt(KEY_ARCHIVE_AFTER_DAYS, days).apply();
+    }
+    
+    /**
+     * Which notifications are written to the log. Every policy keeps the per-app and per-rule
+     * counters up to date; notifications that are not logged are only counted.
+     */
+    public enum LogPolicy {
+        ALL,            // Every notification, modified or not
+        MODIFIED_ONLY,  // Only notifications a rule changed
+        SAMPLED,        // Modified ones, plus one in N unmodified ones per app
+        COUNTERS_ONLY   // No log entries, no text stored
+    }
+    
+    /**
+     * What to do when the log queue is full
+     */
+    public enum LogDropPolicy {
+        DROP_OLDEST,  // Evict the oldest queued entry to make room
+        DROP_NEWEST   // Discard the entry being added
+    }
 }
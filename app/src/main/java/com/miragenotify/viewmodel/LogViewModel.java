@@ -1,65 +1,186 @@
 package com.miragenotify.viewmodel;
 
 import android.app.Application;
+import android.util.Log;
 
 import androidx.annotation.NonNull;
 import androidx.lifecycle.AndroidViewModel;
 import androidx.lifecycle.LiveData;
+import androidx.lifecycle.MutableLiveData;
+import androidx.lifecycle.Transformations;
+import androidx.paging.Pager;
+import androidx.paging.PagingConfig;
+import androidx.paging.PagingData;
+import androidx.paging.PagingLiveData;
 
 import com.miragenotify.database.AppDatabase;
+import com.miragenotify.database.LogArchive;
+import com.miragenotify.database.LogHistoryPagingSource;
 import com.miragenotify.model.NotificationLog;
+import com.miragenotify.model.PackageStats;
+import com.miragenotify.model.RuleHitCount;
 
+import java.io.IOException;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 
+import kotlinx.coroutines.CoroutineScope;
+import kotlinx.coroutines.CoroutineScopeKt;
+import kotlinx.coroutines.Dispatchers;
+import kotlinx.coroutines.SupervisorKt;
+
 /**
  * ViewModel for managing notification logs
  */
 public class LogViewModel extends AndroidViewModel {
     
+    private static final String TAG = "LogViewModel";
+    private static final int PAGE_SIZE = 50;
+    private static final int MAX_LOADED_ITEMS = 250;
+    
     private final AppDatabase database;
+    private final LogArchive archive;
     private final ExecutorService executorService;
-    private final LiveData<List<NotificationLog>> allLogs;
-    private final LiveData<Integer> logCount;
-    private final LiveData<Integer> modifiedCount;
+    private final LiveData<PagingData<NotificationLog>> allLogs;
+    private final MutableLiveData<String> searchQuery = new MutableLiveData<>("");
+    private final LiveData<PagingData<NotificationLog>> pagedLogs;
+    // Accessed on the main thread only, like the LiveData it holds
+    private final Map<String, LiveData<PagingData<NotificationLog>>> packageLogs = new HashMap<>();
+    private final LiveData<Long> logCount;
+    private final LiveData<Long> modifiedCount;
+    // Caches the current search's pages; cancelled when the query changes so old pagers do not pile up
+    private CoroutineScope searchScope;
     
     public LogViewModel(@NonNull Application application) {
         super(application);
         database = AppDatabase.getInstance(application);
         executorService = Executors.newSingleThreadExecutor();
-        allLogs = database.notificationLogDao().getAllLogs();
-        logCount = database.notificationLogDao().getLogCount();
-        modifiedCount = database.notificationLogDao().getModifiedCount();
+        
+        // Only a window of pages stays in memory however far the list is scrolled, and
+        // scrolling past the recent logs continues into the archive
+        archive = LogArchive.getInstance(application);
+        Pager<Long, NotificationLog> pager = new Pager<>(pagingConfig(),
+                () -> new LogHistoryPagingSource(database, archive));
+        allLogs = PagingLiveData.cachedIn(PagingLiveData.getLiveData(pager), this);
+        
+        // A search swaps in a pager over the full-text index; pages load on Room's query executor
+        pagedLogs = Transformations.switchMap(searchQuery, query -> {
+            cancelSearch();
+            String matchQuery = toMatchQuery(query);
+            if (matchQuery == null) return allLogs;
+            Pager<Integer, NotificationLog> searchPager = new Pager<>(pagingConfig(),
+                    () -> database.notificationLogDao().searchLogsPaged(matchQuery));
+            // Same context as viewModelScope, but owned by this query only
+            searchScope = CoroutineScopeKt.CoroutineScope(
+                    SupervisorKt.SupervisorJob(null).plus(Dispatchers.getMain().getImmediate()));
+            return PagingLiveData.cachedIn(PagingLiveData.getLiveData(searchPager), searchScope);
+        });
+        
+        // Totals come from the materialized counters, not from counting log rows
+        logCount = database.statsDao().getInterceptedTotal();
+        modifiedCount = database.statsDao().getModifiedTotal();
+    }
+    
+    private static PagingConfig pagingConfig() {
+        return new PagingConfig(PAGE_SIZE, PAGE_SIZE, true, PAGE_SIZE * 2, MAX_LOADED_ITEMS);
+    }
+    
+    /**
+     * Newest logs first, or only those matching the search query if one is set
+     */
+    public LiveData<PagingData<NotificationLog>> getPagedLogs() {
+        return pagedLogs;
+    }
+    
+    /**
+     * Newest logs of one package first, recent and archived.
+     * One pager per package is kept for the life of the view model, so screens can ask again.
+     */
+    public LiveData<PagingData<NotificationLog>> getPagedLogsForPackage(String packageName) {
+        return packageLogs.computeIfAbsent(packageName, name -> {
+            Pager<Long, NotificationLog> pager = new Pager<>(pagingConfig(),
+                    () -> new LogHistoryPagingSource(database, archive, name));
+            return PagingLiveData.cachedIn(PagingLiveData.getLiveData(pager), this);
+        });
+    }
+    
+    private void cancelSearch() {
+        if (searchScope != null) {
+            CoroutineScopeKt.cancel(searchScope, null);
+            searchScope = null;
+        }
+    }
+    
+    public void setSearchQuery(String query) {
+        String normalized = query != null ? query.trim() : "";
+        if (!normalized.equals(searchQuery.getValue())) {
+            searchQuery.setValue(normalized);
+        }
     }
     
-    public LiveData<List<NotificationLog>> getAllLogs() {
-        return allLogs;
+    /**
+     * Turn what the user typed into an FTS MATCH expression: every word must appear, as a word
+     * or the start of one. Quoting each word keeps FTS operators and punctuation from being parsed.
+     *
+     * @return null if there is nothing to search for
+     */
+    private static String toMatchQuery(String query) {
+        StringBuilder match = new StringBuilder();
+        for (String word : query.split("\\s+")) {
+            // Quotes cannot be escaped inside an FTS phrase; the only * is the prefix marker added below
+            String term = word.replace("\"", "").replace("*", "");
+            if (term.isEmpty()) continue;
+            if (match.length() > 0) match.append(' ');
+            match.append('"').append(term).append("*\"");
+        }
+        return match.length() > 0 ? match.toString() : null;
     }
     
-    public LiveData<Integer> getLogCount() {
+    public LiveData<Long> getLogCount() {
         return logCount;
     }
     
-    public LiveData<Integer> getModifiedCount() {
+    public LiveData<Long> getModifiedCount() {
         return modifiedCount;
     }
     
-    public void delete(NotificationLog log) {
-        executorService.execute(() -> database.notificationLogDao().delete(log));
+    public LiveData<List<PackageStats>> getTopPackages(int limit) {
+        return database.statsDao().getTopPackages(limit);
     }
     
-    public void deleteAll() {
-        executorService.execute(() -> database.notificationLogDao().deleteAll());
+    public LiveData<List<RuleHitCount>> getTopRules(int limit) {
+        return database.statsDao().getTopRules(limit);
     }
     
-    public void deleteOlderThan(long timestamp) {
-        executorService.execute(() -> database.notificationLogDao().deleteOlderThan(timestamp));
+    public void delete(NotificationLog log) {
+        executorService.execute(() -> {
+            // The log may have been moved into the archive since the list was loaded
+            if (database.notificationLogDao().deleteById(log.getId()) > 0) return;
+            try {
+                archive.delete(log.getId());
+            } catch (IOException e) {
+                Log.e(TAG, "Failed to delete archived log " + log.getId(), e);
+            }
+        });
+    }
+    
+    public void deleteAll() {
+        executorService.execute(() -> database.runInTransaction(() -> {
+            database.notificationLogDao().deleteAll();
+            database.logArchiveDao().deleteAllBlocks();
+            database.logArchiveDao().deleteAllBlockApps();
+            database.statsDao().deleteAllPackageStats();
+            database.statsDao().deleteAllRuleStats();
+        }));
     }
     
     @Override
     protected void onCleared() {
         super.onCleared();
+        cancelSearch();
         executorService.shutdown();
     }
 }
@@ -3,6 +3,7 @@ package com.miragenotify.viewmodel;
 import android.app.Application;
 
 import androidx.annotation.NonNull;
+import androidx.annotation.VisibleForTesting;
 import androidx.lifecycle.AndroidViewModel;
 import androidx.lifecycle.LiveData;
 
@@ -24,8 +25,13 @@ public class RuleViewModel extends AndroidViewModel {
     private final LiveData<Integer> ruleCount;
     
     public RuleViewModel(@NonNull Application application) {
+        this(application, AppDatabase.getInstance(application));
+    }
+    
+    @VisibleForTesting
+    public RuleViewModel(@NonNull Application application, @NonNull AppDatabase database) {
         super(application);
-        database = AppDatabase.getInstance(application);
+        this.database = database;
         executorService = Executors.newSingleThreadExecutor();
         allRules = database.notificationRuleDao().getAllRules();
         ruleCount = database.notificationRuleDao().getRuleCount();
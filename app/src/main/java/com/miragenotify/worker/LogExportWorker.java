@@ -0,0 +1,199 @@
+package com.miragenotify.worker;
+
+import android.content.ContentResolver;
+import android.content.Context;
+import android.database.Cursor;
+import android.net.Uri;
+import android.provider.DocumentsContract;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.lifecycle.LiveData;
+import androidx.sqlite.db.SupportSQLiteDatabase;
+import androidx.work.Data;
+import androidx.work.ExistingWorkPolicy;
+import androidx.work.OneTimeWorkRequest;
+import androidx.work.WorkInfo;
+import androidx.work.WorkManager;
+import androidx.work.Worker;
+import androidx.work.WorkerParameters;
+
+import com.miragenotify.database.AppDatabase;
+import com.miragenotify.database.LogArchive;
+import com.miragenotify.model.NotificationLog;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * One-off job that writes the whole log history to a document the user picked, as JSON Lines
+ * or CSV, optionally gzip-compressed.
+ * Logs are read with a raw cursor in keyset-paginated chunks and written straight to a
+ * buffered stream by a {@link LogExporter}, which merges archived logs in by id a chunk at a
+ * time, so memory use stays the same however many logs there are. Cancelling removes the
+ * partial file.
+ */
+public class LogExportWorker extends Worker {
+
+    private static final String TAG = "LogExportWorker";
+    private static final String WORK_NAME = "log_export";
+    private static final String KEY_URI = "uri";
+    private static final String KEY_FORMAT = "format";
+    private static final String KEY_GZIP = "gzip";
+    public static final String KEY_EXPORTED = "exported";
+    public static final String KEY_TOTAL = "total";
+    static final int CHUNK_SIZE = 500;
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final String CHUNK_QUERY = "SELECT * FROM " + NotificationLog.VIEW_NAME
+            + " WHERE id > ? ORDER BY id LIMIT ?";
+
+    public enum Format {
+        JSONL,
+        CSV
+    }
+
+    public LogExportWorker(@NonNull Context context, @NonNull WorkerParameters params) {
+        super(context, params);
+    }
+
+    /**
+     * Export to the document, replacing an export that is still running
+     */
+    public static void start(Context context, Uri uri, Format format, boolean gzip) {
+        Data input = new Data.Builder()
+                .putString(KEY_URI, uri.toString())
+                .putString(KEY_FORMAT, format.name())
+                .putBoolean(KEY_GZIP, gzip)
+                .build();
+        OneTimeWorkRequest request = new OneTimeWorkRequest.Builder(LogExportWorker.class)
+                .setInputData(input)
+                .build();
+        WorkManager.getInstance(context)
+                .enqueueUniqueWork(WORK_NAME, ExistingWorkPolicy.REPLACE, request);
+    }
+
+    public static void cancel(Context context) {
+        WorkManager.getInstance(context).cancelUniqueWork(WORK_NAME);
+    }
+
+    /**
+     * State of the latest export; progress and the final result carry {@link #KEY_EXPORTED}
+     * and {@link #KEY_TOTAL}
+     */
+    public static LiveData<List<WorkInfo>> getWorkInfo(Context context) {
+        return WorkManager.getInstance(context).getWorkInfosForUniqueWorkLiveData(WORK_NAME);
+    }
+
+    @NonNull
+    @Override
+    public Result doWork() {
+        Uri uri = Uri.parse(getInputData().getString(KEY_URI));
+        Format format = Format.valueOf(getInputData().getString(KEY_FORMAT));
+        boolean gzip = getInputData().getBoolean(KEY_GZIP, false);
+        AppDatabase database = AppDatabase.getInstance(getApplicationContext());
+        ContentResolver resolver = getApplicationContext().getContentResolver();
+
+        try {
+            long total = database.notificationLogDao().countLogs() + database.logArchiveDao().countArchivedLogs();
+            long exported;
+            try (Writer writer = openWriter(resolver, uri, gzip)) {
+                exported = export(database, format, writer, total);
+            }
+            if (isStopped()) {
+                deletePartial(resolver, uri);
+                return Result.failure();
+            }
+            Log.d(TAG, "Exported " + exported + " logs");
+            return Result.success(progress(exported, total));
+        } catch (Exception e) {
+            Log.e(TAG, "Error exporting logs", e);
+            deletePartial(resolver, uri);
+            return Result.failure();
+        }
+    }
+
+    private static Writer openWriter(ContentResolver resolver, Uri uri, boolean gzip) throws IOException {
+        OutputStream out = resolver.openOutputStream(uri, "wt");
+        if (out == null) throw new IOException("Unable to open " + uri);
+        if (gzip) out = new GZIPOutputStream(out, BUFFER_SIZE);
+        return new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8), BUFFER_SIZE);
+    }
+
+    private long export(AppDatabase database, Format format, Writer writer, long total) throws IOException {
+        LogArchive archive = LogArchive.getInstance(getApplicationContext());
+        LogExporter exporter = new LogExporter(format, CHUNK_SIZE, recentLogs(database),
+                (afterId, limit) -> archive.loadAfter(afterId, Long.MAX_VALUE, limit),
+                this::isStopped,
+                exported -> setProgressAsync(progress(exported, total)));
+        return exporter.export(writer);
+    }
+
+    /**
+     * Recent logs read with a raw cursor into a single reused row
+     */
+    static LogExporter.RecentLogs recentLogs(AppDatabase database) {
+        SupportSQLiteDatabase db = database.getOpenHelper().getReadableDatabase();
+        NotificationLog row = new NotificationLog();
+        return (afterId, limit, consumer) -> {
+            int read = 0;
+            try (Cursor cursor = db.query(CHUNK_QUERY, new Object[]{afterId, limit})) {
+                int[] columns = columnIndexes(cursor);
+                while (cursor.moveToNext()) {
+                    readRow(cursor, columns, row);
+                    consumer.accept(row);
+                    read++;
+                }
+            }
+            return read;
+        };
+    }
+
+    private static Data progress(long exported, long total) {
+        return new Data.Builder()
+                .putLong(KEY_EXPORTED, exported)
+                .putLong(KEY_TOTAL, Math.max(exported, total))
+                .build();
+    }
+
+    private static int[] columnIndexes(Cursor cursor) {
+        int[] indexes = new int[LogExporter.COLUMNS.length];
+        for (int i = 0; i < LogExporter.COLUMNS.length; i++) {
+            indexes[i] = cursor.getColumnIndexOrThrow(LogExporter.COLUMNS[i]);
+        }
+        return indexes;
+    }
+
+    /**
+     * Fill the reused row from the cursor, in {@link LogExporter#COLUMNS} order
+     */
+    private static void readRow(Cursor cursor, int[] columns, NotificationLog row) {
+        row.setId(cursor.getLong(columns[0]));
+        row.setTimestamp(cursor.getLong(columns[1]));
+        row.setPackageName(cursor.getString(columns[2]));
+        row.setAppName(cursor.getString(columns[3]));
+        row.setOriginalTitle(cursor.getString(columns[4]));
+        row.setOriginalContent(cursor.getString(columns[5]));
+        row.setOriginalSender(cursor.getString(columns[6]));
+        row.setModifiedTitle(cursor.getString(columns[7]));
+        row.setModifiedContent(cursor.getString(columns[8]));
+        row.setModifiedSender(cursor.getString(columns[9]));
+        row.setWasModified(cursor.getInt(columns[10]) != 0);
+        row.setRuleId(cursor.getLong(columns[11]));
+        row.setAppliedRuleIds(cursor.getString(columns[12]));
+        row.setMergedCount(cursor.getInt(columns[13]));
+    }
+
+    private static void deletePartial(ContentResolver resolver, Uri uri) {
+        try {
+            DocumentsContract.deleteDocument(resolver, uri);
+        } catch (Exception e) {
+            Log.w(TAG, "Unable to delete partial export " + uri, e);
+        }
+    }
+}
@@ -0,0 +1,257 @@
+package com.miragenotify.worker;
+
+import com.miragenotify.model.NotificationLog;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.BooleanSupplier;
+import java.util.function.LongConsumer;
+
+/**
+ * Writes the log history as JSON Lines or CSV, in id order.
+ * Recent logs and archived logs are both read in keyset-paginated chunks of {@code chunkSize}
+ * and merged by id, so only one chunk of each is held at a time.
+ */
+class LogExporter {
+
+    static final String[] COLUMNS = {
+            "id", "timestamp", "packageName", "appName",
+            "originalTitle", "originalContent", "originalSender",
+            "modifiedTitle", "modifiedContent", "modifiedSender",
+            "wasModified", "ruleId", "appliedRuleIds", "mergedCount"
+    };
+
+    /**
+     * Logs still in notification_logs
+     */
+    interface RecentLogs {
+        /**
+         * Pass up to {@code limit} logs with an id above {@code afterId} to the consumer, in id
+         * order. The same instance may be passed for every log.
+         *
+         * @return number of logs read
+         */
+        int readAfter(long afterId, int limit, LogConsumer consumer) throws IOException;
+    }
+
+    /**
+     * Logs moved into the archive
+     */
+    interface ArchivedLogs {
+        /**
+         * Up to {@code limit} logs with an id above {@code afterId}, in id order
+         */
+        List<NotificationLog> loadAfter(long afterId, int limit) throws IOException;
+    }
+
+    interface LogConsumer {
+        void accept(NotificationLog log) throws IOException;
+    }
+
+    private final LogExportWorker.Format format;
+    private final int chunkSize;
+    private final RecentLogs recent;
+    private final ArchiveReader archived;
+    private final BooleanSupplier isStopped;
+    private final LongConsumer onProgress;
+    private long exported;
+
+    /**
+     * @param isStopped checked between chunks
+     * @param onProgress called with the number of logs written so far, about once per chunk
+     */
+    LogExporter(LogExportWorker.Format format, int chunkSize, RecentLogs recent, ArchivedLogs archived,
+                BooleanSupplier isStopped, LongConsumer onProgress) {
+        this.format = format;
+        this.chunkSize = chunkSize;
+        this.recent = recent;
+        this.archived = new ArchiveReader(archived, chunkSize);
+        this.isStopped = isStopped;
+        this.onProgress = onProgress;
+    }
+
+    /**
+     * @return number of logs written
+     */
+    long export(Writer writer) throws IOException {
+        exported = 0;
+        long[] afterId = {0};
+        if (format == LogExportWorker.Format.CSV) writeCsvHeader(writer);
+        while (!isStopped.getAsBoolean()) {
+            int read = recent.readAfter(afterId[0], chunkSize, log -> {
+                // Archived logs older than this one go first, to keep the file in id order
+                for (NotificationLog old = archived.peek(); old != null && old.getId() < log.getId(); old = archived.peek()) {
+                    write(writer, old);
+                    archived.skip();
+                }
+                write(writer, log);
+                afterId[0] = log.getId();
+            });
+            onProgress.accept(exported);
+            if (read < chunkSize) break;
+        }
+
+        // Whatever is left in the archive is newer than every remaining log, if any
+        while (!isStopped.getAsBoolean()) {
+            NotificationLog log = archived.peek();
+            if (log == null) break;
+            write(writer, log);
+            archived.skip();
+            if (exported % chunkSize == 0) onProgress.accept(exported);
+        }
+        return exported;
+    }
+
+    private void write(Writer writer, NotificationLog log) throws IOException {
+        if (format == LogExportWorker.Format.CSV) {
+            writeCsvRow(writer, log);
+        } else {
+            writeJsonRow(writer, log);
+        }
+        exported++;
+    }
+
+    static void writeJsonRow(Writer writer, NotificationLog log) throws IOException {
+        writer.write("{\"id\":");
+        writer.write(Long.toString(log.getId()));
+        writer.write(",\"timestamp\":");
+        writer.write(Long.toString(log.getTimestamp()));
+        writeJsonField(writer, "packageName", log.getPackageName());
+        writeJsonField(writer, "appName", log.getAppName());
+        writeJsonField(writer, "originalTitle", log.getOriginalTitle());
+        writeJsonField(writer, "originalContent", log.getOriginalContent());
+        writeJsonField(writer, "originalSender", log.getOriginalSender());
+        writeJsonField(writer, "modifiedTitle", log.getModifiedTitle());
+        writeJsonField(writer, "modifiedContent", log.getModifiedContent());
+        writeJsonField(writer, "modifiedSender", log.getModifiedSender());
+        writer.write(",\"wasModified\":");
+        writer.write(log.isWasModified() ? "true" : "false");
+        writer.write(",\"ruleId\":");
+        writer.write(Long.toString(log.getRuleId()));
+        writeJsonField(writer, "appliedRuleIds", log.getAppliedRuleIds());
+        writer.write(",\"mergedCount\":");
+        writer.write(Integer.toString(log.getMergedCount()));
+        writer.write("}\n");
+    }
+
+    private static void writeJsonField(Writer writer, String name, String value) throws IOException {
+        writer.write(",\"");
+        writer.write(name);
+        writer.write("\":");
+        if (value == null) {
+            writer.write("null");
+            return;
+        }
+        writer.write('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"':
+                    writer.write("\\\"");
+                    break;
+                case '\\':
+                    writer.write("\\\\");
+                    break;
+                case '\n':
+                    writer.write("\\n");
+                    break;
+                case '\r':
+                    writer.write("\\r");
+                    break;
+                case '\t':
+                    writer.write("\\t");
+                    break;
+                default:
+                    if (c < 0x20) {
+                        writer.write(String.format("\\u%04x", (int) c));
+                    } else {
+                        writer.write(c);
+                    }
+            }
+        }
+        writer.write('"');
+    }
+
+    static void writeCsvHeader(Writer writer) throws IOException {
+        writer.write(String.join(",", COLUMNS));
+        writer.write("\r\n");
+    }
+
+    static void writeCsvRow(Writer writer, NotificationLog log) throws IOException {
+        writer.write(Long.toString(log.getId()));
+        writer.write(',');
+        writer.write(Long.toString(log.getTimestamp()));
+        writeCsvField(writer, log.getPackageName());
+        writeCsvField(writer, log.getAppName());
+        writeCsvField(writer, log.getOriginalTitle());
+        writeCsvField(writer, log.getOriginalContent());
+        writeCsvField(writer, log.getOriginalSender());
+        writeCsvField(writer, log.getModifiedTitle());
+        writeCsvField(writer, log.getModifiedContent());
+        writeCsvField(writer, log.getModifiedSender());
+        writer.write(log.isWasModified() ? ",1," : ",0,");
+        writer.write(Long.toString(log.getRuleId()));
+        writeCsvField(writer, log.getAppliedRuleIds());
+        writer.write(',');
+        writer.write(Integer.toString(log.getMergedCount()));
+        writer.write("\r\n");
+    }
+
+    /**
+     * RFC 4180: quote fields with separators, quotes or line breaks, doubling inner quotes.
+     * Null is written as an empty field.
+     */
+    private static void writeCsvField(Writer writer, String value) throws IOException {
+        writer.write(',');
+        if (value == null) return;
+        boolean quote = false;
+        for (int i = 0; i < value.length() && !quote; i++) {
+            char c = value.charAt(i);
+            quote = c == ',' || c == '"' || c == '\n' || c == '\r';
+        }
+        if (!quote) {
+            writer.write(value);
+            return;
+        }
+        writer.write('"');
+        writer.write(value.replace("\"", "\"\""));
+        writer.write('"');
+    }
+
+    /**
+     * Walks the archive in id order, holding one chunk of decoded logs at a time
+     */
+    private static class ArchiveReader {
+        private final ArchivedLogs archive;
+        private final int chunkSize;
+        private List<NotificationLog> chunk = Collections.emptyList();
+        private int next;
+        private boolean exhausted;
+
+        ArchiveReader(ArchivedLogs archive, int chunkSize) {
+            this.archive = archive;
+            this.chunkSize = chunkSize;
+        }
+
+        /**
+         * The next archived log without consuming it, or null at the end
+         */
+        NotificationLog peek() throws IOException {
+            if (next == chunk.size()) {
+                if (exhausted) return null;
+                long afterId = chunk.isEmpty() ? 0 : chunk.get(chunk.size() - 1).getId();
+                chunk = archive.loadAfter(afterId, chunkSize);
+                next = 0;
+                exhausted = chunk.size() < chunkSize;
+                if (chunk.isEmpty()) return null;
+            }
+            return chunk.get(next);
+        }
+
+        void skip() {
+            next++;
+        }
+    }
+}
@@ -0,0 +1,202 @@
+package com.miragenotify.worker;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.sqlite.db.SupportSQLiteDatabase;
+import androidx.work.Constraints;
+import androidx.work.ExistingPeriodicWorkPolicy;
+import androidx.work.ExistingWorkPolicy;
+import androidx.work.OneTimeWorkRequest;
+import androidx.work.PeriodicWorkRequest;
+import androidx.work.WorkManager;
+import androidx.work.Worker;
+import androidx.work.WorkerParameters;
+
+import com.miragenotify.database.AppDatabase;
+import com.miragenotify.database.LogArchive;
+import com.miragenotify.database.LogArchiveDao;
+import com.miragenotify.database.NotificationLogDao;
+import com.miragenotify.utils.PreferenceManager;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Periodic job that enforces the log retention policy (max age, max rows, max database size)
+ * and then moves logs past the archive age into the compressed {@link LogArchive}.
+ * Rows are deleted in small chunks, each in its own short transaction, so the interceptor's
+ * log writer is never blocked for long. Limits count archived logs too; the archive is the
+ * oldest part of the history and is trimmed a block at a time. Freed pages are returned with
+ * an incremental vacuum.
+ */
+public class LogRetentionWorker extends Worker {
+
+    private static final String TAG = "LogRetentionWorker";
+    private static final String PERIODIC_WORK_NAME = "log_retention";
+    private static final String ONE_TIME_WORK_NAME = "log_retention_now";
+    private static final int CHUNK_SIZE = 500;
+    private static final long CHUNK_PAUSE_MS = 50;
+    private static final int VACUUM_PAGES_PER_STEP = 512;
+    private static final int AUTO_VACUUM_INCREMENTAL = 2;
+    private static final long DAY_MS = TimeUnit.DAYS.toMillis(1);
+    private static final long MB = 1024 * 1024;
+
+    public LogRetentionWorker(@NonNull Context context, @NonNull WorkerParameters params) {
+        super(context, params);
+    }
+
+    /**
+     * Schedule the daily retention run, keeping an already scheduled one
+     */
+    public static void schedule(Context context) {
+        Constraints constraints = new Constraints.Builder()
+                .setRequiresBatteryNotLow(true)
+                .build();
+        PeriodicWorkRequest request = new PeriodicWorkRequest.Builder(LogRetentionWorker.class, 1, TimeUnit.DAYS)
+                .setConstraints(constraints)
+                .build();
+        WorkManager.getInstance(context)
+                .enqueueUniquePeriodicWork(PERIODIC_WORK_NAME, ExistingPeriodicWorkPolicy.KEEP, request);
+    }
+
+    /**
+     * Apply the policy right away, e.g. after it was changed in settings
+     */
+    public static void runNow(Context context) {
+        OneTimeWorkRequest request = new OneTimeWorkRequest.Builder(LogRetentionWorker.class).build();
+        WorkManager.getInstance(context)
+                .enqueueUniqueWork(ONE_TIME_WORK_NAME, ExistingWorkPolicy.REPLACE, request);
+    }
+
+    @NonNull
+    @Override
+    public Result doWork() {
+        PreferenceManager preferenceManager = new PreferenceManager(getApplicationContext());
+        AppDatabase database = AppDatabase.getInstance(getApplicationContext());
+        NotificationLogDao logDao = database.notificationLogDao();
+        LogArchiveDao archiveDao = database.logArchiveDao();
+        SupportSQLiteDatabase db = database.getOpenHelper().getWritableDatabase();
+
+        try {
+            long deleted = 0;
+            boolean expiredBlocks = false;
+
+            int maxAgeDays = preferenceManager.getRetentionMaxAgeDays();
+            if (maxAgeDays > 0) {
+                long cutoff = System.currentTimeMillis() - maxAgeDays * DAY_MS;
+                expiredBlocks = archiveDao.deleteBlocksOlderThan(cutoff) > 0;
+                int n;
+                do {
+                    n = logDao.deleteOlderThanChunk(cutoff, CHUNK_SIZE);
+                    deleted += n;
+                } while (n == CHUNK_SIZE && pause());
+            }
+
+            int maxRows = preferenceManager.getRetentionMaxRows();
+            if (maxRows > 0) {
+                int excess = logDao.countLogs() + archiveDao.countArchivedLogs() - maxRows;
+                while (excess > 0) {
+                    int n = deleteOldest(logDao, archiveDao, excess);
+                    deleted += n;
+                    excess -= n;
+                    if (n == 0 || !pause()) break;
+                }
+            }
+
+            int maxSizeMb = preferenceManager.getRetentionMaxSizeMb();
+            if (maxSizeMb > 0) {
+                long maxBytes = maxSizeMb * MB;
+                while (getUsedBytes(db) > maxBytes) {
+                    int n = deleteOldest(logDao, archiveDao, CHUNK_SIZE);
+                    deleted += n;
+                    if (n == 0 || !pause()) break;
+                }
+            }
+
+            // Index rows and dictionaries of deleted blocks
+            archiveDao.deleteOrphanedBlockApps();
+            archiveDao.deleteUnusedDictionaries();
+
+            // Archive what is left, so logs about to expire are not compressed first
+            int archived = 0;
+            int archiveAfterDays = preferenceManager.getArchiveAfterDays();
+            if (archiveAfterDays > 0) {
+                long cutoff = System.currentTimeMillis() - archiveAfterDays * DAY_MS;
+                archived = LogArchive.getInstance(getApplicationContext()).archiveOlderThan(cutoff, () -> !pause());
+            }
+
+            if (isStopped()) return Result.retry();
+            if (deleted > 0 || expiredBlocks || archived > 0) {
+                incrementalVacuum(db);
+            }
+            Log.d(TAG, "Retention run finished, " + deleted + " logs deleted, " + archived + " archived");
+            return Result.success();
+        } catch (Exception e) {
+            Log.e(TAG, "Error enforcing log retention", e);
+            return Result.retry();
+        }
+    }
+
+    /**
+     * Delete the oldest archive block, or the oldest logs if nothing is archived
+     *
+     * @return number of logs deleted
+     */
+    private static int deleteOldest(NotificationLogDao logDao, LogArchiveDao archiveDao, int limit) {
+        int blockRows = archiveDao.getOldestBlockRowCount();
+        if (blockRows > 0 && archiveDao.deleteOldestBlock() > 0) return blockRows;
+        return logDao.deleteOldestChunk(Math.min(CHUNK_SIZE, limit));
+    }
+
+    /**
+     * Give other writers a chance between chunks
+     *
+     * @return false if the work was stopped and should end
+     */
+    private boolean pause() {
+        if (isStopped()) return false;
+        try {
+            Thread.sleep(CHUNK_PAUSE_MS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+        return !isStopped();
+    }
+
+    /**
+     * Database size excluding pages already on the free list
+     */
+    private static long getUsedBytes(SupportSQLiteDatabase db) {
+        long pageSize = queryLong(db, "PRAGMA page_size");
+        long pageCount = queryLong(db, "PRAGMA page_count");
+        long freePages = queryLong(db, "PRAGMA freelist_count");
+        return (pageCount - freePages) * pageSize;
+    }
+
+    private void incrementalVacuum(SupportSQLiteDatabase db) {
+        // Only databases created since incremental mode exists have it; on older ones SQLite
+        // reuses free pages for new rows instead, and the file keeps its size
+        if (queryLong(db, "PRAGMA auto_vacuum") != AUTO_VACUUM_INCREMENTAL) return;
+        // Release free pages in steps so the write lock is held only briefly each time
+        while (queryLong(db, "PRAGMA freelist_count") > 0 && !isStopped()) {
+            drain(db.query("PRAGMA incremental_vacuum(" + VACUUM_PAGES_PER_STEP + ")"));
+        }
+    }
+
+    private static long queryLong(SupportSQLiteDatabase db, String sql) {
+        try (Cursor cursor = db.query(sql)) {
+            return cursor.moveToFirst() ? cursor.getLong(0) : 0;
+        }
+    }
+
+    private static void drain(Cursor cursor) {
+        try (Cursor c = cursor) {
+            while (c.moveToNext()) {
+                // incremental_vacuum does its work while the statement is stepped
+            }
+        }
+    }
+}
@@ -0,0 +1,111 @@
+package com.miragenotify.database;
+
+import static org.junit.Assert.assertTrue;
+
+import android.database.Cursor;
+import android.util.Log;
+
+import androidx.room.testing.MigrationTestHelper;
+import androidx.sqlite.db.SupportSQLiteDatabase;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.shadows.ShadowLog;
+
+import java.io.IOException;
+import java.util.Random;
+
+/**
+ * Measures bytes per log row, FTS index included, for a fixed synthetic history stored in the
+ * version 9 layout and again after migrating it to version 10 (interned apps, changed-only
+ * modified fields). Sizes are taken after VACUUM and logged under {@value #TAG}, which the
+ * local test run prints to standard output.
+ */
+@RunWith(RobolectricTestRunner.class)
+public class LogStorageSizeTest {
+
+    private static final String TAG = "LogStorageSize";
+    private static final String DATABASE = "log-storage-size-test";
+    private static final long SEED = 23L;
+    private static final int ROWS = 5000;
+    private static final int APPS = 30;
+    private static final String[] WORDS = ("the a meeting at noon your order has shipped new message from "
+            + "alice bob payment received call me back tomorrow reminder code is ready").split(" ");
+
+    @Rule
+    public MigrationTestHelper helper = new MigrationTestHelper(
+            InstrumentationRegistry.getInstrumentation(), AppDatabase.class);
+
+    @Before
+    public void setUp() {
+        ShadowLog.stream = System.out;
+    }
+
+    @Test
+    public void versionTenStoresTheSameLogsInLessSpace() throws IOException {
+        SupportSQLiteDatabase db = helper.createDatabase(DATABASE, 9);
+        insertHistory(db);
+        double before = bytesPerRow(db);
+        db.close();
+
+        db = helper.runMigrationsAndValidate(DATABASE, 10, true, AppDatabase.MIGRATION_9_10);
+        double after = bytesPerRow(db);
+
+        Log.i(TAG, String.format("%d rows: version 9 %.0f B/row, version 10 %.0f B/row (%.0f%%)",
+                ROWS, before, after, 100 * after / before));
+        // About two thirds on this corpus; the margin keeps page rounding from failing the test
+        assertTrue(before + " -> " + after, after < 0.75 * before);
+    }
+
+    /**
+     * 30% of the logs were modified by a rule; the rest keep copies of their original fields
+     */
+    private static void insertHistory(SupportSQLiteDatabase db) {
+        Random random = new Random(SEED);
+        db.beginTransaction();
+        try {
+            for (int i = 1; i <= ROWS; i++) {
+                int app = random.nextInt(APPS);
+                String title = "Title " + random.nextInt(50);
+                String content = words(random, 1 + random.nextInt(25));
+                String sender = app % 2 == 0 ? "Sender " + random.nextInt(20) : null;
+                boolean modified = random.nextInt(10) < 3;
+                String modifiedContent = modified ? content.replaceFirst(" ", " [x] ") + " *" : content;
+                db.execSQL("INSERT INTO notification_logs (packageName, appName, originalTitle, originalContent, "
+                                + "originalSender, modifiedTitle, modifiedContent, modifiedSender, wasModified, ruleId, "
+                                + "appliedRuleIds, mergedCount, timestamp) VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, 0, ?)",
+                        new Object[]{"com.example.app" + app, "Example App " + app, title, content, sender,
+                                title, modifiedContent, sender, modified ? 1 : 0, modified ? 1 : 0,
+                                modified ? "1" : null, 1_700_000_000_000L + i * 60_000L});
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    private static String words(Random random, int count) {
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < count; i++) {
+            if (i > 0) builder.append(' ');
+            builder.append(WORDS[random.nextInt(WORDS.length)]);
+        }
+        return builder.toString();
+    }
+
+    private static double bytesPerRow(SupportSQLiteDatabase db) {
+        db.execSQL("VACUUM");
+        return (double) pragma(db, "page_count") * pragma(db, "page_size") / ROWS;
+    }
+
+    private static long pragma(SupportSQLiteDatabase db, String name) {
+        try (Cursor cursor = db.query("PRAGMA " + name)) {
+            assertTrue(name, cursor.moveToFirst());
+            return cursor.getLong(0);
+        }
+    }
+}
@@ -0,0 +1,129 @@
+package com.miragenotify.database;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import android.database.Cursor;
+
+import androidx.room.Room;
+import androidx.room.migration.Migration;
+import androidx.room.testing.MigrationTestHelper;
+import androidx.sqlite.db.SupportSQLiteDatabase;
+import androidx.test.core.app.ApplicationProvider;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import com.miragenotify.model.NotificationLog;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Migrates a version 1 database with data one version at a time, validating each step against
+ * the exported schema, then opens the result with the current entities.
+ */
+@RunWith(RobolectricTestRunner.class)
+public class MigrationTest {
+
+    private static final String DATABASE = "migration-test";
+    private static final int LATEST_VERSION = 11;
+
+    @Rule
+    public MigrationTestHelper helper = new MigrationTestHelper(
+            InstrumentationRegistry.getInstrumentation(), AppDatabase.class);
+
+    @Test
+    public void everyStepFromVersionOneMatchesItsSchema() throws IOException {
+        SupportSQLiteDatabase db = helper.createDatabase(DATABASE, 1);
+        insertVersionOneData(db);
+        db.close();
+
+        for (Migration migration : AppDatabase.ALL_MIGRATIONS) {
+            db = helper.runMigrationsAndValidate(DATABASE, migration.endVersion, true, migration);
+            checkData(db, migration.endVersion);
+            db.close();
+        }
+        assertEquals(LATEST_VERSION, AppDatabase.ALL_MIGRATIONS[AppDatabase.ALL_MIGRATIONS.length - 1].endVersion);
+    }
+
+    @Test
+    public void migratedDatabaseOpensWithTheCurrentEntities() throws IOException {
+        SupportSQLiteDatabase db = helper.createDatabase(DATABASE, 1);
+        insertVersionOneData(db);
+        db.close();
+
+        AppDatabase database = Room.databaseBuilder(ApplicationProvider.getApplicationContext(),
+                        AppDatabase.class, DATABASE)
+                .addMigrations(AppDatabase.ALL_MIGRATIONS)
+                .build();
+        helper.closeWhenFinished(database);
+
+        List<NotificationLog> logs = database.notificationLogDao().getLogsBefore(Long.MAX_VALUE, 10);
+        assertEquals(3, logs.size());
+        assertEquals("com.example.mail", logs.get(0).getPackageName());
+        assertEquals("Hello", logs.get(1).getModifiedContent());
+        assertEquals(1, database.notificationRuleDao().getEnabledRules().size());
+    }
+
+    private static void insertVersionOneData(SupportSQLiteDatabase db) {
+        db.execSQL("INSERT INTO notification_rules (id, ruleName, targetPackageName, isEnabled, modificationType, "
+                + "searchText, replacementText, modifyTitle, modifyContent, modifySender, createdAt, updatedAt) "
+                + "VALUES (1, 'Greeting', 'com.example.chat', 1, 'REPLACE_TEXT', 'Hi', 'Hello', 1, 1, 0, 1, 1)");
+        insertLog(db, 1, "com.example.chat", "Hi", "Hello", true, 1000);
+        insertLog(db, 2, "com.example.chat", "Hello", "Hello", false, 2000);
+        insertLog(db, 3, "com.example.mail", "Hi", "Hello", true, 3000);
+    }
+
+    private static void insertLog(SupportSQLiteDatabase db, long id, String packageName, String content,
+                                  String modifiedContent, boolean modified, long timestamp) {
+        db.execSQL("INSERT INTO notification_logs (id, packageName, appName, originalTitle, originalContent, "
+                        + "originalSender, modifiedTitle, modifiedContent, modifiedSender, wasModified, ruleId, timestamp) "
+                        + "VALUES (?, ?, ?, 'Title', ?, NULL, 'Title', ?, NULL, ?, ?, ?)",
+                new Object[]{id, packageName, "App " + packageName, content, modifiedContent,
+                        modified ? 1 : 0, modified ? 1 : 0, timestamp});
+    }
+
+    /**
+     * What each version adds to the existing data
+     */
+    private static void checkData(SupportSQLiteDatabase db, int version) {
+        assertEquals(1, count(db, "SELECT COUNT(*) FROM notification_rules"));
+        if (version == 2) {
+            assertEquals(1, count(db, "SELECT COUNT(*) FROM notification_rules WHERE matchMode = 'LITERAL'"));
+        }
+        if (version == 4) {
+            assertEquals(2, count(db, "SELECT interceptedCount FROM package_stats WHERE packageName = 'com.example.chat'"));
+            assertEquals(1, count(db, "SELECT modifiedCount FROM package_stats WHERE packageName = 'com.example.chat'"));
+            assertEquals(2, count(db, "SELECT hitCount FROM rule_stats WHERE ruleId = 1"));
+        }
+        if (version == 5) {
+            assertEquals(2, count(db, "SELECT COUNT(*) FROM notification_logs WHERE appliedRuleIds = '1'"));
+        }
+        if (version >= 8) {
+            assertEquals(3, count(db, "SELECT COUNT(*) FROM notification_logs_fts WHERE notification_logs_fts MATCH 'hello'"));
+        }
+        if (version < 10) {
+            assertEquals(3, count(db, "SELECT COUNT(*) FROM notification_logs"));
+            return;
+        }
+        assertEquals(2, count(db, "SELECT COUNT(*) FROM log_apps"));
+        // Unchanged modified fields are dropped from the table and filled back in by the view
+        assertEquals(0, count(db, "SELECT COUNT(*) FROM notification_logs WHERE modifiedTitle IS NOT NULL"));
+        assertEquals(3, count(db, "SELECT COUNT(*) FROM " + NotificationLog.VIEW_NAME
+                + " WHERE modifiedTitle = 'Title' AND modifiedContent = 'Hello' AND packageName IS NOT NULL"));
+        if (version >= 11) {
+            assertEquals(0, count(db, "SELECT COUNT(*) FROM log_archive_blocks"));
+        }
+    }
+
+    private static long count(SupportSQLiteDatabase db, String query) {
+        try (Cursor cursor = db.query(query)) {
+            assertTrue(query, cursor.moveToFirst());
+            return cursor.getLong(0);
+        }
+    }
+}
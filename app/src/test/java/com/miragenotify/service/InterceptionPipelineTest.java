@@ -0,0 +1,149 @@
+package com.miragenotify.service;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+public class InterceptionPipelineTest {
+
+    private static final String PACKAGE = "com.example.chat";
+
+    private InterceptionPipeline pipeline;
+
+    @Before
+    public void setUp() {
+        pipeline = new InterceptionPipeline(1);
+    }
+
+    @After
+    public void tearDown() {
+        pipeline.shutdown(1000);
+    }
+
+    @Test
+    public void noWindowRunsWithoutDelay() throws Exception {
+        // Start the lane thread first, so only the pipeline's own latency is measured
+        CountDownLatch started = new CountDownLatch(1);
+        pipeline.submitIntercept(PACKAGE, started::countDown);
+        assertTrue(started.await(1, TimeUnit.SECONDS));
+
+        CountDownLatch done = new CountDownLatch(1);
+        long submittedAt = System.nanoTime();
+        long[] startedAt = new long[1];
+        pipeline.submitCoalesced(PACKAGE, "key", 0, null, (item, submitted, mergedCount) -> {
+            startedAt[0] = System.nanoTime();
+            done.countDown();
+        });
+        assertTrue(done.await(1, TimeUnit.SECONDS));
+        assertTrue(TimeUnit.NANOSECONDS.toMillis(startedAt[0] - submittedAt) < 15);
+    }
+
+    @Test
+    public void updatesQueuedBehindOtherWorkAreMerged() throws Exception {
+        CountDownLatch release = blockLane();
+        List<Integer> runs = Collections.synchronizedList(new ArrayList<>());
+        for (int i = 0; i < 3; i++) {
+            pipeline.submitCoalesced(PACKAGE, "key", 0, i,
+                    (version, submitted, mergedCount) -> runs.add(version * 10 + mergedCount));
+        }
+        release.countDown();
+        assertTrue(pipeline.shutdown(1000));
+
+        // Only the newest version runs, told about the two it replaced
+        assertEquals(Collections.singletonList(22), runs);
+        assertEquals(2, pipeline.getCoalescedCount());
+    }
+
+    @Test
+    public void differentKeysAreNotMerged() throws Exception {
+        CountDownLatch release = blockLane();
+        List<String> runs = Collections.synchronizedList(new ArrayList<>());
+        pipeline.submitCoalesced(PACKAGE, "a", 0, "a", (item, submitted, mergedCount) -> runs.add(item));
+        pipeline.submitCoalesced(PACKAGE, "b", 0, "b", (item, submitted, mergedCount) -> runs.add(item));
+        release.countDown();
+        assertTrue(pipeline.shutdown(1000));
+
+        assertEquals(List.of("a", "b"), runs);
+        assertEquals(0, pipeline.getCoalescedCount());
+    }
+
+    @Test
+    public void shorterWindowDoesNotOvertakeEarlierUpdates() throws Exception {
+        List<String> runs = Collections.synchronizedList(new ArrayList<>());
+        // The window was shortened between two notifications of the same package
+        pipeline.submitCoalesced(PACKAGE, "a", 50, "a", (item, submitted, mergedCount) -> runs.add(item));
+        pipeline.submitCoalesced(PACKAGE, "b", 0, "b", (item, submitted, mergedCount) -> runs.add(item));
+        pipeline.submitIntercept(PACKAGE, () -> runs.add("c"));
+        assertTrue(pipeline.shutdown(1000));
+
+        assertEquals(List.of("a", "b", "c"), runs);
+    }
+
+    @Test
+    public void shutdownRunsPendingWindowsAndBackgroundWork() throws Exception {
+        List<String> runs = Collections.synchronizedList(new ArrayList<>());
+        pipeline.submitCoalesced(PACKAGE, "key", 100, "logged", (item, submitted, mergedCount) ->
+                pipeline.submitBackground(() -> runs.add(item)));
+        assertTrue(pipeline.shutdown(1000));
+
+        // Work handed to the background stage by the last intercept task is not lost
+        assertEquals(Collections.singletonList("logged"), runs);
+    }
+
+    @Test
+    public void aFailingTaskDoesNotStopTheLane() throws Exception {
+        List<String> runs = Collections.synchronizedList(new ArrayList<>());
+        pipeline.submitIntercept(PACKAGE, () -> {
+            throw new IllegalStateException("task failed");
+        });
+        pipeline.submitIntercept(PACKAGE, () -> runs.add("next"));
+        assertTrue(pipeline.shutdown(1000));
+
+        assertEquals(Collections.singletonList("next"), runs);
+    }
+
+    @Test
+    public void aBacklogLargerThanTheQueueKeepsItsOrder() throws Exception {
+        CountDownLatch release = blockLane();
+        List<Integer> runs = Collections.synchronizedList(new ArrayList<>());
+        List<Integer> expected = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            // Every third update replaces the previous one of its key
+            String key = "key" + (i % 3 == 2 ? i - 1 : i);
+            pipeline.submitCoalesced(PACKAGE, key, 0, i, (item, submitted, mergedCount) -> runs.add(item));
+            if (i % 3 != 1) expected.add(i);
+        }
+        assertEquals(expected.size(), pipeline.getQueueDepth(InterceptionPipeline.Stage.INTERCEPT));
+        release.countDown();
+        assertTrue(pipeline.shutdown(1000));
+
+        assertEquals(expected, runs);
+    }
+
+    /**
+     * Occupy the only lane until the returned latch is released
+     */
+    private CountDownLatch blockLane() throws InterruptedException {
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        pipeline.submitIntercept(PACKAGE, () -> {
+            started.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        assertTrue(started.await(1, TimeUnit.SECONDS));
+        return release;
+    }
+}
@@ -0,0 +1,88 @@
+package com.miragenotify.service;
+
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bytes allocated by an intercept lane from submission to run, on both the submitting thread and
+ * the lane thread, measured with the JVM's per-thread allocation counter. The task itself does
+ * not allocate, so anything counted is the pipeline's own cost.
+ */
+public class LaneAllocationTest {
+
+    private static final String PACKAGE = "com.example.chat";
+    private static final int WARMUP = 200_000;
+    private static final int MEASURED = 100_000;
+    // Updates per burst; the lane drains each burst before the next, like a chat posting in spurts
+    private static final int BURST = 16;
+    // The counters are read with a little slack for the measurement itself
+    private static final long TOLERANCE_BYTES = 1024;
+
+    private com.sun.management.ThreadMXBean threads;
+    private InterceptionPipeline pipeline;
+    private Thread lane;
+    private final String[] keys = new String[BURST / 2];
+    private final AtomicLong done = new AtomicLong();
+    private final InterceptionPipeline.CoalescedTask<String> task =
+            (item, submittedAt, mergedCount) -> done.incrementAndGet();
+
+    @Before
+    public void setUp() throws Exception {
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        assumeTrue(bean instanceof com.sun.management.ThreadMXBean);
+        threads = (com.sun.management.ThreadMXBean) bean;
+        assumeTrue(threads.isThreadAllocatedMemorySupported());
+        threads.setThreadAllocatedMemoryEnabled(true);
+
+        for (int i = 0; i < keys.length; i++) keys[i] = "0|" + PACKAGE + "|" + i + "|null|10123";
+        pipeline = new InterceptionPipeline(1);
+        // The lane thread starts with the pipeline
+        for (Thread thread : Thread.getAllStackTraces().keySet()) {
+            if (thread.getName().equals("MirageIntercept-0")) lane = thread;
+        }
+        assertTrue(lane != null);
+    }
+
+    @After
+    public void tearDown() {
+        pipeline.shutdown(1000);
+    }
+
+    @Test
+    public void submittingAndRunningAllocateNothing() {
+        run(WARMUP);
+        long before = allocated();
+        run(MEASURED);
+        long allocated = allocated() - before;
+        assertTrue(allocated + " bytes allocated by " + MEASURED + " updates", allocated <= TOLERANCE_BYTES);
+    }
+
+    /**
+     * Submit updates in bursts, each key twice per burst so half of them are coalesced
+     */
+    private void run(int updates) {
+        for (int sent = 0; sent < updates; sent += BURST) {
+            long expected = done.get() + BURST / 2;
+            for (int i = 0; i < BURST; i++) {
+                String key = keys[i % keys.length];
+                pipeline.submitCoalesced(PACKAGE, key, 0, key, task);
+            }
+            // Half of each burst is coalesced only if the lane has not reached it yet
+            while (done.get() < expected || pipeline.getQueueDepth(InterceptionPipeline.Stage.INTERCEPT) > 0) {
+                Thread.onSpinWait();
+            }
+        }
+    }
+
+    private long allocated() {
+        return threads.getThreadAllocatedBytes(Thread.currentThread().getId())
+                + threads.getThreadAllocatedBytes(lane.getId());
+    }
+}
@@ -0,0 +1,279 @@
+package com.miragenotify.service;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import android.app.Application;
+import android.content.Context;
+
+import androidx.room.Room;
+import androidx.test.core.app.ApplicationProvider;
+
+import com.miragenotify.database.AppDatabase;
+import com.miragenotify.database.NotificationRuleDao;
+import com.miragenotify.engine.CompiledRuleSet;
+import com.miragenotify.engine.MatchMode;
+import com.miragenotify.engine.RewriteRule;
+import com.miragenotify.model.NotificationRule;
+import com.miragenotify.utils.PreferenceManager;
+import com.miragenotify.viewmodel.RuleViewModel;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Drives random inserts, edits, deletes and enable toggles through the rule editor's view model and
+ * checks after every step that the index, refreshed only through Room's invalidation tracker,
+ * matches the table.
+ */
+@RunWith(RobolectricTestRunner.class)
+public class RuleIndexTest {
+
+    private static final long SEED = 1001L;
+    private static final int STEPS = 150;
+    private static final long REFRESH_TIMEOUT_MS = 5000;
+    private static final String[] PACKAGES = {"com.example.chat", "com.example.mail", "com.example.bank"};
+    private static final String UNTARGETED_PACKAGE = "com.example.untargeted";
+
+    private AppDatabase database;
+    private NotificationRuleDao dao;
+    private RuleViewModel viewModel;
+    private RuleIndex index;
+    // What the table holds, kept independently of Room
+    private final Map<Long, NotificationRule> rules = new LinkedHashMap<>();
+    // The view model writes asynchronously, so rules get their ids up front
+    private long nextId = 1;
+
+    @Before
+    public void setUp() {
+        Context context = ApplicationProvider.getApplicationContext();
+        database = Room.inMemoryDatabaseBuilder(context, AppDatabase.class).build();
+        dao = database.notificationRuleDao();
+        viewModel = new RuleViewModel((Application) context, database);
+        PreferenceManager preferenceManager = new PreferenceManager(context);
+        preferenceManager.setAdaptiveRuleOrder(false);
+        index = new RuleIndex(database, preferenceManager, InterceptionMetrics.getInstance());
+        index.start();
+    }
+
+    @After
+    public void tearDown() {
+        index.stop();
+        database.close();
+    }
+
+    @Test
+    public void indexFollowsEveryRuleChange() {
+        Random random = new Random(SEED);
+        awaitConsistent("empty table");
+        for (int step = 0; step < STEPS; step++) {
+            String operation;
+            int choice = rules.isEmpty() ? 0 : random.nextInt(4);
+            if (choice == 0) {
+                NotificationRule rule = newRule(random);
+                insert(rule);
+                operation = "insert " + rule.getId();
+            } else {
+                NotificationRule rule = pick(random);
+                if (choice == 1) {
+                    rule.setSearchText("word" + random.nextInt(20));
+                    rule.setPriority(random.nextInt(3));
+                    if (random.nextInt(4) == 0) rule.setTargetPackageName(PACKAGES[random.nextInt(PACKAGES.length)]);
+                    viewModel.update(copyOf(rule));
+                    operation = "update " + rule.getId();
+                } else if (choice == 2) {
+                    rule.setEnabled(!rule.isEnabled());
+                    viewModel.update(copyOf(rule));
+                    operation = (rule.isEnabled() ? "enable " : "disable ") + rule.getId();
+                } else {
+                    viewModel.delete(copyOf(rule));
+                    rules.remove(rule.getId());
+                    operation = "delete " + rule.getId();
+                }
+            }
+            awaitConsistent("step " + step + ": " + operation);
+        }
+    }
+
+    @Test
+    public void disablingTheLastRuleOfAPackageRemovesItFromThePrefilter() {
+        NotificationRule rule = newRule(new Random(SEED));
+        rule.setTargetPackageName(PACKAGES[0]);
+        insert(rule);
+        awaitConsistent("insert");
+
+        rule.setEnabled(false);
+        viewModel.update(copyOf(rule));
+        awaitConsistent("disable");
+        assertFalse(index.isTargeted(PACKAGES[0]));
+        assertEquals(0, index.getRuleSet(PACKAGES[0]).size());
+    }
+
+    @Test
+    public void everyPackageIsTargetedUntilTheFirstLoad() {
+        Context context = ApplicationProvider.getApplicationContext();
+        RuleIndex loading = new RuleIndex(database, new PreferenceManager(context), InterceptionMetrics.getInstance());
+        // Nothing may slip past the prefilter while rules are still loading
+        assertTrue(loading.isTargeted(UNTARGETED_PACKAGE));
+
+        loading.start();
+        try {
+            loading.getRuleSet(UNTARGETED_PACKAGE);
+            assertFalse(loading.isTargeted(UNTARGETED_PACKAGE));
+        } finally {
+            loading.stop();
+        }
+    }
+
+    @Test
+    public void onlyPackagesWithEnabledRulesAreTargeted() {
+        NotificationRule enabled = newRule(new Random(SEED));
+        enabled.setTargetPackageName(PACKAGES[0]);
+        insert(enabled);
+        NotificationRule disabled = newRule(new Random(SEED));
+        disabled.setTargetPackageName(PACKAGES[1]);
+        disabled.setEnabled(false);
+        insert(disabled);
+        awaitConsistent("insert");
+
+        assertTrue(index.isTargeted(PACKAGES[0]));
+        assertFalse(index.isTargeted(PACKAGES[1]));
+        assertFalse(index.isTargeted(PACKAGES[2]));
+        assertFalse(index.isTargeted(UNTARGETED_PACKAGE));
+    }
+
+    @Test
+    public void editsWithinOneMillisecondAreAllPickedUp() {
+        NotificationRule rule = newRule(new Random(SEED));
+        insert(rule);
+        awaitConsistent("insert");
+
+        // Faster than the clock ticks, so most of these share an updatedAt
+        for (int i = 0; i < 20; i++) {
+            rule.setSearchText("edit" + i);
+            rule.setPriority(i % 3);
+            viewModel.update(copyOf(rule));
+        }
+        awaitConsistent("burst of edits");
+    }
+
+    @Test
+    public void anEditThatKeepsUpdatedAtIsPickedUp() {
+        NotificationRule rule = newRule(new Random(SEED));
+        insert(rule);
+        awaitConsistent("insert");
+
+        // Writes outside the editor, such as a restore, leave updatedAt as it was
+        rule.setSearchText("restored");
+        rule.setMatchMode(MatchMode.WHOLE_WORD);
+        dao.update(copyOf(rule));
+        awaitConsistent("update without a new updatedAt");
+    }
+
+    private void insert(NotificationRule rule) {
+        rule.setId(nextId++);
+        rules.put(rule.getId(), rule);
+        viewModel.insert(copyOf(rule));
+    }
+
+    private NotificationRule newRule(Random random) {
+        NotificationRule rule = new NotificationRule();
+        rule.setRuleName("rule");
+        rule.setTargetPackageName(PACKAGES[random.nextInt(PACKAGES.length)]);
+        rule.setModificationType(NotificationRule.ModificationType.MASK_TEXT);
+        rule.setSearchText("word" + random.nextInt(20));
+        rule.setPriority(random.nextInt(3));
+        rule.setModifyContent(true);
+        return rule;
+    }
+
+    /**
+     * The view model writes on its own thread; hand it a snapshot so later steps cannot change
+     * a rule it has not written yet
+     */
+    private static NotificationRule copyOf(NotificationRule rule) {
+        NotificationRule copy = new NotificationRule();
+        copy.setId(rule.getId());
+        copy.setRuleName(rule.getRuleName());
+        copy.setTargetPackageName(rule.getTargetPackageName());
+        copy.setEnabled(rule.isEnabled());
+        copy.setPriority(rule.getPriority());
+        copy.setModificationType(rule.getModificationType());
+        copy.setSearchText(rule.getSearchText());
+        copy.setMatchMode(rule.getMatchMode());
+        copy.setReplacementText(rule.getReplacementText());
+        copy.setModifyTitle(rule.isModifyTitle());
+        copy.setModifyContent(rule.isModifyContent());
+        copy.setModifySender(rule.isModifySender());
+        copy.setCreatedAt(rule.getCreatedAt());
+        copy.setUpdatedAt(rule.getUpdatedAt());
+        return copy;
+    }
+
+    private NotificationRule pick(Random random) {
+        List<NotificationRule> all = new ArrayList<>(rules.values());
+        return all.get(random.nextInt(all.size()));
+    }
+
+    private void awaitConsistent(String after) {
+        long deadline = System.currentTimeMillis() + REFRESH_TIMEOUT_MS;
+        String mismatch;
+        while ((mismatch = findMismatch()) != null) {
+            if (System.currentTimeMillis() > deadline) fail("After " + after + ": " + mismatch);
+            try {
+                Thread.sleep(10);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                fail("Interrupted");
+            }
+        }
+    }
+
+    /**
+     * @return a description of the first difference between index and table, or null if none
+     */
+    private String findMismatch() {
+        List<String> packages = new ArrayList<>(Arrays.asList(PACKAGES));
+        packages.add(UNTARGETED_PACKAGE);
+        for (String packageName : packages) {
+            List<String> expected = new ArrayList<>();
+            List<NotificationRule> enabled = new ArrayList<>();
+            for (NotificationRule rule : rules.values()) {
+                if (rule.isEnabled() && packageName.equals(rule.getTargetPackageName())) enabled.add(rule);
+            }
+            // Evaluation order of getEnabledRules: highest priority first, then oldest first
+            enabled.sort(Comparator.comparingInt(NotificationRule::getPriority).reversed()
+                    .thenComparingLong(NotificationRule::getId));
+            for (NotificationRule rule : enabled) expected.add(describe(rule));
+
+            CompiledRuleSet ruleSet = index.getRuleSet(packageName);
+            List<String> actual = new ArrayList<>();
+            for (RewriteRule rule : ruleSet.getRules()) actual.add(describe(rule));
+
+            if (!expected.equals(actual)) {
+                return packageName + " expected " + expected + " but index has " + actual;
+            }
+            if (index.isTargeted(packageName) != !expected.isEmpty()) {
+                return packageName + " targeted=" + index.isTargeted(packageName) + " with rules " + expected;
+            }
+        }
+        return null;
+    }
+
+    private static String describe(RewriteRule rule) {
+        return rule.getId() + ":" + rule.getSearchText() + "/" + rule.getMatchMode();
+    }
+}
@@ -0,0 +1,173 @@
+package com.miragenotify.worker;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import android.content.Context;
+
+import androidx.room.Room;
+import androidx.test.core.app.ApplicationProvider;
+
+import com.miragenotify.database.AppDatabase;
+import com.miragenotify.database.NotificationLogDao;
+import com.miragenotify.model.LogApp;
+import com.miragenotify.model.NotificationLog;
+import com.miragenotify.model.NotificationLogRecord;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * Exports a Room database of 1k logs and one of 50k through the worker's cursor reading and
+ * checks that rows are read in bounded chunks into one reused object, and that the heap in use
+ * while exporting does not grow with the number of logs. The large size stands in for the
+ * hundreds of thousands a long-running install holds, which would make the test too slow.
+ */
+@RunWith(RobolectricTestRunner.class)
+public class LogExportScalingTest {
+
+    private static final long SEED = 25L;
+    private static final int SMALL = 1_000;
+    private static final int LARGE = 50_000;
+    private static final int CONTENT_LENGTH = 400;
+    // Heap is sampled after a GC every few chunks; sampling every chunk makes the test slow
+    private static final int SAMPLE_EVERY_CHUNKS = 10;
+    // Holding all 50k logs would take well over 50 MB; a chunk of 500 takes a few hundred KB
+    private static final long MAX_HEAP_GROWTH_BYTES = 8L * 1024 * 1024;
+
+    private AppDatabase database;
+    private long appId;
+
+    @Before
+    public void setUp() {
+        Context context = ApplicationProvider.getApplicationContext();
+        database = Room.inMemoryDatabaseBuilder(context, AppDatabase.class).build();
+        appId = database.notificationLogDao().insertApp(new LogApp("com.example.chat", "Chat"));
+    }
+
+    @After
+    public void tearDown() {
+        database.close();
+    }
+
+    @Test
+    public void memoryDoesNotGrowWithTheNumberOfLogs() throws Exception {
+        insertLogs(0, SMALL);
+        ExportRun small = export(SMALL);
+
+        insertLogs(SMALL, LARGE);
+        ExportRun large = export(LARGE);
+
+        for (ExportRun run : new ExportRun[]{small, large}) {
+            // Every row passes through the same object, whatever the size
+            assertEquals(1, run.rowObjects.size());
+            assertTrue(run.maxChunkRows + " rows in one chunk", run.maxChunkRows <= LogExportWorker.CHUNK_SIZE);
+            assertTrue(run.heapGrowth + " bytes of heap growth at " + run.logs + " logs",
+                    run.heapGrowth < MAX_HEAP_GROWTH_BYTES);
+        }
+        assertTrue(small.heapGrowth + " -> " + large.heapGrowth + " bytes for " + (LARGE / SMALL) + "x the logs",
+                large.heapGrowth - small.heapGrowth < MAX_HEAP_GROWTH_BYTES / 2);
+    }
+
+    private void insertLogs(int from, int to) {
+        NotificationLogDao logDao = database.notificationLogDao();
+        Random random = new Random(SEED + from);
+        List<NotificationLogRecord> batch = new ArrayList<>();
+        for (int i = from + 1; i <= to; i++) {
+            NotificationLogRecord record = new NotificationLogRecord();
+            record.setId(i);
+            record.setAppId(appId);
+            record.setOriginalTitle("Title " + i);
+            record.setOriginalContent(content(random));
+            record.setTimestamp(1_700_000_000_000L + i * 1000L);
+            batch.add(record);
+            if (batch.size() == 1000) {
+                logDao.insertAll(batch);
+                batch.clear();
+            }
+        }
+        if (!batch.isEmpty()) logDao.insertAll(batch);
+    }
+
+    private static String content(Random random) {
+        StringBuilder builder = new StringBuilder(CONTENT_LENGTH);
+        while (builder.length() < CONTENT_LENGTH) builder.append((char) ('a' + random.nextInt(26)));
+        return builder.toString();
+    }
+
+    private ExportRun export(int logs) throws IOException {
+        ExportRun run = new ExportRun(logs);
+        LogExporter.RecentLogs recent = LogExportWorker.recentLogs(database);
+        LogExporter.RecentLogs counting = (afterId, limit, consumer) -> {
+            int[] rows = {0};
+            int read = recent.readAfter(afterId, limit, log -> {
+                run.rowObjects.add(log);
+                rows[0]++;
+                consumer.accept(log);
+            });
+            run.maxChunkRows = Math.max(run.maxChunkRows, rows[0]);
+            return read;
+        };
+        int[] chunks = {0};
+        long baseline = usedHeap();
+        long[] peak = {baseline};
+        LogExporter exporter = new LogExporter(LogExportWorker.Format.JSONL, LogExportWorker.CHUNK_SIZE, counting,
+                (afterId, limit) -> Collections.emptyList(), () -> false, exported -> {
+                    if (chunks[0]++ % SAMPLE_EVERY_CHUNKS == 0) peak[0] = Math.max(peak[0], usedHeap());
+                });
+
+        assertEquals(logs, exporter.export(new DiscardingWriter()));
+        run.heapGrowth = peak[0] - baseline;
+        return run;
+    }
+
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        System.gc();
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    private static class ExportRun {
+        final int logs;
+        final Set<NotificationLog> rowObjects = Collections.newSetFromMap(new IdentityHashMap<>());
+        int maxChunkRows;
+        long heapGrowth;
+
+        ExportRun(int logs) {
+            this.logs = logs;
+        }
+    }
+
+    /**
+     * Drops the output, so only the export's own memory is measured
+     */
+    private static class DiscardingWriter extends Writer {
+        @Override
+        public void write(char[] buffer, int offset, int length) {
+        }
+
+        @Override
+        public void write(String text) {
+        }
+
+        @Override
+        public void flush() {
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
@@ -0,0 +1,253 @@
+package com.miragenotify.worker;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import com.miragenotify.model.NotificationLog;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeMap;
+
+public class LogExporterTest {
+
+    private static final int CHUNK_SIZE = 7;
+
+    @Test
+    public void recentAndArchivedLogsAreMergedInIdOrder() throws Exception {
+        Random random = new Random(25);
+        TreeMap<Long, NotificationLog> recent = new TreeMap<>();
+        TreeMap<Long, NotificationLog> archived = new TreeMap<>();
+        for (long id = 1; id <= 500; id++) {
+            (random.nextInt(3) == 0 ? recent : archived).put(id, log(id, "Message " + id));
+        }
+        FakeRecentLogs recentLogs = new FakeRecentLogs(recent);
+        FakeArchivedLogs archivedLogs = new FakeArchivedLogs(archived);
+        List<Long> progress = new ArrayList<>();
+
+        StringWriter out = new StringWriter();
+        long exported = new LogExporter(LogExportWorker.Format.JSONL, CHUNK_SIZE, recentLogs, archivedLogs,
+                () -> false, progress::add).export(out);
+
+        assertEquals(500, exported);
+        String[] lines = out.toString().split("\n");
+        assertEquals(500, lines.length);
+        for (int i = 0; i < lines.length; i++) {
+            assertTrue(lines[i], lines[i].startsWith("{\"id\":" + (i + 1) + ","));
+        }
+        // Keyset paging: every chunk starts after the last id of the one before
+        assertEquals(recentLogs.expectedAfterIds(), recentLogs.afterIds);
+        assertEquals(archivedLogs.expectedAfterIds(), archivedLogs.afterIds);
+        assertTrue(progress.size() >= recent.size() / CHUNK_SIZE);
+        for (int i = 1; i < progress.size(); i++) {
+            assertTrue(progress.get(i) >= progress.get(i - 1));
+        }
+    }
+
+    @Test
+    public void archivedLogsNewerThanEveryRecentLogAreWrittenLast() throws Exception {
+        TreeMap<Long, NotificationLog> recent = new TreeMap<>();
+        TreeMap<Long, NotificationLog> archived = new TreeMap<>();
+        for (long id = 1; id <= 20; id++) recent.put(id, log(id, "recent"));
+        for (long id = 21; id <= 50; id++) archived.put(id, log(id, "archived"));
+
+        StringWriter out = new StringWriter();
+        long exported = new LogExporter(LogExportWorker.Format.CSV, CHUNK_SIZE, new FakeRecentLogs(recent),
+                new FakeArchivedLogs(archived), () -> false, exportedSoFar -> { }).export(out);
+
+        assertEquals(50, exported);
+        List<List<String>> records = parseCsv(out.toString());
+        assertEquals(Arrays.asList(LogExporter.COLUMNS), records.get(0));
+        for (int i = 1; i < records.size(); i++) {
+            assertEquals(Long.toString(i), records.get(i).get(0));
+            assertEquals(i <= 20 ? "recent" : "archived", records.get(i).get(5));
+        }
+    }
+
+    @Test
+    public void stopsBetweenChunks() throws Exception {
+        TreeMap<Long, NotificationLog> recent = new TreeMap<>();
+        for (long id = 1; id <= 100; id++) recent.put(id, log(id, "x"));
+        FakeRecentLogs recentLogs = new FakeRecentLogs(recent);
+
+        long exported = new LogExporter(LogExportWorker.Format.JSONL, CHUNK_SIZE, recentLogs,
+                new FakeArchivedLogs(new TreeMap<>()), () -> recentLogs.afterIds.size() >= 2,
+                exportedSoFar -> { }).export(new StringWriter());
+
+        assertEquals(2 * CHUNK_SIZE, exported);
+    }
+
+    @Test
+    public void csvQuotesOnlyFieldsThatNeedIt() throws Exception {
+        NotificationLog log = log(7, "plain");
+        log.setPackageName("com.x");
+        log.setOriginalTitle("He said \"hi\", ok\r\nnext");
+        log.setOriginalSender(null);
+        log.setAppliedRuleIds("1,2");
+        log.setWasModified(true);
+
+        StringWriter out = new StringWriter();
+        LogExporter.writeCsvRow(out, log);
+
+        assertEquals("7,123,com.x,,\"He said \"\"hi\"\", ok\r\nnext\",plain,,,,,1,0,\"1,2\",0\r\n", out.toString());
+    }
+
+    @Test
+    public void csvRoundTripsThroughAnRfc4180Parser() throws Exception {
+        String[] values = {"", "a,b", "\"", "\"\"quoted\"\"", "line\nbreak", "cr\rlf\r\n", "bare\rcr", " spaces ", "\u00e9t\u00e9 \u2713"};
+        StringWriter out = new StringWriter();
+        LogExporter.writeCsvHeader(out);
+        for (int i = 0; i < values.length; i++) {
+            NotificationLog log = log(i + 1, values[i]);
+            log.setOriginalTitle(values[(i + 1) % values.length]);
+            LogExporter.writeCsvRow(out, log);
+        }
+
+        List<List<String>> records = parseCsv(out.toString());
+        assertEquals(values.length + 1, records.size());
+        for (int i = 0; i < values.length; i++) {
+            List<String> record = records.get(i + 1);
+            assertEquals(LogExporter.COLUMNS.length, record.size());
+            assertEquals(values[(i + 1) % values.length], record.get(4));
+            assertEquals(values[i], record.get(5));
+        }
+    }
+
+    @Test
+    public void jsonEscapesQuotesBackslashesAndControlCharacters() throws Exception {
+        NotificationLog log = log(7, "tab\there \\ \"q\"\n\u0001\u00e9");
+        log.setPackageName("com.x");
+        log.setOriginalTitle(null);
+
+        StringWriter out = new StringWriter();
+        LogExporter.writeJsonRow(out, log);
+
+        assertEquals("{\"id\":7,\"timestamp\":123,\"packageName\":\"com.x\",\"appName\":null,"
+                + "\"originalTitle\":null,\"originalContent\":\"tab\\there \\\\ \\\"q\\\"\\n\\u0001\u00e9\","
+                + "\"originalSender\":null,\"modifiedTitle\":null,\"modifiedContent\":null,\"modifiedSender\":null,"
+                + "\"wasModified\":false,\"ruleId\":0,\"appliedRuleIds\":null,\"mergedCount\":0}\n", out.toString());
+    }
+
+    private static NotificationLog log(long id, String content) {
+        NotificationLog log = new NotificationLog();
+        log.setId(id);
+        log.setTimestamp(123);
+        log.setOriginalContent(content);
+        return log;
+    }
+
+    /**
+     * Minimal RFC 4180 reader: CRLF between records, quoted fields may hold anything
+     */
+    private static List<List<String>> parseCsv(String csv) {
+        List<List<String>> records = new ArrayList<>();
+        List<String> record = new ArrayList<>();
+        StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+        for (int i = 0; i < csv.length(); i++) {
+            char c = csv.charAt(i);
+            if (quoted) {
+                if (c != '"') {
+                    field.append(c);
+                } else if (i + 1 < csv.length() && csv.charAt(i + 1) == '"') {
+                    field.append('"');
+                    i++;
+                } else {
+                    quoted = false;
+                }
+            } else if (c == '"') {
+                assertEquals("quote inside an unquoted field", 0, field.length());
+                quoted = true;
+            } else if (c == ',') {
+                record.add(field.toString());
+                field.setLength(0);
+            } else if (c == '\r' && i + 1 < csv.length() && csv.charAt(i + 1) == '\n') {
+                record.add(field.toString());
+                field.setLength(0);
+                records.add(record);
+                record = new ArrayList<>();
+                i++;
+            } else {
+                assertTrue("bare line break", c != '\r' && c != '\n');
+                field.append(c);
+            }
+        }
+        assertEquals("unterminated record", 0, record.size() + field.length());
+        return records;
+    }
+
+    /**
+     * Serves a cursor's worth of logs through one reused row, as the worker does
+     */
+    private static class FakeRecentLogs implements LogExporter.RecentLogs {
+        private final TreeMap<Long, NotificationLog> logs;
+        private final NotificationLog row = new NotificationLog();
+        final List<Long> afterIds = new ArrayList<>();
+
+        FakeRecentLogs(TreeMap<Long, NotificationLog> logs) {
+            this.logs = logs;
+        }
+
+        @Override
+        public int readAfter(long afterId, int limit, LogExporter.LogConsumer consumer) throws IOException {
+            afterIds.add(afterId);
+            int read = 0;
+            for (NotificationLog log : logs.tailMap(afterId, false).values()) {
+                if (read == limit) break;
+                row.setId(log.getId());
+                row.setTimestamp(log.getTimestamp());
+                row.setOriginalContent(log.getOriginalContent());
+                consumer.accept(row);
+                read++;
+            }
+            return read;
+        }
+
+        List<Long> expectedAfterIds() {
+            return chunkStarts(logs);
+        }
+    }
+
+    private static class FakeArchivedLogs implements LogExporter.ArchivedLogs {
+        private final TreeMap<Long, NotificationLog> logs;
+        final List<Long> afterIds = new ArrayList<>();
+
+        FakeArchivedLogs(TreeMap<Long, NotificationLog> logs) {
+            this.logs = logs;
+        }
+
+        @Override
+        public List<NotificationLog> loadAfter(long afterId, int limit) {
+            afterIds.add(afterId);
+            List<NotificationLog> chunk = new ArrayList<>();
+            for (NotificationLog log : logs.tailMap(afterId, false).values()) {
+                if (chunk.size() == limit) break;
+                chunk.add(log);
+            }
+            return chunk;
+        }
+
+        List<Long> expectedAfterIds() {
+            return chunkStarts(logs);
+        }
+    }
+
+    /**
+     * The afterId of every chunk needed to read all the logs, the last one being short
+     */
+    private static List<Long> chunkStarts(TreeMap<Long, NotificationLog> logs) {
+        List<Long> starts = new ArrayList<>();
+        starts.add(0L);
+        int i = 0;
+        for (long id : logs.keySet()) {
+            if (++i % CHUNK_SIZE == 0) starts.add(id);
+        }
+        return starts;
+    }
+}
@@ -0,0 +1,61 @@
+package com.miragenotify.engine;
+
+/**
+ * Minimal {@link RewriteRule} for benchmarks
+ */
+final class BenchmarkRule implements RewriteRule {
+
+    private final long id;
+    private final String searchText;
+    private final MatchMode matchMode;
+    private final RewriteAction action;
+    private final String replacementText;
+
+    BenchmarkRule(long id, String searchText, MatchMode matchMode, RewriteAction action, String replacementText) {
+        this.id = id;
+        this.searchText = searchText;
+        this.matchMode = matchMode;
+        this.action = action;
+        this.replacementText = replacementText;
+    }
+
+    @Override
+    public long getId() {
+        return id;
+    }
+
+    @Override
+    public String getSearchText() {
+        return searchText;
+    }
+
+    @Override
+    public MatchMode getMatchMode() {
+        return matchMode;
+    }
+
+    @Override
+    public RewriteAction getRewriteAction() {
+        return action;
+    }
+
+    @Override
+    public String getReplacementText() {
+        return replacementText;
+    }
+
+    @Override
+    public boolean isModifyTitle() {
+        return true;
+    }
+
+    @Override
+    public boolean isModifyContent() {
+        return true;
+    }
+
+    @Override
+    public boolean isModifySender() {
+        return false;
+    }
+}
@@ -0,0 +1,248 @@
+package com.miragenotify.engine;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of matching and rewriting one notification against a package's rules.
+ * Every invocation processes the next notification of a fixed, seeded corpus, so with
+ * -prof gc the gc.alloc.rate.norm column is bytes allocated per notification.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class RuleEngineBenchmark {
+
+    private static final long SEED = 42;
+    private static final int CORPUS_SIZE = 512;
+    // Share of notifications that contain at least one rule's search text
+    private static final double HIT_RATIO = 0.3;
+    // Messages in a group chat MessagingStyle payload
+    private static final int CONVERSATION_MESSAGES = 20;
+
+    public enum Length {
+        CHAT,   // a few words, like a messenger line
+        EMAIL   // a few hundred words over many lines
+    }
+
+    public enum Script {
+        ASCII,
+        CJK_EMOJI
+    }
+
+    private static final String[] ASCII_WORDS = {
+            "hey", "are", "we", "still", "on", "for", "tomorrow", "the", "meeting", "moved", "to", "3pm",
+            "please", "review", "attached", "invoice", "thanks", "see", "you", "at", "office", "project",
+            "update", "call", "me", "later", "your", "order", "has", "shipped", "delivery", "lunch",
+            "weekend", "plans", "can", "send", "report", "today", "ok", "sure", "sounds", "good"
+    };
+    private static final String[] ASCII_KEYWORDS = {
+            "password", "salary", "bank", "doctor", "interview", "lawyer", "divorce", "loan",
+            "diagnosis", "secret", "pin", "rent", "debt", "crush", "resume"
+    };
+    private static final String[] ASCII_REGEXES = {
+            "\\b\\d{6}\\b", "[A-Z]{2}\\d{4}", "\\$\\d+(\\.\\d{2})?"
+    };
+    private static final String[] ASCII_NAMES = {
+            "Alice", "Bob", "Team Standup", "Mom", "Support", "Carol Smith", "Dev Channel"
+    };
+
+    private static final String[] CJK_WORDS = {
+            "你好", "明天", "会议", "改到", "下午", "三点", "请", "查看", "附件", "谢谢", "办公室", "项目",
+            "更新", "晚上", "吃饭", "快递", "已发货", "周末", "今日", "ありがとう", "よろしく", "会議",
+            "안녕하세요", "내일", "👍", "😂", "🎉", "🙏", "❤️", "👨‍👩‍👧", "，", "。", "！"
+    };
+    private static final String[] CJK_KEYWORDS = {
+            "密码", "工资", "银行", "医生", "面试", "律师", "离婚", "贷款", "診断", "秘密", "給料", "비밀번호"
+    };
+    private static final String[] CJK_REGEXES = {
+            "\\d{6}", "订单\\d+", "¥\\d+"
+    };
+    private static final String[] CJK_NAMES = {
+            "小明", "家人群 👨‍👩‍👧", "田中さん", "项目组", "김민수", "客服"
+    };
+
+    @Param({"1", "50", "500"})
+    public int ruleCount;
+
+    @Param({"CHAT", "EMAIL"})
+    public Length length;
+
+    @Param({"ASCII", "CJK_EMOJI"})
+    public Script script;
+
+    private CompiledRuleSet ruleSet;
+    private String[] titles;
+    private String[] contents;
+    private String[] senders;
+    private NotificationText[] conversations;
+    private NotificationText laneText;
+    private MatchResult laneMatches;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        Random random = new Random(SEED);
+        boolean ascii = script == Script.ASCII;
+        String[] words = ascii ? ASCII_WORDS : CJK_WORDS;
+        String[] names = ascii ? ASCII_NAMES : CJK_NAMES;
+
+        List<RewriteRule> rules = createRules(ascii);
+        ruleSet = new CompiledRuleSet(rules);
+
+        titles = new String[CORPUS_SIZE];
+        contents = new String[CORPUS_SIZE];
+        senders = new String[CORPUS_SIZE];
+        for (int i = 0; i < CORPUS_SIZE; i++) {
+            titles[i] = names[random.nextInt(names.length)];
+            senders[i] = random.nextInt(4) == 0 ? names[random.nextInt(names.length)] : "";
+            contents[i] = createText(random, words, rules, ascii, length);
+        }
+
+        conversations = new NotificationText[CORPUS_SIZE];
+        for (int i = 0; i < CORPUS_SIZE; i++) {
+            NotificationText conversation = new NotificationText(titles[i], contents[i], "", CONVERSATION_MESSAGES * 2);
+            for (int m = 0; m < CONVERSATION_MESSAGES; m++) {
+                conversation.add(MatchResult.FIELD_CONTENT, createText(random, words, rules, ascii, Length.CHAT));
+                conversation.add(MatchResult.FIELD_SENDER, names[random.nextInt(names.length)]);
+            }
+            conversations[i] = conversation;
+        }
+        laneText = new NotificationText(null, null, null);
+        laneMatches = new MatchResult();
+        next = 0;
+    }
+
+    /**
+     * Full interception path: scan all fields, pick the first matching rule and rewrite
+     */
+    @Benchmark
+    public RewriteOutcome apply() {
+        int i = nextIndex();
+        return ruleSet.apply(titles[i], contents[i], senders[i]);
+    }
+
+    /**
+     * What an intercept lane does: reused text and match state, and an outcome only for matches.
+     * Notifications no rule matches stay at zero gc.alloc.rate.norm, which MatchAllocationTest enforces;
+     * with HIT_RATIO at 0.3 the norm is roughly 30% of the cost of one rewritten notification.
+     */
+    @Benchmark
+    public RewriteOutcome intercept() {
+        int i = nextIndex();
+        laneText.reset(titles[i], contents[i], senders[i]);
+        MatchResult matches = ruleSet.matchLiterals(laneText, laneMatches);
+        return ruleSet.findFirstMatch(laneText, matches) >= 0 ? ruleSet.apply(laneText, matches) : null;
+    }
+
+    /**
+     * Compose mode: every matching rule rewritten in one pass per field
+     */
+    @Benchmark
+    public RewriteOutcome applyAll() {
+        int i = nextIndex();
+        MatchResult matches = ruleSet.match(titles[i], contents[i], senders[i]);
+        return ruleSet.applyAll(titles[i], contents[i], senders[i], matches);
+    }
+
+    /**
+     * Group chat: every message text and sender name of a MessagingStyle payload is a segment
+     */
+    @Benchmark
+    public RewriteOutcome applyConversation() {
+        NotificationText conversation = conversations[nextIndex()];
+        return ruleSet.apply(conversation, ruleSet.matchLiterals(conversation));
+    }
+
+    /**
+     * Scan only, without building rewritten text
+     */
+    @Benchmark
+    public MatchResult match() {
+        int i = nextIndex();
+        return ruleSet.match(titles[i], contents[i], senders[i]);
+    }
+
+    private int nextIndex() {
+        int i = next;
+        next = i + 1 == CORPUS_SIZE ? 0 : i + 1;
+        return i;
+    }
+
+    /**
+     * Rules with distinct search texts and a realistic mix of match modes and actions
+     */
+    private List<RewriteRule> createRules(boolean ascii) {
+        String[] keywords = ascii ? ASCII_KEYWORDS : CJK_KEYWORDS;
+        String[] regexes = ascii ? ASCII_REGEXES : CJK_REGEXES;
+        List<RewriteRule> rules = new ArrayList<>(ruleCount);
+        for (int i = 0; i < ruleCount; i++) {
+            String keyword = keywords[i % keywords.length];
+            if (i >= keywords.length) keyword = keyword + (i / keywords.length);
+
+            MatchMode mode = MatchMode.LITERAL;
+            String searchText = keyword;
+            if (i % 25 == 7) {
+                mode = MatchMode.REGEX;
+                searchText = regexes[(i / 25) % regexes.length];
+            } else if (i % 10 == 3) {
+                mode = MatchMode.CASE_INSENSITIVE;
+            } else if (i % 10 == 8) {
+                mode = MatchMode.WHOLE_WORD;
+            }
+            RewriteAction action = i % 2 == 0 ? RewriteAction.MASK : RewriteAction.REPLACE;
+            rules.add(new BenchmarkRule(i + 1, searchText, mode, action, ascii ? "[hidden]" : "【已隐藏】"));
+        }
+        return rules;
+    }
+
+    private static String createText(Random random, String[] words, List<RewriteRule> rules, boolean ascii,
+                                     Length length) {
+        int wordCount = length == Length.CHAT ? 3 + random.nextInt(10) : 120 + random.nextInt(280);
+        boolean hit = random.nextDouble() < HIT_RATIO;
+        int hitPosition = hit ? random.nextInt(wordCount) : -1;
+
+        StringBuilder text = new StringBuilder();
+        for (int w = 0; w < wordCount; w++) {
+            if (w > 0) {
+                if (length == Length.EMAIL && w % 12 == 0) {
+                    text.append('\n');
+                } else if (ascii) {
+                    text.append(' ');
+                }
+            }
+            if (w == hitPosition) {
+                text.append(hitText(random, rules, ascii));
+            } else if (random.nextInt(40) == 0) {
+                // Numbers and codes that only the regex rules look for
+                text.append(100000 + random.nextInt(900000));
+            } else {
+                text.append(words[random.nextInt(words.length)]);
+            }
+        }
+        return text.toString();
+    }
+
+    private static String hitText(Random random, List<RewriteRule> rules, boolean ascii) {
+        RewriteRule rule = rules.get(random.nextInt(rules.size()));
+        if (rule.getMatchMode() == MatchMode.REGEX) {
+            return ascii ? "AB" + (1000 + random.nextInt(9000)) : "订单" + random.nextInt(100000);
+        }
+        if (rule.getMatchMode() == MatchMode.CASE_INSENSITIVE && ascii) {
+            return rule.getSearchText().toUpperCase();
+        }
+        return rule.getSearchText();
+    }
+}
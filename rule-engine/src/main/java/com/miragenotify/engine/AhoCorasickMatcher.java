@@ -0,0 +1,189 @@
+package com.miragenotify.engine;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Multi-pattern matcher (Aho-Corasick automaton) over UTF-16 chars.
+ * Finds every occurrence of every pattern in a single pass over the text, using the same
+ * char-by-char semantics as {@link String#contains(CharSequence)}.
+ * Instances are immutable and safe to share between threads.
+ */
+public final class AhoCorasickMatcher {
+
+    /**
+     * Receives matches in order of their end offset
+     */
+    public interface MatchSink {
+        void onMatch(int pattern, int start, int end);
+    }
+
+    private final int patternCount;
+    private final int[] patternLengths;
+
+    // Transitions of state s are edgeChars/edgeTargets[edgeStart[s] .. edgeStart[s + 1]), sorted by char
+    private final int[] edgeStart;
+    private final char[] edgeChars;
+    private final int[] edgeTargets;
+
+    private final int[] fail;
+    // Nearest state on the fail chain (excluding s itself) that ends a pattern, 0 if none
+    private final int[] outputLink;
+    // Patterns ending exactly at state s are outPatterns[outStart[s] .. outStart[s + 1])
+    private final int[] outStart;
+    private final int[] outPatterns;
+
+    private AhoCorasickMatcher(int patternCount, int[] patternLengths, int[] edgeStart, char[] edgeChars,
+                               int[] edgeTargets, int[] fail, int[] outputLink, int[] outStart, int[] outPatterns) {
+        this.patternCount = patternCount;
+        this.patternLengths = patternLengths;
+        this.edgeStart = edgeStart;
+        this.edgeChars = edgeChars;
+        this.edgeTargets = edgeTargets;
+        this.fail = fail;
+        this.outputLink = outputLink;
+        this.outStart = outStart;
+        this.outPatterns = outPatterns;
+    }
+
+    /**
+     * Compile an automaton. Pattern indexes in reported matches are positions in this list.
+     * Null or empty patterns are accepted but never reported.
+     */
+    public static AhoCorasickMatcher build(List<String> patterns) {
+        List<TreeMap<Character, Integer>> trie = new ArrayList<>();
+        List<List<Integer>> outputs = new ArrayList<>();
+        trie.add(new TreeMap<>());
+        outputs.add(new ArrayList<>());
+
+        int[] lengths = new int[patterns.size()];
+        for (int p = 0; p < patterns.size(); p++) {
+            String pattern = patterns.get(p);
+            if (pattern == null || pattern.isEmpty()) continue;
+            lengths[p] = pattern.length();
+            int state = 0;
+            for (int i = 0; i < pattern.length(); i++) {
+                Integer next = trie.get(state).get(pattern.charAt(i));
+                if (next == null) {
+                    next = trie.size();
+                    trie.add(new TreeMap<>());
+                    outputs.add(new ArrayList<>());
+                    trie.get(state).put(pattern.charAt(i), next);
+                }
+                state = next;
+            }
+            outputs.get(state).add(p);
+        }
+
+        int stateCount = trie.size();
+        int edgeCount = 0;
+        for (TreeMap<Character, Integer> edges : trie) edgeCount += edges.size();
+
+        int[] edgeStart = new int[stateCount + 1];
+        char[] edgeChars = new char[edgeCount];
+        int[] edgeTargets = new int[edgeCount];
+        int e = 0;
+        for (int s = 0; s < stateCount; s++) {
+            edgeStart[s] = e;
+            for (Map.Entry<Character, Integer> edge : trie.get(s).entrySet()) {
+                edgeChars[e] = edge.getKey();
+                edgeTargets[e] = edge.getValue();
+                e++;
+            }
+        }
+        edgeStart[stateCount] = e;
+
+        // Breadth-first pass to compute failure and output links
+        int[] fail = new int[stateCount];
+        int[] outputLink = new int[stateCount];
+        ArrayDeque<Integer> queue = new ArrayDeque<>();
+        for (int i = edgeStart[0]; i < edgeStart[1]; i++) {
+            queue.add(edgeTargets[i]);
+        }
+        while (!queue.isEmpty()) {
+            int s = queue.poll();
+            for (int i = edgeStart[s]; i < edgeStart[s + 1]; i++) {
+                char c = edgeChars[i];
+                int child = edgeTargets[i];
+                int f = fail[s];
+                int target;
+                while ((target = step(edgeStart, edgeChars, edgeTargets, f, c)) < 0 && f != 0) {
+                    f = fail[f];
+                }
+                fail[child] = target < 0 ? 0 : target;
+                int failState = fail[child];
+                outputLink[child] = !outputs.get(failState).isEmpty() ? failState : outputLink[failState];
+                queue.add(child);
+            }
+        }
+
+        int[] outStart = new int[stateCount + 1];
+        int outCount = 0;
+        for (List<Integer> out : outputs) outCount += out.size();
+        int[] outPatterns = new int[outCount];
+        int o = 0;
+        for (int s = 0; s < stateCount; s++) {
+            outStart[s] = o;
+            for (int p : outputs.get(s)) outPatterns[o++] = p;
+        }
+        outStart[stateCount] = o;
+
+        return new AhoCorasickMatcher(patterns.size(), lengths, edgeStart, edgeChars, edgeTargets,
+                fail, outputLink, outStart, outPatterns);
+    }
+
+    public int getPatternCount() {
+        return patternCount;
+    }
+
+    public int getPatternLength(int pattern) {
+        return patternLengths[pattern];
+    }
+
+    /**
+     * Report every (possibly overlapping) occurrence of every pattern in the text
+     */
+    public void scan(CharSequence text, MatchSink sink) {
+        if (text == null || outPatterns.length == 0) return;
+        int state = 0;
+        int length = text.length();
+        for (int i = 0; i < length; i++) {
+            char c = text.charAt(i);
+            int next;
+            while ((next = step(edgeStart, edgeChars, edgeTargets, state, c)) < 0 && state != 0) {
+                state = fail[state];
+            }
+            state = next < 0 ? 0 : next;
+
+            int end = i + 1;
+            int s = outStart[state] != outStart[state + 1] ? state : outputLink[state];
+            while (s != 0) {
+                for (int k = outStart[s]; k < outStart[s + 1]; k++) {
+                    int p = outPatterns[k];
+                    sink.onMatch(p, end - patternLengths[p], end);
+                }
+                s = outputLink[s];
+            }
+        }
+    }
+
+    private static int step(int[] edgeStart, char[] edgeChars, int[] edgeTargets, int state, char c) {
+        int lo = edgeStart[state];
+        int hi = edgeStart[state + 1] - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            char m = edgeChars[mid];
+            if (m < c) {
+                lo = mid + 1;
+            } else if (m > c) {
+                hi = mid - 1;
+            } else {
+                return edgeTargets[mid];
+            }
+        }
+        return -1;
+    }
+}
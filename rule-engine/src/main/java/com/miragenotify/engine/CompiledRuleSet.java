@@ -0,0 +1,472 @@
+package com.miragenotify.engine;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * Enabled rules of one package compiled into a single automaton over their literal search texts,
+ * plus precompiled patterns for rules using another match mode.
+ * One scan per segment finds every literal match; the recorded spans drive the rewrite. Rules are
+ * evaluated in list order, which is their priority, and compiled patterns are only run once a
+ * rule using them is reached, so rules that usually match should come first.
+ * Short segments such as titles and sender names repeat constantly, so their literal spans are
+ * memoized, including the absence of any span, which is what most titles and sender names get.
+ * A set never changes once built, so the memo can never be stale: changing a rule builds a new set
+ * with an empty memo, swapped in as a whole.
+ */
+public final class CompiledRuleSet {
+
+    public static final CompiledRuleSet EMPTY = new CompiledRuleSet(Collections.emptyList());
+
+    private static final int NO_PATTERN = -1;     // rule matches everything
+    private static final int INVALID_PATTERN = -2; // rule can never match
+
+    // Longer segments are message bodies, which rarely repeat
+    private static final int MEMO_MAX_TEXT_LENGTH = 128;
+    private static final int MEMO_CAPACITY = 256;
+
+    private final List<RewriteRule> rules;
+    // Match slot per rule: automaton patterns first, then compiled patterns
+    private final int[] rulePatterns;
+    private final AhoCorasickMatcher matcher;
+    private final Pattern[] compiledPatterns;
+    private final int slotCount;
+    // Literal spans per segment text; shared with reordered views, since spans do not depend on order
+    private final ScanMemo memo;
+
+    public CompiledRuleSet(List<? extends RewriteRule> rules) {
+        this(rules, new RulePatternCache(), new MemoStats());
+    }
+
+    public CompiledRuleSet(List<? extends RewriteRule> rules, RulePatternCache patternCache) {
+        this(rules, patternCache, new MemoStats());
+    }
+
+    /**
+     * @param memoStats counters the scan memo reports to, usually shared by all sets of an index
+     */
+    public CompiledRuleSet(List<? extends RewriteRule> rules, RulePatternCache patternCache, MemoStats memoStats) {
+        this.rules = Collections.unmodifiableList(new ArrayList<>(rules));
+        this.rulePatterns = new int[rules.size()];
+
+        // Rules sharing a literal search text share one automaton pattern
+        Map<String, Integer> literalIds = new HashMap<>();
+        List<String> literals = new ArrayList<>();
+        List<Pattern> compiled = new ArrayList<>();
+        int[] compiledRules = new int[rules.size()];
+        for (int i = 0; i < rules.size(); i++) {
+            RewriteRule rule = rules.get(i);
+            String searchText = rule.getSearchText();
+            if (searchText == null || searchText.isEmpty()) {
+                rulePatterns[i] = NO_PATTERN;
+            } else if (RulePatternCache.usesPattern(rule.getMatchMode())) {
+                try {
+                    compiled.add(patternCache.get(rule));
+                    compiledRules[compiled.size() - 1] = i;
+                } catch (PatternSyntaxException e) {
+                    // Rejected by the editor; only rules saved before validation existed end up here
+                    rulePatterns[i] = INVALID_PATTERN;
+                }
+            } else {
+                Integer id = literalIds.get(searchText);
+                if (id == null) {
+                    id = literals.size();
+                    literalIds.put(searchText, id);
+                    literals.add(searchText);
+                }
+                rulePatterns[i] = id;
+            }
+        }
+        for (int k = 0; k < compiled.size(); k++) {
+            rulePatterns[compiledRules[k]] = literals.size() + k;
+        }
+        this.matcher = AhoCorasickMatcher.build(literals);
+        this.compiledPatterns = compiled.toArray(new Pattern[0]);
+        this.slotCount = literals.size() + compiledPatterns.length;
+        this.memo = new ScanMemo(memoStats);
+    }
+
+    private CompiledRuleSet(CompiledRuleSet source, int[] order) {
+        List<RewriteRule> reordered = new ArrayList<>(order.length);
+        this.rulePatterns = new int[order.length];
+        for (int k = 0; k < order.length; k++) {
+            reordered.add(source.rules.get(order[k]));
+            rulePatterns[k] = source.rulePatterns[order[k]];
+        }
+        this.rules = Collections.unmodifiableList(reordered);
+        this.matcher = source.matcher;
+        this.compiledPatterns = source.compiledPatterns;
+        this.slotCount = source.slotCount;
+        this.memo = source.memo;
+    }
+
+    /**
+     * Same rules evaluated in a different order, sharing this set's automaton and patterns
+     *
+     * @param order indices into this set's rules, one entry per rule
+     */
+    public CompiledRuleSet reorder(int[] order) {
+        if (order.length != rules.size()) {
+            throw new IllegalArgumentException("Order has " + order.length + " entries, expected " + rules.size());
+        }
+        return new CompiledRuleSet(this, order);
+    }
+
+    public List<RewriteRule> getRules() {
+        return rules;
+    }
+
+    public int size() {
+        return rules.size();
+    }
+
+    public boolean isEmpty() {
+        return rules.isEmpty();
+    }
+
+    public RewriteRule getRule(int index) {
+        return rules.get(index);
+    }
+
+    /**
+     * Scan all three fields once and collect every pattern occurrence
+     */
+    public MatchResult match(CharSequence title, CharSequence content, CharSequence sender) {
+        return match(new NotificationText(title, content, sender));
+    }
+
+    /**
+     * Scan every segment once and collect every pattern occurrence
+     */
+    public MatchResult match(NotificationText text) {
+        return match(text, new MatchResult());
+    }
+
+    /**
+     * Same as {@link #match(NotificationText)}, reusing a previous result
+     */
+    public MatchResult match(NotificationText text, MatchResult reuse) {
+        MatchResult result = matchLiterals(text, reuse);
+        for (int slot = matcher.getPatternCount(); slot < slotCount; slot++) {
+            scanPattern(result, slot, text);
+        }
+        return result;
+    }
+
+    /**
+     * Scan all three fields with the automaton only. Compiled patterns are run later, when
+     * {@link #apply(CharSequence, CharSequence, CharSequence, MatchResult)} reaches a rule that needs them.
+     */
+    public MatchResult matchLiterals(CharSequence title, CharSequence content, CharSequence sender) {
+        return matchLiterals(new NotificationText(title, content, sender));
+    }
+
+    /**
+     * Scan every segment with the automaton only, see {@link #matchLiterals(CharSequence, CharSequence, CharSequence)}
+     */
+    public MatchResult matchLiterals(NotificationText text) {
+        return matchLiterals(text, new MatchResult());
+    }
+
+    /**
+     * Same as {@link #matchLiterals(NotificationText)}, reusing a previous result
+     */
+    public MatchResult matchLiterals(NotificationText text, MatchResult reuse) {
+        MatchResult result = reuse;
+        result.reset(slotCount, text.size());
+        boolean memoize = matcher.getPatternCount() > 0;
+        for (int segment = 0; segment < text.size(); segment++) {
+            result.setCurrentSegment(segment);
+            CharSequence value = text.getText(segment);
+            // Only Strings are safe keys; Spanned text is mutable and would need a copy. Empty
+            // segments (a missing sender) cost nothing to scan and would only inflate the hit rate.
+            if (!memoize || !(value instanceof String) || value.length() == 0
+                    || value.length() > MEMO_MAX_TEXT_LENGTH) {
+                matcher.scan(value, result);
+                continue;
+            }
+            String key = (String) value;
+            int[] spans = memo.get(key);
+            if (spans != null) {
+                result.addSpans(spans);
+            } else {
+                matcher.scan(key, result);
+                memo.put(key, result.getSpanCount(segment) > 0 ? result.copySpans(segment) : ScanMemo.NO_SPANS);
+            }
+        }
+        return result;
+    }
+
+    private void scanPattern(MatchResult result, int slot, NotificationText text) {
+        Pattern pattern = compiledPatterns[slot - matcher.getPatternCount()];
+        for (int segment = 0; segment < text.size(); segment++) {
+            scanPatternSegment(result, slot, pattern, segment, text.getText(segment));
+        }
+        result.markPatternScanned(slot);
+    }
+
+    private static void scanPatternSegment(MatchResult result, int slot, Pattern pattern, int segment,
+                                           CharSequence text) {
+        if (text.length() == 0) return;
+        result.setCurrentSegment(segment);
+        Matcher m = result.matcher(slot, pattern, text);
+        while (m.find()) {
+            // Empty matches (e.g. "a*") have nothing to rewrite
+            if (m.end() > m.start()) {
+                result.onMatch(slot, m.start(), m.end());
+            }
+        }
+    }
+
+    /**
+     * Whether the rule's search text occurred in any segment (rules without search text always match).
+     * Only valid for a result from {@link #match}, or for rules already reached by apply.
+     */
+    public boolean isRuleMatched(int index, MatchResult result) {
+        int pattern = rulePatterns[index];
+        if (pattern == INVALID_PATTERN) return false;
+        return pattern == NO_PATTERN || result.isPatternMatched(pattern);
+    }
+
+    /**
+     * Run the rule's compiled pattern if it has not been run yet, then check for a match
+     */
+    private boolean scanAndCheck(int index, MatchResult result, NotificationText text) {
+        int pattern = rulePatterns[index];
+        if (pattern >= matcher.getPatternCount() && !result.isPatternScanned(pattern)) {
+            scanPattern(result, pattern, text);
+        }
+        return isRuleMatched(index, result);
+    }
+
+    /**
+     * Index of the first rule, in list order, that matches, or -1. Runs compiled patterns lazily
+     * like apply does, so a notification no rule matches can be passed through without an outcome.
+     */
+    public int findFirstMatch(NotificationText text, MatchResult matches) {
+        for (int i = 0; i < rules.size(); i++) {
+            if (scanAndCheck(i, matches, text)) return i;
+        }
+        return -1;
+    }
+
+    /**
+     * Apply the first matching rule, in list order, to the fields it targets
+     */
+    public RewriteOutcome apply(CharSequence title, CharSequence content, CharSequence sender) {
+        NotificationText text = new NotificationText(title, content, sender);
+        if (rules.isEmpty()) return RewriteOutcome.unmodified(text);
+        // One pass over each field finds every literal match
+        return apply(text, matchLiterals(text));
+    }
+
+    /**
+     * Same as {@link #apply(CharSequence, CharSequence, CharSequence)}, with the fields already scanned by
+     * {@link #match} or {@link #matchLiterals}
+     */
+    public RewriteOutcome apply(CharSequence title, CharSequence content, CharSequence sender, MatchResult matches) {
+        return apply(new NotificationText(title, content, sender), matches);
+    }
+
+    /**
+     * Apply the first matching rule to every segment whose field it targets. The rule is chosen
+     * once for the whole notification, so all messages of a conversation get the same treatment.
+     */
+    public RewriteOutcome apply(NotificationText text, MatchResult matches) {
+        int i = findFirstMatch(text, matches);
+        if (i < 0) return RewriteOutcome.unmodified(text);
+        RewriteRule rule = rules.get(i);
+        CharSequence[] segments = new CharSequence[text.size()];
+        for (int segment = 0; segment < segments.length; segment++) {
+            CharSequence value = text.getText(segment);
+            segments[segment] = targets(rule, text.getField(segment))
+                    ? rewrite(i, segment, value, matches) : value;
+        }
+        return new RewriteOutcome(segments, true, new long[]{rule.getId()});
+    }
+
+    /**
+     * Apply every matching rule at once (compose mode). Rules are applied in list order, which is
+     * their priority, and each field is written in one pass. Per segment, the higher-priority rule
+     * wins any conflict:
+     * <ul>
+     * <li>where two rules rewrite overlapping text, the earlier one's occurrence is kept;</li>
+     * <li>a whole-field replacement takes the segment unless an earlier rule has an occurrence in
+     * it, and then hides every later rule's occurrences there.</li>
+     * </ul>
+     * A rule that had something to change but lost every conflict is left out of the outcome's rule
+     * ids, so it is not credited in the logs or counters. Matched rules with nothing to change in the
+     * fields they target are credited, as in first-match mode.
+     */
+    public RewriteOutcome applyAll(CharSequence title, CharSequence content, CharSequence sender,
+                                   MatchResult matches) {
+        return applyAll(new NotificationText(title, content, sender), matches);
+    }
+
+    /**
+     * Compose mode over every segment, see {@link #applyAll(CharSequence, CharSequence, CharSequence, MatchResult)}
+     */
+    public RewriteOutcome applyAll(NotificationText text, MatchResult matches) {
+        int[] applied = new int[rules.size()];
+        int appliedCount = 0;
+        for (int i = 0; i < rules.size(); i++) {
+            if (scanAndCheck(i, matches, text)) applied[appliedCount++] = i;
+        }
+        if (appliedCount == 0) return RewriteOutcome.unmodified(text);
+
+        int[] candidates = new int[appliedCount];
+        byte[] effects = new byte[rules.size()];
+        CharSequence[] segments = new CharSequence[text.size()];
+        for (int segment = 0; segment < segments.length; segment++) {
+            segments[segment] = composeSegment(segment, text.getField(segment), text.getText(segment), matches,
+                    applied, appliedCount, candidates, effects);
+        }
+
+        int creditedCount = 0;
+        for (int k = 0; k < appliedCount; k++) {
+            if (isCredited(effects[applied[k]])) applied[creditedCount++] = applied[k];
+        }
+        long[] ruleIds = new long[creditedCount];
+        for (int k = 0; k < creditedCount; k++) ruleIds[k] = rules.get(applied[k]).getId();
+        return new RewriteOutcome(segments, true, ruleIds);
+    }
+
+    private static boolean isCredited(byte effect) {
+        return (effect & TextRewriter.RULE_WANTED) == 0 || (effect & TextRewriter.RULE_APPLIED) != 0;
+    }
+
+    private CharSequence composeSegment(int segment, int field, CharSequence text, MatchResult matches, int[] applied,
+                                        int appliedCount, int[] candidates, byte[] effects) {
+        int candidateCount = 0;
+        int replacedBy = -1;
+        for (int k = 0; k < appliedCount; k++) {
+            int i = applied[k];
+            RewriteRule rule = rules.get(i);
+            if (!targets(rule, field) || rule.getRewriteAction() == null) continue;
+            switch (rule.getRewriteAction()) {
+                case REPLACE_FIELD:
+                    if (rule.getReplacementText() == null) break;
+                    effects[i] |= TextRewriter.RULE_WANTED;
+                    if (replacedBy < 0 && !hasSpans(matches, segment, candidates, candidateCount)) replacedBy = i;
+                    break;
+                case REPLACE:
+                case MASK:
+                    if (rulePatterns[i] < 0) break;
+                    if (replacedBy < 0) {
+                        candidates[candidateCount++] = i;
+                    } else if (hasSpan(matches, segment, rulePatterns[i])) {
+                        // Hidden by the whole-field replacement
+                        effects[i] |= TextRewriter.RULE_WANTED;
+                    }
+                    break;
+                default:
+                    break;
+            }
+        }
+        if (replacedBy >= 0) {
+            effects[replacedBy] |= TextRewriter.RULE_APPLIED;
+            return rules.get(replacedBy).getReplacementText();
+        }
+        return TextRewriter.composeSpans(text, matches, segment, rules, rulePatterns, candidates, candidateCount,
+                effects);
+    }
+
+    private boolean hasSpans(MatchResult matches, int segment, int[] candidates, int candidateCount) {
+        for (int c = 0; c < candidateCount; c++) {
+            if (hasSpan(matches, segment, rulePatterns[candidates[c]])) return true;
+        }
+        return false;
+    }
+
+    private static boolean hasSpan(MatchResult matches, int segment, int pattern) {
+        for (int i = 0; i < matches.getSpanCount(segment); i++) {
+            if (matches.getSpanPattern(segment, i) == pattern) return true;
+        }
+        return false;
+    }
+
+    private static boolean targets(RewriteRule rule, int field) {
+        switch (field) {
+            case MatchResult.FIELD_TITLE: return rule.isModifyTitle();
+            case MatchResult.FIELD_CONTENT: return rule.isModifyContent();
+            case MatchResult.FIELD_SENDER: return rule.isModifySender();
+            default: return false;
+        }
+    }
+
+    /**
+     * Apply one rule to a segment, reusing the spans recorded by {@link #match}
+     */
+    public CharSequence rewrite(int index, int segment, CharSequence text, MatchResult result) {
+        if (text == null) return "";
+        RewriteRule rule = rules.get(index);
+        if (rule.getRewriteAction() == null) return text;
+        switch (rule.getRewriteAction()) {
+            case REPLACE:
+            case MASK:
+                int pattern = rulePatterns[index];
+                if (pattern < 0) return text;
+                return TextRewriter.rewriteSpans(text, result, segment, pattern, rule);
+            case REPLACE_FIELD:
+                return rule.getReplacementText() != null ? rule.getReplacementText() : text;
+            default:
+                return text;
+        }
+    }
+
+    /**
+     * Bounded memo of literal spans per segment text: two-way set associative over preallocated
+     * arrays, evicting the less recently used entry of a set. Storing an entry writes references
+     * into the arrays, so a segment without spans is memoized without allocating. Sets are used by
+     * one intercept lane at a time, so the lock is uncontended.
+     */
+    private static final class ScanMemo {
+        // Shared by every segment without a literal match
+        static final int[] NO_SPANS = new int[0];
+        private static final int WAYS = 2;
+
+        private final MemoStats stats;
+        private final String[] texts = new String[MEMO_CAPACITY];
+        private final int[][] spans = new int[MEMO_CAPACITY][];
+        // Per set, the way used most recently
+        private final byte[] recent = new byte[MEMO_CAPACITY / WAYS];
+
+        ScanMemo(MemoStats stats) {
+            this.stats = stats;
+        }
+
+        synchronized int[] get(String text) {
+            int set = setOf(text);
+            for (int way = 0; way < WAYS; way++) {
+                int slot = set * WAYS + way;
+                if (text.equals(texts[slot])) {
+                    recent[set] = (byte) way;
+                    stats.recordHit();
+                    return spans[slot];
+                }
+            }
+            stats.recordMiss();
+            return null;
+        }
+
+        synchronized void put(String text, int[] textSpans) {
+            int set = setOf(text);
+            int way = 1 - recent[set];
+            int slot = set * WAYS + way;
+            texts[slot] = text;
+            spans[slot] = textSpans;
+            recent[set] = (byte) way;
+        }
+
+        private static int setOf(String text) {
+            int h = text.hashCode();
+            return ((h ^ (h >>> 16)) & Integer.MAX_VALUE) % (MEMO_CAPACITY / WAYS);
+        }
+    }
+}
@@ -0,0 +1,11 @@
+package com.miragenotify.engine;
+
+/**
+ * How a rule's search text is matched against notification fields
+ */
+public enum MatchMode {
+    LITERAL,          // Case-sensitive substring
+    WHOLE_WORD,       // Substring bounded by non-word characters
+    REGEX,            // Java regular expression
+    CASE_INSENSITIVE  // Substring ignoring case
+}
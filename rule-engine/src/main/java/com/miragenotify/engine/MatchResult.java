@@ -0,0 +1,143 @@
+package com.miragenotify.engine;
+
+import java.util.Arrays;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Pattern occurrences found in the segments of one notification (see {@link NotificationText}).
+ * Spans are kept per segment in the order they were reported (by end offset) so the
+ * rewrite step can reuse them without scanning the text again. A result can be passed back to
+ * the rule set for the next notification, so a steady stream of notifications allocates nothing.
+ */
+public final class MatchResult implements AhoCorasickMatcher.MatchSink {
+
+    public static final int FIELD_TITLE = 0;
+    public static final int FIELD_CONTENT = 1;
+    public static final int FIELD_SENDER = 2;
+    public static final int FIELD_COUNT = 3;
+
+    private static final int INITIAL_SPANS = 8;
+
+    private int[][] spanPatterns = new int[0][];
+    private int[][] spanStarts = new int[0][];
+    private int[][] spanEnds = new int[0][];
+    private int[] spanCounts = new int[0];
+    private boolean[] matchedPatterns = new boolean[0];
+    private boolean[] scannedPatterns = new boolean[0];
+    private int currentSegment;
+    // Regex matchers by match slot, reset for every segment instead of created
+    private Matcher[] matchers = new Matcher[0];
+
+    void reset(int patternCount, int segmentCount) {
+        if (spanCounts.length < segmentCount) {
+            spanPatterns = Arrays.copyOf(spanPatterns, segmentCount);
+            spanStarts = Arrays.copyOf(spanStarts, segmentCount);
+            spanEnds = Arrays.copyOf(spanEnds, segmentCount);
+            spanCounts = new int[segmentCount];
+        } else {
+            Arrays.fill(spanCounts, 0, segmentCount, 0);
+        }
+        if (matchedPatterns.length < patternCount) {
+            matchedPatterns = new boolean[patternCount];
+            scannedPatterns = new boolean[patternCount];
+        } else {
+            Arrays.fill(matchedPatterns, 0, patternCount, false);
+            Arrays.fill(scannedPatterns, 0, patternCount, false);
+        }
+    }
+
+    Matcher matcher(int slot, Pattern pattern, CharSequence text) {
+        if (slot >= matchers.length) {
+            matchers = Arrays.copyOf(matchers, Math.max(slot + 1, matchers.length * 2));
+        }
+        Matcher m = matchers[slot];
+        if (m == null || m.pattern() != pattern) {
+            m = pattern.matcher(text);
+            matchers[slot] = m;
+        } else {
+            m.reset(text);
+        }
+        return m;
+    }
+
+    boolean isPatternScanned(int pattern) {
+        return scannedPatterns[pattern];
+    }
+
+    void markPatternScanned(int pattern) {
+        scannedPatterns[pattern] = true;
+    }
+
+    void setCurrentSegment(int segment) {
+        this.currentSegment = segment;
+    }
+
+    @Override
+    public void onMatch(int pattern, int start, int end) {
+        int segment = currentSegment;
+        int count = spanCounts[segment];
+        if (spanPatterns[segment] == null) {
+            // Most segments never match, so their span arrays are only created on the first hit
+            spanPatterns[segment] = new int[INITIAL_SPANS];
+            spanStarts[segment] = new int[INITIAL_SPANS];
+            spanEnds[segment] = new int[INITIAL_SPANS];
+        } else if (count == spanPatterns[segment].length) {
+            int capacity = count * 2;
+            spanPatterns[segment] = Arrays.copyOf(spanPatterns[segment], capacity);
+            spanStarts[segment] = Arrays.copyOf(spanStarts[segment], capacity);
+            spanEnds[segment] = Arrays.copyOf(spanEnds[segment], capacity);
+        }
+        spanPatterns[segment][count] = pattern;
+        spanStarts[segment][count] = start;
+        spanEnds[segment][count] = end;
+        spanCounts[segment] = count + 1;
+        matchedPatterns[pattern] = true;
+    }
+
+    /**
+     * Spans recorded so far for a segment as (pattern, start, end) triples
+     */
+    int[] copySpans(int segment) {
+        int count = spanCounts[segment];
+        int[] spans = new int[count * 3];
+        for (int i = 0; i < count; i++) {
+            spans[i * 3] = spanPatterns[segment][i];
+            spans[i * 3 + 1] = spanStarts[segment][i];
+            spans[i * 3 + 2] = spanEnds[segment][i];
+        }
+        return spans;
+    }
+
+    /**
+     * Record spans previously taken from {@link #copySpans} for the current segment
+     */
+    void addSpans(int[] spans) {
+        for (int i = 0; i < spans.length; i += 3) {
+            onMatch(spans[i], spans[i + 1], spans[i + 2]);
+        }
+    }
+
+    /**
+     * Whether the pattern occurred in any segment
+     */
+    public boolean isPatternMatched(int pattern) {
+        return pattern < matchedPatterns.length && matchedPatterns[pattern];
+    }
+
+    public int getSpanCount(int segment) {
+        return spanCounts[segment];
+    }
+
+    public int getSpanPattern(int segment, int index) {
+        return spanPatterns[segment][index];
+    }
+
+    public int getSpanStart(int segment, int index) {
+        return spanStarts[segment][index];
+    }
+
+    public int getSpanEnd(int segment, int index) {
+        return spanEnds[segment][index];
+    }
+}
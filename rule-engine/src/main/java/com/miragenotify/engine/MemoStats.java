@@ -0,0 +1,42 @@
+package com.miragenotify.engine;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Hit and miss counters of the scan memo, shared by every rule set that reports to it
+ */
+public final class MemoStats {
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    void recordHit() {
+        hits.incrementAndGet();
+    }
+
+    void recordMiss() {
+        misses.incrementAndGet();
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    /**
+     * Share of lookups answered from the memo, 0 to 1
+     */
+    public double getHitRate() {
+        long h = hits.get();
+        long total = h + misses.get();
+        return total == 0 ? 0 : (double) h / total;
+    }
+
+    public void reset() {
+        hits.set(0);
+        misses.set(0);
+    }
+}
@@ -0,0 +1,76 @@
+package com.miragenotify.engine;
+
+import java.util.Arrays;
+
+/**
+ * Text of one notification as an ordered list of segments, each tagged with the field its rules
+ * target. The first three segments are always the title, content and sender; expanded styles add
+ * more (one per message, inbox line or big text), so rules reach every place the text is shown.
+ */
+public final class NotificationText {
+
+    private CharSequence[] texts;
+    private int[] fields;
+    private int size;
+
+    public NotificationText(CharSequence title, CharSequence content, CharSequence sender) {
+        this(title, content, sender, 0);
+    }
+
+    /**
+     * @param extraSegments expected number of segments added after the first three
+     */
+    public NotificationText(CharSequence title, CharSequence content, CharSequence sender, int extraSegments) {
+        int capacity = MatchResult.FIELD_COUNT + Math.max(extraSegments, 0);
+        this.texts = new CharSequence[capacity];
+        this.fields = new int[capacity];
+        reset(title, content, sender);
+    }
+
+    /**
+     * Start over with another notification, keeping the allocated capacity
+     */
+    public void reset(CharSequence title, CharSequence content, CharSequence sender) {
+        // Do not keep the previous notification's text reachable
+        Arrays.fill(texts, 0, size, null);
+        size = 0;
+        add(MatchResult.FIELD_TITLE, title);
+        add(MatchResult.FIELD_CONTENT, content);
+        add(MatchResult.FIELD_SENDER, sender);
+    }
+
+    /**
+     * Append a segment. The text is matched as is, so Spanned text needs no copy.
+     *
+     * @param field one of the MatchResult FIELD_ constants, deciding which rules apply to it
+     * @return index of the segment, also its index in the rewrite outcome
+     */
+    public int add(int field, CharSequence text) {
+        if (field < 0 || field >= MatchResult.FIELD_COUNT) {
+            throw new IllegalArgumentException("Unknown field " + field);
+        }
+        if (size == texts.length) {
+            texts = Arrays.copyOf(texts, size * 2);
+            fields = Arrays.copyOf(fields, size * 2);
+        }
+        texts[size] = text != null ? text : "";
+        fields[size] = field;
+        return size++;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public CharSequence getText(int segment) {
+        return texts[segment];
+    }
+
+    public int getField(int segment) {
+        return fields[segment];
+    }
+
+    CharSequence[] copyTexts() {
+        return Arrays.copyOf(texts, size);
+    }
+}
@@ -0,0 +1,11 @@
+package com.miragenotify.engine;
+
+/**
+ * What a matching rule does to the fields it targets
+ */
+public enum RewriteAction {
+    REPLACE,        // Replace each occurrence with the replacement text
+    MASK,           // Replace each occurrence with mask characters
+    REPLACE_FIELD,  // Replace the whole field with the replacement text
+    NONE            // Match only, leave the text unchanged
+}
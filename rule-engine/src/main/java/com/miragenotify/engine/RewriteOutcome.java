@@ -0,0 +1,69 @@
+package com.miragenotify.engine;
+
+/**
+ * Segment values of one notification after its rules were applied. Segments a rule did not
+ * change are the same instances that were passed in, formatting included.
+ */
+public final class RewriteOutcome {
+
+    private final CharSequence[] segments;
+    private final boolean modified;
+    private final long[] ruleIds;
+
+    private static final long[] NO_RULES = new long[0];
+
+    RewriteOutcome(CharSequence[] segments, boolean modified, long[] ruleIds) {
+        this.segments = segments;
+        this.modified = modified;
+        this.ruleIds = ruleIds;
+    }
+
+    static RewriteOutcome unmodified(NotificationText text) {
+        return new RewriteOutcome(text.copyTexts(), false, NO_RULES);
+    }
+
+    public CharSequence getTitle() {
+        return segments[MatchResult.FIELD_TITLE];
+    }
+
+    public CharSequence getContent() {
+        return segments[MatchResult.FIELD_CONTENT];
+    }
+
+    public CharSequence getSender() {
+        return segments[MatchResult.FIELD_SENDER];
+    }
+
+    /**
+     * Rewritten text of a segment, by its index in the {@link NotificationText}
+     */
+    public CharSequence getSegment(int segment) {
+        return segments[segment];
+    }
+
+    public int getSegmentCount() {
+        return segments.length;
+    }
+
+    /**
+     * Whether any rule matched (the text may still be identical, e.g. for {@link RewriteAction#NONE})
+     */
+    public boolean isModified() {
+        return modified;
+    }
+
+    /**
+     * Id of the highest-priority rule that was applied, or 0 if none matched
+     */
+    public long getRuleId() {
+        return ruleIds.length > 0 ? ruleIds[0] : 0;
+    }
+
+    /**
+     * Ids of every applied rule in priority order; one entry unless rules were composed.
+     * The array is shared and must not be modified.
+     */
+    public long[] getRuleIds() {
+        return ruleIds;
+    }
+}
@@ -0,0 +1,24 @@
+package com.miragenotify.engine;
+
+/**
+ * The parts of a notification rule the engine needs to match and rewrite text.
+ * Implementations must not change while they are part of a {@link CompiledRuleSet}.
+ */
+public interface RewriteRule {
+
+    long getId();
+
+    String getSearchText();
+
+    MatchMode getMatchMode();
+
+    RewriteAction getRewriteAction();
+
+    String getReplacementText();
+
+    boolean isModifyTitle();
+
+    boolean isModifyContent();
+
+    boolean isModifySender();
+}
@@ -0,0 +1,94 @@
+package com.miragenotify.engine;
+
+import java.util.Collection;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * Compiled {@link Pattern}s for non-literal rules, keyed by rule id and recompiled whenever the
+ * rule's search text or match mode differs from what the pattern was compiled from.
+ * Patterns are compiled when the rule index is rebuilt, never while a notification is processed.
+ */
+public final class RulePatternCache {
+
+    // Characters that count as part of a word for WHOLE_WORD matching
+    private static final String WORD_CHAR = "[\\p{L}\\p{N}_]";
+
+    private final ConcurrentHashMap<Long, CachedPattern> patterns = new ConcurrentHashMap<>();
+
+    /**
+     * Whether rules in this mode are matched with a compiled pattern rather than the automaton
+     */
+    public static boolean usesPattern(MatchMode mode) {
+        return mode != null && mode != MatchMode.LITERAL;
+    }
+
+    /**
+     * Get the pattern for a rule, compiling it only if the rule is new or was edited
+     */
+    public Pattern get(RewriteRule rule) {
+        CachedPattern cached = patterns.get(rule.getId());
+        if (cached != null && cached.mode == rule.getMatchMode() && cached.searchText.equals(rule.getSearchText())) {
+            return cached.pattern;
+        }
+        Pattern pattern = compile(rule.getSearchText(), rule.getMatchMode());
+        patterns.put(rule.getId(), new CachedPattern(rule.getSearchText(), rule.getMatchMode(), pattern));
+        return pattern;
+    }
+
+    /**
+     * Drop patterns of rules that no longer exist or are disabled
+     */
+    public void retainAll(Collection<Long> ruleIds) {
+        patterns.keySet().retainAll(ruleIds);
+    }
+
+    /**
+     * Compile the search text for a match mode
+     *
+     * @throws PatternSyntaxException if the mode is REGEX and the expression is invalid
+     */
+    public static Pattern compile(String searchText, MatchMode mode) {
+        String quoted = Pattern.quote(searchText);
+        switch (mode) {
+            case WHOLE_WORD:
+                return Pattern.compile("(?<!" + WORD_CHAR + ")" + quoted + "(?!" + WORD_CHAR + ")");
+            case CASE_INSENSITIVE:
+                return Pattern.compile(quoted, Pattern.CASE_INSENSITIVE | Pattern.UNICODE_CASE);
+            case REGEX:
+                return Pattern.compile(searchText);
+            default:
+                return Pattern.compile(quoted);
+        }
+    }
+
+    /**
+     * Check a search text before it is saved
+     *
+     * @return null if the search text is usable, otherwise a description of the problem
+     */
+    public static String validate(String searchText, MatchMode mode) {
+        if (mode != MatchMode.REGEX || searchText == null || searchText.isEmpty()) {
+            return null;
+        }
+        try {
+            Pattern.compile(searchText);
+            return null;
+        } catch (PatternSyntaxException e) {
+            return e.getDescription();
+        }
+    }
+
+    private static class CachedPattern {
+        final String searchText;
+        final MatchMode mode;
+        final Pattern pattern;
+
+        CachedPattern(String searchText, MatchMode mode, Pattern pattern) {
+            this.searchText = searchText;
+            this.mode = mode;
+            this.pattern = pattern;
+        }
+    }
+}
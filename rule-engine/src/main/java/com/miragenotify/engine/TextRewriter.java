@@ -0,0 +1,139 @@
+package com.miragenotify.engine;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+
+/**
+ * Builds rewritten segment text from previously recorded match spans.
+ * Text without spans to rewrite is returned as the same instance, without a copy.
+ */
+public final class TextRewriter {
+
+    // Effects of a rule on a composed notification, see composeSpans
+    static final byte RULE_WANTED = 1;   // had an occurrence to rewrite in a segment it targets
+    static final byte RULE_APPLIED = 2;  // rewrote at least one occurrence
+
+    private static final char MASK_CHAR = '*';
+    private static final char LINE_SEPARATOR = (char) 0x2028;
+    private static final char PARAGRAPH_SEPARATOR = (char) 0x2029;
+
+    private TextRewriter() {
+    }
+
+    /**
+     * Replace or mask the non-overlapping occurrences of one pattern, left to right,
+     * exactly like {@link String#replace(CharSequence, CharSequence)} would
+     */
+    static CharSequence rewriteSpans(CharSequence text, MatchResult result, int segment, int pattern, RewriteRule rule) {
+        int count = result.getSpanCount(segment);
+        StringBuilder out = null;
+        int copied = 0;
+        for (int i = 0; i < count; i++) {
+            if (result.getSpanPattern(segment, i) != pattern) continue;
+            int start = result.getSpanStart(segment, i);
+            if (start < copied) continue; // overlaps the previous occurrence
+            int end = result.getSpanEnd(segment, i);
+            if (out == null) out = new StringBuilder(text.length() + 16);
+            out.append(text, copied, start);
+            appendReplacement(out, text, start, end, rule);
+            copied = end;
+        }
+        if (out == null) return text;
+        out.append(text, copied, text.length());
+        return out.toString();
+    }
+
+    /**
+     * Rewrite one segment with the spans of several rules at once. Rules are given in priority order;
+     * each keeps String.replace semantics for its own occurrences, and where occurrences of
+     * different rules overlap the higher-priority rule wins. The result is built in a single pass.
+     *
+     * @param candidates indices of matched span rules (REPLACE or MASK) that target this segment
+     * @param effects per rule index, updated with RULE_WANTED and RULE_APPLIED for the candidates
+     */
+    static CharSequence composeSpans(CharSequence text, MatchResult result, int segment, List<RewriteRule> rules,
+                               int[] rulePatterns, int[] candidates, int candidateCount, byte[] effects) {
+        int spanCount = result.getSpanCount(segment);
+        if (spanCount == 0 || candidateCount == 0) return text;
+
+        // Pick the spans to rewrite, highest priority first
+        BitSet covered = new BitSet(text.length());
+        int[] starts = new int[Math.min(spanCount, 16)];
+        int[] ends = new int[starts.length];
+        int[] owners = new int[starts.length];
+        int accepted = 0;
+        for (int c = 0; c < candidateCount; c++) {
+            int ruleIndex = candidates[c];
+            int pattern = rulePatterns[ruleIndex];
+            int last = 0;
+            for (int i = 0; i < spanCount; i++) {
+                if (result.getSpanPattern(segment, i) != pattern) continue;
+                int start = result.getSpanStart(segment, i);
+                if (start < last) continue; // overlaps this rule's previous occurrence
+                int end = result.getSpanEnd(segment, i);
+                last = end;
+                effects[ruleIndex] |= RULE_WANTED;
+                int taken = covered.nextSetBit(start);
+                if (taken >= 0 && taken < end) continue; // a higher-priority rule owns this text
+                covered.set(start, end);
+                effects[ruleIndex] |= RULE_APPLIED;
+                if (accepted == starts.length) {
+                    int capacity = accepted * 2;
+                    starts = Arrays.copyOf(starts, capacity);
+                    ends = Arrays.copyOf(ends, capacity);
+                    owners = Arrays.copyOf(owners, capacity);
+                }
+                starts[accepted] = start;
+                ends[accepted] = end;
+                owners[accepted] = ruleIndex;
+                accepted++;
+            }
+        }
+        if (accepted == 0) return text;
+
+        // Order by position; accepted spans never overlap, so start alone decides
+        long[] order = new long[accepted];
+        for (int i = 0; i < accepted; i++) order[i] = ((long) starts[i] << 32) | i;
+        Arrays.sort(order);
+
+        StringBuilder out = new StringBuilder(text.length() + 16);
+        int copied = 0;
+        for (long key : order) {
+            int i = (int) key;
+            out.append(text, copied, starts[i]);
+            appendReplacement(out, text, starts[i], ends[i], rules.get(owners[i]));
+            copied = ends[i];
+        }
+        out.append(text, copied, text.length());
+        return out.toString();
+    }
+
+    static void appendReplacement(StringBuilder out, CharSequence text, int start, int end, RewriteRule rule) {
+        if (rule.getRewriteAction() == RewriteAction.MASK) {
+            appendMask(out, text, start, end);
+        } else {
+            String replacement = rule.getReplacementText();
+            if (replacement != null) out.append(replacement);
+        }
+    }
+
+    /**
+     * Mask every code point except line terminators, matching the old replaceAll(".", "*") output
+     */
+    static void appendMask(StringBuilder out, CharSequence text, int start, int end) {
+        for (int i = start; i < end; i++) {
+            char c = text.charAt(i);
+            boolean lineTerminator = c == '\n' || c == '\r' || c == '\u0085' || c == LINE_SEPARATOR
+                    || c == PARAGRAPH_SEPARATOR;
+            if (lineTerminator) {
+                out.append(c);
+                continue;
+            }
+            if (Character.isHighSurrogate(c) && i + 1 < end && Character.isLowSurrogate(text.charAt(i + 1))) {
+                i++; // a surrogate pair is a single masked character
+            }
+            out.append(MASK_CHAR);
+        }
+    }
+}
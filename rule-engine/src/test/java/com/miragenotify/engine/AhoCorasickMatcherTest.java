@@ -0,0 +1,162 @@
+package com.miragenotify.engine;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Checks the automaton against String.indexOf on a seeded random corpus. The alphabet is tiny so
+ * patterns overlap, nest and share prefixes and suffixes constantly.
+ */
+public class AhoCorasickMatcherTest {
+
+    private static final long SEED = 20240917L;
+    // Upper and lower case of the same letters, so patterns that only differ in case meet
+    private static final char[] ALPHABET = {'a', 'A', 'b', 'B', '\u00e9', '\u00c9', ' '};
+    private static final int ROUNDS = 500;
+
+    @Test
+    public void reportsTheSameOccurrencesAsIndexOf() {
+        Random random = new Random(SEED);
+        for (int round = 0; round < ROUNDS; round++) {
+            List<String> patterns = randomPatterns(random);
+            AhoCorasickMatcher matcher = AhoCorasickMatcher.build(patterns);
+            for (int t = 0; t < 10; t++) {
+                String text = randomString(random, random.nextInt(64));
+                assertEquals("patterns " + patterns + " in \"" + text + "\"",
+                        naiveOccurrences(patterns, text), scan(matcher, text));
+            }
+        }
+    }
+
+    @Test
+    public void reportsMatchesInOrderOfEndOffset() {
+        Random random = new Random(SEED + 1);
+        for (int round = 0; round < ROUNDS; round++) {
+            AhoCorasickMatcher matcher = AhoCorasickMatcher.build(randomPatterns(random));
+            int[] lastEnd = {0};
+            matcher.scan(randomString(random, 48), (pattern, start, end) -> {
+                assertFalse("end " + end + " after " + lastEnd[0], end < lastEnd[0]);
+                lastEnd[0] = end;
+            });
+        }
+    }
+
+    @Test
+    public void emptyAndNullPatternsAreNeverReported() {
+        AhoCorasickMatcher matcher = AhoCorasickMatcher.build(Arrays.asList("", null, "a", ""));
+        assertEquals(4, matcher.getPatternCount());
+        assertEquals(Arrays.asList(List.of(2, 0, 1), List.of(2, 1, 2)), scan(matcher, "aa"));
+
+        AhoCorasickMatcher onlyEmpty = AhoCorasickMatcher.build(Arrays.asList("", null));
+        assertEquals(Collections.emptyList(), scan(onlyEmpty, "anything"));
+    }
+
+    @Test
+    public void literalRulesMatchLikeContainsAndCaseInsensitiveRulesIgnoreCase() {
+        Random random = new Random(SEED + 2);
+        for (int round = 0; round < ROUNDS; round++) {
+            List<String> searchTexts = randomPatterns(random);
+            List<RewriteRule> rules = new ArrayList<>();
+            for (int i = 0; i < searchTexts.size(); i++) {
+                MatchMode mode = random.nextBoolean() ? MatchMode.LITERAL : MatchMode.CASE_INSENSITIVE;
+                rules.add(new TestRule(i, searchTexts.get(i), mode, RewriteAction.MASK, null));
+            }
+            CompiledRuleSet set = new CompiledRuleSet(rules);
+            String title = randomString(random, random.nextInt(24));
+            String content = randomString(random, random.nextInt(64));
+            MatchResult result = set.match(title, content, "");
+            for (int i = 0; i < rules.size(); i++) {
+                RewriteRule rule = rules.get(i);
+                String search = rule.getSearchText();
+                boolean expected = search == null || search.isEmpty()
+                        || occurs(title, search, rule.getMatchMode()) || occurs(content, search, rule.getMatchMode());
+                assertEquals(rule.getMatchMode() + " \"" + search + "\" in \"" + title + "\" / \"" + content + "\"",
+                        expected, set.isRuleMatched(i, result));
+            }
+        }
+    }
+
+    private static boolean occurs(String text, String search, MatchMode mode) {
+        if (mode == MatchMode.LITERAL) return text.contains(search);
+        for (int i = 0; i + search.length() <= text.length(); i++) {
+            if (text.regionMatches(true, i, search, 0, search.length())) return true;
+        }
+        return false;
+    }
+
+    /**
+     * Between 1 and 12 patterns: random short strings, exact duplicates, case variants of earlier
+     * patterns, prefixes and suffixes of earlier patterns, and empty or null entries
+     */
+    private static List<String> randomPatterns(Random random) {
+        int count = 1 + random.nextInt(12);
+        List<String> patterns = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            String earlier = patterns.isEmpty() ? null : patterns.get(random.nextInt(patterns.size()));
+            int kind = random.nextInt(10);
+            if (kind == 0) {
+                patterns.add(random.nextBoolean() ? "" : null);
+            } else if (earlier != null && !earlier.isEmpty() && kind <= 4) {
+                switch (kind) {
+                    case 1:
+                        patterns.add(earlier);
+                        break;
+                    case 2:
+                        patterns.add(random.nextBoolean() ? earlier.toUpperCase() : earlier.toLowerCase());
+                        break;
+                    case 3:
+                        patterns.add(earlier.substring(0, 1 + random.nextInt(earlier.length())));
+                        break;
+                    default:
+                        patterns.add(earlier.substring(random.nextInt(earlier.length())));
+                        break;
+                }
+            } else {
+                patterns.add(randomString(random, 1 + random.nextInt(4)));
+            }
+        }
+        return patterns;
+    }
+
+    private static String randomString(Random random, int length) {
+        char[] chars = new char[length];
+        for (int i = 0; i < length; i++) chars[i] = ALPHABET[random.nextInt(ALPHABET.length)];
+        return new String(chars);
+    }
+
+    /**
+     * Every (pattern, start, end) occurrence, ordered by end offset and then pattern index
+     */
+    private static List<List<Integer>> naiveOccurrences(List<String> patterns, String text) {
+        List<List<Integer>> occurrences = new ArrayList<>();
+        for (int p = 0; p < patterns.size(); p++) {
+            String pattern = patterns.get(p);
+            if (pattern == null || pattern.isEmpty()) continue;
+            for (int start = text.indexOf(pattern); start >= 0; start = text.indexOf(pattern, start + 1)) {
+                occurrences.add(List.of(p, start, start + pattern.length()));
+            }
+        }
+        sort(occurrences);
+        return occurrences;
+    }
+
+    private static List<List<Integer>> scan(AhoCorasickMatcher matcher, String text) {
+        List<List<Integer>> occurrences = new ArrayList<>();
+        matcher.scan(text, (pattern, start, end) -> occurrences.add(List.of(pattern, start, end)));
+        sort(occurrences);
+        return occurrences;
+    }
+
+    private static void sort(List<List<Integer>> occurrences) {
+        occurrences.sort((a, b) -> a.get(2).equals(b.get(2))
+                ? Integer.compare(a.get(0), b.get(0)) : Integer.compare(a.get(2), b.get(2)));
+    }
+}
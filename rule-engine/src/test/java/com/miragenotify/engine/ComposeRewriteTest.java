@@ -0,0 +1,120 @@
+package com.miragenotify.engine;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+
+/**
+ * Compose mode: every matching rule applied at once, with the higher-priority rule winning each
+ * conflict and only the rules that changed something credited.
+ */
+public class ComposeRewriteTest {
+
+    @Test
+    public void nonOverlappingRulesAreAllApplied() {
+        CompiledRuleSet set = new CompiledRuleSet(Arrays.asList(
+                TestRule.literal(1, "pin"),
+                new TestRule(2, "Bank", MatchMode.LITERAL, RewriteAction.REPLACE, "B.")));
+
+        RewriteOutcome outcome = compose(set, "Bank", "Bank pin 1234", "");
+
+        assertEquals("B.", outcome.getTitle().toString());
+        assertEquals("B. *** 1234", outcome.getContent().toString());
+        assertArrayEquals(new long[]{1, 2}, outcome.getRuleIds());
+    }
+
+    @Test
+    public void aLowerWholeFieldReplacementLosesToAnEarlierMaskAndIsNotCredited() {
+        CompiledRuleSet set = new CompiledRuleSet(Arrays.asList(
+                TestRule.literal(1, "secret"),
+                titleOnly(new TestRule(2, "secret", MatchMode.LITERAL, RewriteAction.REPLACE_FIELD, "[hidden]"))));
+
+        RewriteOutcome outcome = compose(set, "top secret", "", "");
+
+        assertEquals("top ******", outcome.getTitle().toString());
+        assertArrayEquals(new long[]{1}, outcome.getRuleIds());
+    }
+
+    @Test
+    public void aWholeFieldReplacementTakesSegmentsTheEarlierRuleLeftAlone() {
+        CompiledRuleSet set = new CompiledRuleSet(Arrays.asList(
+                TestRule.literal(1, "pin"),
+                new TestRule(2, "Bank", MatchMode.LITERAL, RewriteAction.REPLACE_FIELD, "Notification")));
+
+        RewriteOutcome outcome = compose(set, "Bank", "Your pin", "");
+
+        // The mask has nothing in the title or sender, so the replacement takes them; the content is masked
+        assertEquals("Notification", outcome.getTitle().toString());
+        assertEquals("Your ***", outcome.getContent().toString());
+        assertEquals("Notification", outcome.getSender().toString());
+        assertArrayEquals(new long[]{1, 2}, outcome.getRuleIds());
+    }
+
+    @Test
+    public void anEarlierWholeFieldReplacementHidesLaterRules() {
+        CompiledRuleSet set = new CompiledRuleSet(Arrays.asList(
+                new TestRule(1, "Bank", MatchMode.LITERAL, RewriteAction.REPLACE_FIELD, "Notification"),
+                TestRule.literal(2, "pin"),
+                new TestRule(3, "Bank", MatchMode.LITERAL, RewriteAction.REPLACE_FIELD, "Other")));
+
+        RewriteOutcome outcome = compose(set, "Bank pin", "", "");
+
+        assertEquals("Notification", outcome.getTitle().toString());
+        assertArrayEquals(new long[]{1}, outcome.getRuleIds());
+    }
+
+    @Test
+    public void aRuleWhoseOccurrencesAreAllOverlappedIsNotCredited() {
+        CompiledRuleSet set = new CompiledRuleSet(Arrays.asList(
+                new TestRule(1, "password", MatchMode.LITERAL, RewriteAction.REPLACE, "[redacted]"),
+                TestRule.literal(2, "word"),
+                TestRule.literal(3, "code")));
+
+        RewriteOutcome outcome = compose(set, "password reset", "", "");
+
+        assertEquals("[redacted] reset", outcome.getTitle().toString());
+        // Rule 3 never matched; rule 2 only matched inside rule 1's occurrence
+        assertArrayEquals(new long[]{1}, outcome.getRuleIds());
+    }
+
+    @Test
+    public void aRuleWithNothingToChangeInItsFieldsIsCredited() {
+        TestRule contentOnly = new TestRule(2, "Bank", MatchMode.LITERAL, RewriteAction.MASK, null) {
+            @Override
+            public boolean isModifyTitle() {
+                return false;
+            }
+        };
+        CompiledRuleSet set = new CompiledRuleSet(Arrays.asList(TestRule.literal(1, "pin"), contentOnly));
+
+        RewriteOutcome outcome = compose(set, "Bank", "pin", "");
+
+        assertEquals("Bank", outcome.getTitle().toString());
+        assertEquals("***", outcome.getContent().toString());
+        // Same as first-match mode, which credits a matched rule whatever its fields
+        assertArrayEquals(new long[]{1, 2}, outcome.getRuleIds());
+    }
+
+    private static RewriteRule titleOnly(TestRule rule) {
+        return new TestRule(rule.getId(), rule.getSearchText(), rule.getMatchMode(), rule.getRewriteAction(),
+                rule.getReplacementText()) {
+            @Override
+            public boolean isModifyContent() {
+                return false;
+            }
+
+            @Override
+            public boolean isModifySender() {
+                return false;
+            }
+        };
+    }
+
+    private static RewriteOutcome compose(CompiledRuleSet set, String title, String content, String sender) {
+        NotificationText text = new NotificationText(title, content, sender);
+        return set.applyAll(text, set.match(text));
+    }
+}
@@ -0,0 +1,108 @@
+package com.miragenotify.engine;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Bytes allocated by the intercept lane's matching path, measured with the JVM's per-thread
+ * allocation counter. Notifications no rule matches, and segments answered from the memo, must
+ * not allocate once the JIT has settled.
+ */
+public class MatchAllocationTest {
+
+    private static final int WARMUP = 200_000;
+    private static final int MEASURED = 100_000;
+    // The counter is read with a little slack for the measurement itself
+    private static final long TOLERANCE_BYTES = 1024;
+
+    private com.sun.management.ThreadMXBean threads;
+    private CompiledRuleSet ruleSet;
+    private final NotificationText text = new NotificationText("", "", "");
+    private final MatchResult matches = new MatchResult();
+
+    @Before
+    public void setUp() {
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        assumeTrue(bean instanceof com.sun.management.ThreadMXBean);
+        threads = (com.sun.management.ThreadMXBean) bean;
+        assumeTrue(threads.isThreadAllocatedMemorySupported());
+        threads.setThreadAllocatedMemoryEnabled(true);
+
+        List<RewriteRule> rules = Arrays.asList(
+                TestRule.literal(1, "password"),
+                new TestRule(2, "Bank", MatchMode.CASE_INSENSITIVE, RewriteAction.MASK, null),
+                new TestRule(3, "pin", MatchMode.WHOLE_WORD, RewriteAction.MASK, null),
+                new TestRule(4, "\\b\\d{6}\\b", MatchMode.REGEX, RewriteAction.MASK, null));
+        ruleSet = new CompiledRuleSet(rules);
+    }
+
+    @Test
+    public void unmatchedNotificationsAllocateNothing() {
+        // Distinct short titles, each seen once, as with chat previews that quote a counter
+        String[] titles = new String[1024];
+        String[] contents = new String[titles.length];
+        for (int i = 0; i < titles.length; i++) {
+            titles[i] = "Order " + (10_000 + i) + " shipped";
+            contents[i] = "Your parcel is on its way, see you at the office at " + (i % 12) + "pm";
+        }
+        Runnable notification = new Runnable() {
+            int next;
+
+            @Override
+            public void run() {
+                int i = next++ & (titles.length - 1);
+                text.reset(titles[i], contents[i], "Shop");
+                ruleSet.matchLiterals(text, matches);
+                assertEquals(-1, ruleSet.findFirstMatch(text, matches));
+            }
+        };
+        assertNoAllocation(notification);
+    }
+
+    @Test
+    public void memoHitsAllocateNothing() {
+        String[] titles = {"Bank alert", "Your password", "Mom", "PIN reset"};
+        Runnable notification = new Runnable() {
+            int next;
+
+            @Override
+            public void run() {
+                String title = titles[next++ & (titles.length - 1)];
+                text.reset(title, "", "");
+                ruleSet.matchLiterals(text, matches);
+            }
+        };
+        assertNoAllocation(notification);
+    }
+
+    @Test
+    public void memoHitsReportTheSameSpansAsAScan() {
+        String title = "bank password, Bank PASSWORD";
+        MatchResult scanned = ruleSet.matchLiterals(new NotificationText(title, "", ""));
+        MatchResult memoized = ruleSet.matchLiterals(new NotificationText(title, "", ""));
+        assertTrue(scanned.getSpanCount(0) > 0);
+        assertEquals(scanned.getSpanCount(0), memoized.getSpanCount(0));
+        for (int k = 0; k < scanned.getSpanCount(0); k++) {
+            assertEquals(scanned.getSpanPattern(0, k), memoized.getSpanPattern(0, k));
+            assertEquals(scanned.getSpanStart(0, k), memoized.getSpanStart(0, k));
+            assertEquals(scanned.getSpanEnd(0, k), memoized.getSpanEnd(0, k));
+        }
+    }
+
+    private void assertNoAllocation(Runnable notification) {
+        for (int i = 0; i < WARMUP; i++) notification.run();
+        long threadId = Thread.currentThread().getId();
+        long before = threads.getThreadAllocatedBytes(threadId);
+        for (int i = 0; i < MEASURED; i++) notification.run();
+        long allocated = threads.getThreadAllocatedBytes(threadId) - before;
+        assertTrue(allocated + " bytes allocated by " + MEASURED + " notifications", allocated <= TOLERANCE_BYTES);
+    }
+}
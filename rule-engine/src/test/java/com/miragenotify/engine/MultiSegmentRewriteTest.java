@@ -0,0 +1,145 @@
+package com.miragenotify.engine;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+
+/**
+ * Rules applied to expanded notifications: message texts, sender names and inbox lines added
+ * as segments after the title, content and sender.
+ */
+public class MultiSegmentRewriteTest {
+
+    @Test
+    public void firstMatchChoosesOneRuleForTheWholeConversation() {
+        CompiledRuleSet set = new CompiledRuleSet(Arrays.asList(
+                new TestRule(1, "secret", MatchMode.LITERAL, RewriteAction.REPLACE, "[hidden]"),
+                new TestRule(2, "Alice", MatchMode.LITERAL, RewriteAction.REPLACE, "A.")));
+        NotificationText text = conversation("Alice", "2 new messages",
+                "Alice", "hi", "Bob", "the secret is out", "Alice", "secret? which secret");
+
+        RewriteOutcome outcome = set.apply(text, set.matchLiterals(text));
+
+        // Only the last message mentions the first rule's text, but it wins everywhere
+        assertArrayEquals(new long[]{1}, outcome.getRuleIds());
+        assertEquals("the [hidden] is out", outcome.getSegment(6).toString());
+        assertEquals("[hidden]? which [hidden]", outcome.getSegment(8).toString());
+        assertSame(text.getText(0), outcome.getTitle());
+        assertSame(text.getText(3), outcome.getSegment(3));
+    }
+
+    @Test
+    public void unchangedSegmentsAreTheSameInstances() {
+        CompiledRuleSet set = new CompiledRuleSet(Arrays.asList(TestRule.literal(1, "pin")));
+        StringBuilder styled = new StringBuilder("formatted line without a match");
+        NotificationText text = new NotificationText("Bank", "Your pin is 1234", "", 2);
+        int styledSegment = text.add(MatchResult.FIELD_CONTENT, styled);
+        int maskedSegment = text.add(MatchResult.FIELD_CONTENT, "pin reminder");
+
+        RewriteOutcome outcome = set.apply(text, set.matchLiterals(text));
+
+        assertSame(styled, outcome.getSegment(styledSegment));
+        assertSame(text.getText(0), outcome.getTitle());
+        assertEquals("Your *** is 1234", outcome.getContent().toString());
+        assertEquals("*** reminder", outcome.getSegment(maskedSegment).toString());
+    }
+
+    @Test
+    public void rulesOnlyRewriteSegmentsOfTheFieldsTheyTarget() {
+        TestRule senderRule = new TestRule(1, "Bob", MatchMode.LITERAL, RewriteAction.REPLACE, "B.") {
+            @Override
+            public boolean isModifyContent() {
+                return false;
+            }
+        };
+        CompiledRuleSet set = new CompiledRuleSet(Arrays.asList(senderRule));
+        NotificationText text = conversation("Chat", "", "Bob", "Bob says hi");
+        RewriteOutcome outcome = set.apply(text, set.matchLiterals(text));
+
+        assertEquals("B.", outcome.getSegment(3).toString());
+        assertSame(text.getText(4), outcome.getSegment(4));
+    }
+
+    @Test
+    public void composeAppliesEveryRuleToEveryMessage() {
+        CompiledRuleSet set = new CompiledRuleSet(Arrays.asList(
+                new TestRule(1, "bank pin", MatchMode.LITERAL, RewriteAction.REPLACE, "[pin]"),
+                TestRule.literal(2, "pin"),
+                new TestRule(3, "\\d{4}", MatchMode.REGEX, RewriteAction.MASK, null)));
+        NotificationText text = conversation("", "", "Carol", "bank pin 1234", "Dave", "new pin 9876");
+
+        RewriteOutcome outcome = set.applyAll(text, set.matchLiterals(text));
+
+        assertArrayEquals(new long[]{1, 2, 3}, outcome.getRuleIds());
+        // The earlier rule owns the overlapping text
+        assertEquals("[pin] ****", outcome.getSegment(4).toString());
+        assertEquals("new *** ****", outcome.getSegment(6).toString());
+    }
+
+    @Test
+    public void replaceFieldReplacesEachSegmentOfTheField() {
+        CompiledRuleSet set = new CompiledRuleSet(Arrays.asList(
+                new TestRule(1, "divorce", MatchMode.LITERAL, RewriteAction.REPLACE_FIELD, "New message")));
+        NotificationText text = conversation("Lawyer", "", "Lawyer", "about the divorce", "Lawyer", "call me");
+        RewriteOutcome outcome = set.apply(text, set.matchLiterals(text));
+
+        assertEquals("New message", outcome.getSegment(4).toString());
+        assertEquals("New message", outcome.getSegment(6).toString());
+    }
+
+    @Test
+    public void threeSegmentTextMatchesTheThreeFieldApi() {
+        CompiledRuleSet set = new CompiledRuleSet(Arrays.asList(
+                new TestRule(1, "loan", MatchMode.CASE_INSENSITIVE, RewriteAction.MASK, null)));
+        RewriteOutcome fields = set.apply("Loan offer", "your loan is approved", "Bank");
+        NotificationText text = new NotificationText("Loan offer", "your loan is approved", "Bank");
+        RewriteOutcome segments = set.apply(text, set.matchLiterals(text));
+
+        assertEquals(3, segments.getSegmentCount());
+        for (int i = 0; i < 3; i++) {
+            assertEquals(fields.getSegment(i).toString(), segments.getSegment(i).toString());
+        }
+    }
+
+    @Test
+    public void noMatchLeavesEverySegmentUntouched() {
+        CompiledRuleSet set = new CompiledRuleSet(Arrays.asList(TestRule.literal(1, "absent")));
+        NotificationText text = conversation("t", "c", "s", "m1", "s", "m2");
+        RewriteOutcome outcome = set.apply(text, set.matchLiterals(text));
+
+        assertFalse(outcome.isModified());
+        assertEquals(text.size(), outcome.getSegmentCount());
+        for (int i = 0; i < text.size(); i++) assertSame(text.getText(i), outcome.getSegment(i));
+    }
+
+    @Test
+    public void resetKeepsCapacityAndDropsOldSegments() {
+        NotificationText text = conversation("t", "c", "a", "b", "c", "d", "e", "f");
+        assertEquals(9, text.size());
+        text.reset("title", null, "sender");
+        assertEquals(3, text.size());
+        assertEquals("", text.getText(MatchResult.FIELD_CONTENT));
+        assertEquals(3, text.add(MatchResult.FIELD_CONTENT, "again"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void unknownFieldIsRejected() {
+        new NotificationText("", "", "").add(MatchResult.FIELD_COUNT, "x");
+    }
+
+    /**
+     * Title, content and sender, then alternating sender names and message texts
+     */
+    private static NotificationText conversation(String title, String content, String... senderAndText) {
+        NotificationText text = new NotificationText(title, content, "", senderAndText.length);
+        for (int i = 0; i < senderAndText.length; i++) {
+            text.add(i % 2 == 0 ? MatchResult.FIELD_SENDER : MatchResult.FIELD_CONTENT, senderAndText[i]);
+        }
+        return text;
+    }
+}
@@ -0,0 +1,132 @@
+package com.miragenotify.engine;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The literal scan memo of {@link CompiledRuleSet}, observed through its {@link MemoStats}
+ */
+public class ScanMemoTest {
+
+    private final MemoStats stats = new MemoStats();
+    private final List<RewriteRule> rules = Arrays.asList(
+            TestRule.literal(1, "bank"),
+            TestRule.literal(2, "pin"),
+            new TestRule(3, "\\d{4}", MatchMode.REGEX, RewriteAction.MASK, null));
+    private final CompiledRuleSet set = new CompiledRuleSet(rules, new RulePatternCache(), stats);
+
+    @Test
+    public void repeatedSegmentsAreAnsweredFromTheMemo() {
+        set.match("bank alert", "", "");
+        assertEquals(0, stats.getHits());
+
+        MatchResult memoized = set.match("bank alert", "", "");
+        assertEquals(1, stats.getHits());
+        assertTrue(set.isRuleMatched(0, memoized));
+    }
+
+    @Test
+    public void memoizedSpansEqualAFreshScan() {
+        String title = "bank pin 1234, pin again, bankbank";
+        MatchResult scanned = set.match(title, "", "");
+        MatchResult memoized = set.match(title, "", "");
+        CompiledRuleSet fresh = new CompiledRuleSet(rules);
+        MatchResult reference = fresh.match(title, "", "");
+
+        assertEquals(1, stats.getHits());
+        assertSameSpans(reference, scanned);
+        assertSameSpans(reference, memoized);
+        assertEquals(reference.isPatternMatched(2), memoized.isPatternMatched(2));
+    }
+
+    @Test
+    public void segmentsWithoutMatchesAreMemoizedToo() {
+        set.match("Family group", "", "");
+        MatchResult memoized = set.match("Family group", "", "");
+
+        assertEquals(1, stats.getHits());
+        assertEquals(1, stats.getMisses());
+        assertEquals(0, memoized.getSpanCount(0));
+        for (int i = 0; i < rules.size(); i++) {
+            assertFalse(set.isRuleMatched(i, memoized));
+        }
+    }
+
+    @Test
+    public void longEmptyAndNonStringSegmentsBypassTheMemo() {
+        String body = String.join(" ", Collections.nCopies(40, "bank"));
+        assertTrue(body.length() > 128);
+        StringBuilder spanned = new StringBuilder("bank");
+        set.match(body, spanned, "");
+        set.match(body, spanned, "");
+
+        assertEquals(0, stats.getHits() + stats.getMisses());
+    }
+
+    @Test
+    public void reorderedViewsShareTheMemo() {
+        set.match("pin reset", "", "");
+        CompiledRuleSet reordered = set.reorder(new int[]{2, 1, 0});
+        MatchResult result = reordered.match("pin reset", "", "");
+
+        assertEquals(1, stats.getHits());
+        // Rule 1 of the reordered view is the pin rule
+        assertTrue(reordered.isRuleMatched(1, result));
+    }
+
+    @Test
+    public void aRebuiltSetStartsWithAnEmptyMemo() {
+        set.match("bank alert", "", "");
+        CompiledRuleSet rebuilt = new CompiledRuleSet(rules, new RulePatternCache(), stats);
+        rebuilt.match("bank alert", "", "");
+        assertEquals(0, stats.getHits());
+    }
+
+    @Test
+    public void aSegmentInUseSurvivesAStreamOfOneOffSegments() {
+        set.match("Family group", "", "");
+        for (int i = 0; i < 1000; i++) {
+            set.match("bank " + i, "", "");
+            set.match("Family group", "", "");
+        }
+        assertEquals(1000, stats.getHits());
+    }
+
+    @Test
+    public void theMemoIsBounded() {
+        for (int i = 0; i < 1000; i++) set.match("bank " + i, "", "");
+        stats.reset();
+        for (int i = 0; i < 1000; i++) set.match("bank " + i, "", "");
+
+        // Hits are what the second pass found before overwriting it; 256 entries at most
+        assertTrue(stats.getHits() + " hits", stats.getHits() <= 256);
+    }
+
+    @Test
+    public void setsWithoutLiteralsDoNotUseTheMemo() {
+        CompiledRuleSet regexOnly = new CompiledRuleSet(
+                Collections.singletonList(new TestRule(1, "\\d+", MatchMode.REGEX, RewriteAction.MASK, null)),
+                new RulePatternCache(), stats);
+        regexOnly.match("code 1234", "", "");
+        regexOnly.match("code 1234", "", "");
+        assertEquals(0, stats.getHits() + stats.getMisses());
+    }
+
+    private static void assertSameSpans(MatchResult expected, MatchResult actual) {
+        for (int segment = 0; segment < MatchResult.FIELD_COUNT; segment++) {
+            assertEquals(expected.getSpanCount(segment), actual.getSpanCount(segment));
+            for (int k = 0; k < expected.getSpanCount(segment); k++) {
+                assertEquals(expected.getSpanPattern(segment, k), actual.getSpanPattern(segment, k));
+                assertEquals(expected.getSpanStart(segment, k), actual.getSpanStart(segment, k));
+                assertEquals(expected.getSpanEnd(segment, k), actual.getSpanEnd(segment, k));
+            }
+        }
+    }
+}
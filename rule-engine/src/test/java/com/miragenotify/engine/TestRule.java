@@ -0,0 +1,65 @@
+package com.miragenotify.engine;
+
+/**
+ * Minimal {@link RewriteRule} for tests, targeting every field unless a subclass says otherwise
+ */
+class TestRule implements RewriteRule {
+
+    private final long id;
+    private final String searchText;
+    private final MatchMode matchMode;
+    private final RewriteAction action;
+    private final String replacementText;
+
+    TestRule(long id, String searchText, MatchMode matchMode, RewriteAction action, String replacementText) {
+        this.id = id;
+        this.searchText = searchText;
+        this.matchMode = matchMode;
+        this.action = action;
+        this.replacementText = replacementText;
+    }
+
+    static TestRule literal(long id, String searchText) {
+        return new TestRule(id, searchText, MatchMode.LITERAL, RewriteAction.MASK, null);
+    }
+
+    @Override
+    public long getId() {
+        return id;
+    }
+
+    @Override
+    public String getSearchText() {
+        return searchText;
+    }
+
+    @Override
+    public MatchMode getMatchMode() {
+        return matchMode;
+    }
+
+    @Override
+    public RewriteAction getRewriteAction() {
+        return action;
+    }
+
+    @Override
+    public String getReplacementText() {
+        return replacementText;
+    }
+
+    @Override
+    public boolean isModifyTitle() {
+        return true;
+    }
+
+    @Override
+    public boolean isModifyContent() {
+        return true;
+    }
+
+    @Override
+    public boolean isModifySender() {
+        return true;
+    }
+}